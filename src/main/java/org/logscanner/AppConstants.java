@@ -44,6 +44,42 @@ public class AppConstants
 	 * Строка логов для поиска
 	 */
 	public static final String JOB_SEARCH_STRING = "SearchString";
+	/**
+	 * Как интерпретировать строку поиска ({@link org.logscanner.data.SearchMode})
+	 */
+	public static final String JOB_PARAM_SEARCH_MODE = "SearchMode";
+	/**
+	 * 1 - искать без учёта регистра
+	 */
+	public static final String JOB_PARAM_IGNORE_CASE = "IgnoreCase";
+	/**
+	 * Сколько строк до найденной показывать
+	 */
+	public static final String JOB_PARAM_LINES_BEFORE = "LinesBefore";
+	/**
+	 * Сколько строк после найденной показывать
+	 */
+	public static final String JOB_PARAM_LINES_AFTER = "LinesAfter";
+	/**
+	 * Отбор по уровню: {@code WARN+}, {@code ERROR} ({@link org.logscanner.util.search.LayoutFilter#parseLevels(String)})
+	 */
+	public static final String JOB_PARAM_LEVEL = "Level";
+	/**
+	 * Отбор по части имени логгера
+	 */
+	public static final String JOB_PARAM_LOGGER = "Logger";
+	/**
+	 * Отбор по части имени потока
+	 */
+	public static final String JOB_PARAM_THREAD = "Thread";
+	/**
+	 * Что показывать в результатах ({@link org.logscanner.data.ResultMode})
+	 */
+	public static final String JOB_PARAM_RESULT_MODE = "ResultMode";
+	/**
+	 * Сколько самых новых записей показывать в режиме {@link org.logscanner.data.ResultMode#NEWEST}
+	 */
+	public static final String JOB_PARAM_NEWEST_COUNT = "NewestCount";
 	/**
 	 * 
 	 */
@@ -3,6 +3,7 @@ package org.logscanner;
 import org.logscanner.jobs.LocationsReader;
 
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 import org.logscanner.jobs.CopyFilesWriter;
 import org.logscanner.jobs.DirectoryFilesProcessor;
@@ -43,6 +44,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 /**
  * @author Victor Kadachigov
@@ -188,6 +190,51 @@ public class BatchConfig extends DefaultBatchConfigurer
         return executor;
 	}
 	
+	/**
+	 * Для распаковки сжатых файлов параллельно с их просмотром. Без очереди: если свободных потоков нет,
+	 * распаковка идёт в потоке просмотра
+	 */
+	@Bean
+	ThreadPoolTaskExecutor decompressTaskExecutor()
+	{
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(DEFAULT_THREADS);
+        executor.setMaxPoolSize(DEFAULT_THREADS);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("decompress");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        executor.initialize();
+
+        return executor;
+	}
+	
+	/**
+	 * Для параллельного просмотра частей одного большого файла
+	 */
+	@Bean
+	ForkJoinPool fileSplitPool()
+	{
+		return new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Для построения индексов и слежения за файлами в фоне ({@link org.logscanner.service.TrigramIndexer},
+	 * {@link org.logscanner.service.IndexWatcher}). Один поток с низким приоритетом, чтобы не мешать поиску
+	 */
+	@Bean
+	ThreadPoolTaskScheduler indexTaskScheduler()
+	{
+        ThreadPoolTaskScheduler executor = new ThreadPoolTaskScheduler();
+        executor.setPoolSize(1);
+        executor.setThreadPriority(Thread.MIN_PRIORITY);
+        executor.setDaemon(true);
+        executor.setThreadNamePrefix("index");
+        executor.initialize();
+
+        return executor;
+	}
+	
 	@Override
 	protected JobLauncher createJobLauncher() throws Exception {
 		SimpleJobLauncher jobLauncher = new SimpleJobLauncher();
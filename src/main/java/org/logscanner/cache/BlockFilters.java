@@ -0,0 +1,456 @@
+package org.logscanner.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+import org.logscanner.util.search.LineConsumer;
+
+/**
+ * Фильтры Блума по блокам файла: какие слова есть в строках, начинающихся в блоке.
+ * Блоки, в фильтре которых нет всех слов искомой строки, можно не читать.
+ * <p>
+ * Слово - последовательность латинских букв, цифр, '_' и байтов не из ASCII (буквы UTF-8 и однобайтовых кодировок).
+ * Искомая строка проверяется только по словам, отделённым в ней с обеих сторон: строка {@code PointerException}
+ * может быть частью слова {@code NullPointerException} и блоки не отсеивает, а в {@code .PointerException:} слово целое.
+ * Годятся и для дописанного файла ({@link FilePrefix}): дописанное после построения читается всегда
+ */
+public class BlockFilters implements FilePrefix
+{
+	/** Блок k - строки, начинающиеся в [k * BLOCK_SIZE, (k + 1) * BLOCK_SIZE) */
+	public static final long BLOCK_SIZE = 1024 * 1024;
+	private static final int FORMAT_VERSION = 2;
+	private static final int HASH_COUNT = 3;
+	private static final int BITS_PER_TOKEN = 10;
+	private static final int MIN_BITS = 1024;
+
+	private final String path;
+	private final long size;
+	private final Date lastModified;
+	private final long tail;
+	/** Начало первой строки блока */
+	private final long[] starts;
+	/** Начало записи, которой принадлежит первая строка блока (строки без даты продолжают запись) */
+	private final long[] recordStarts;
+	private final long[][] bits;
+	/** До куда файл покрыт блоками: дальше читать надо всегда */
+	private final long end;
+
+	public BlockFilters(String path, long size, Date lastModified, long tail, long[] starts, long[] recordStarts, long[][] bits, long end)
+	{
+		if (starts.length != recordStarts.length || starts.length != bits.length)
+			throw new IllegalArgumentException("Block arrays differ in length");
+		this.path = Objects.requireNonNull(path);
+		this.size = size;
+		this.lastModified = lastModified;
+		this.tail = tail;
+		this.starts = starts;
+		this.recordStarts = recordStarts;
+		this.bits = bits;
+		this.end = end;
+	}
+
+	public String getPath()
+	{
+		return path;
+	}
+
+	@Override
+	public long getSize()
+	{
+		return size;
+	}
+
+	@Override
+	public Date getLastModified()
+	{
+		return lastModified;
+	}
+
+	@Override
+	public long getTail()
+	{
+		return tail;
+	}
+
+	public int getBlockCount()
+	{
+		return starts.length;
+	}
+
+	public boolean isValidFor(long size, Date lastModified)
+	{
+		return this.size == size && Objects.equals(this.lastModified, lastModified);
+	}
+
+	/**
+	 * Слова искомой строки, отделённые в ней с обеих сторон. Слово в начале или в конце строки может быть
+	 * частью более длинного слова в файле
+	 * @return хэши слов или null, если таких слов нет (такую строку блоки не отсеивают)
+	 */
+	public static long[] termTokens(String term, Charset charset)
+	{
+		byte[] bytes = term.getBytes(charset);
+		int from = 0;
+		while (from < bytes.length && isTokenByte(bytes[from]))
+			from++;
+		int to = bytes.length;
+		while (to > from && isTokenByte(bytes[to - 1]))
+			to--;
+		HashList hashes = new HashList();
+		forEachToken(bytes, from, to, hashes);
+		return hashes.count > 0 ? hashes.distinct() : null;
+	}
+
+	/**
+	 * Части файла, которые надо прочитать, чтобы найти хотя бы одну из искомых строк
+	 * @param terms слова каждой искомой строки ({@link #termTokens(String, Charset)}); null - строка есть в любом блоке
+	 * @param from откуда читать (начало строки)
+	 * @param to размер файла
+	 * @return пары [начало, конец) по возрастанию, соседние объединены
+	 */
+	public List<long[]> findRanges(List<long[]> terms, long from, long to)
+	{
+		List<long[]> result = new ArrayList<>();
+		for (int i = 0; i < starts.length; i++)
+		{
+			long blockEnd = i + 1 < starts.length ? starts[i + 1] : Math.min(end, to);
+			if (blockEnd <= from || !mightContainAny(bits[i], terms))
+				continue;
+			// запись с совпадением в продолжении надо читать с её первой строки
+			addRange(result, Math.max(recordStarts[i], from), blockEnd);
+		}
+		if (end < to)
+			addRange(result, Math.max(end, from), to);
+		return result;
+	}
+
+	static void addRange(List<long[]> ranges, long from, long to)
+	{
+		if (from >= to)
+			return;
+		long[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+		if (last != null && from <= last[1])
+			last[1] = Math.max(last[1], to);
+		else
+			ranges.add(new long[] { from, to });
+	}
+
+	private static boolean mightContainAny(long[] bits, List<long[]> terms)
+	{
+		for (long[] tokens : terms)
+		{
+			if (tokens == null)
+				return true;
+			boolean all = true;
+			for (int i = 0; i < tokens.length && all; i++)
+				all = mightContain(bits, tokens[i]);
+			if (all)
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean mightContain(long[] bits, long hash)
+	{
+		int mask = bits.length * 64 - 1;
+		int h1 = (int)hash;
+		int h2 = (int)(hash >>> 32) | 1;
+		for (int i = 0; i < HASH_COUNT; i++)
+		{
+			int bit = (h1 + i * h2) & mask;
+			if ((bits[bit >>> 6] & (1L << bit)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	private static long[] createBits(long[] hashes, int count)
+	{
+		int bitCount = Integer.highestOneBit(Math.max(MIN_BITS, count * BITS_PER_TOKEN) - 1) << 1;
+		long[] result = new long[bitCount / 64];
+		int mask = bitCount - 1;
+		for (int j = 0; j < count; j++)
+		{
+			int h1 = (int)hashes[j];
+			int h2 = (int)(hashes[j] >>> 32) | 1;
+			for (int i = 0; i < HASH_COUNT; i++)
+			{
+				int bit = (h1 + i * h2) & mask;
+				result[bit >>> 6] |= 1L << bit;
+			}
+		}
+		return result;
+	}
+
+	private static boolean isTokenByte(byte b)
+	{
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_' || b < 0;
+	}
+
+	/**
+	 * FNV-1a 64 каждого слова в buf[from, to)
+	 */
+	private static void forEachToken(byte[] buf, int from, int to, HashList hashes)
+	{
+		long hash = 0;
+		boolean inToken = false;
+		for (int i = from; i < to; i++)
+		{
+			byte b = buf[i];
+			if (isTokenByte(b))
+			{
+				if (!inToken)
+				{
+					hash = 0xcbf29ce484222325L;
+					inToken = true;
+				}
+				hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+			}
+			else if (inToken)
+			{
+				hashes.add(hash);
+				inToken = false;
+			}
+		}
+		if (inToken)
+			hashes.add(hash);
+	}
+
+	public void write(DataOutputStream out) throws IOException
+	{
+		out.writeInt(FORMAT_VERSION);
+		out.writeUTF(path);
+		out.writeLong(size);
+		out.writeLong(lastModified != null ? lastModified.getTime() : Long.MIN_VALUE);
+		out.writeLong(tail);
+		out.writeLong(end);
+		out.writeInt(starts.length);
+		for (int i = 0; i < starts.length; i++)
+		{
+			out.writeLong(starts[i]);
+			out.writeLong(recordStarts[i]);
+			out.writeInt(bits[i].length);
+			for (long word : bits[i])
+				out.writeLong(word);
+		}
+	}
+
+	public static BlockFilters read(DataInputStream in) throws IOException
+	{
+		int version = in.readInt();
+		if (version != FORMAT_VERSION)
+			throw new IOException("Unsupported block filters version " + version);
+		String path = in.readUTF();
+		long size = in.readLong();
+		long time = in.readLong();
+		long tail = in.readLong();
+		long end = in.readLong();
+		int count = in.readInt();
+		long[] starts = new long[count];
+		long[] recordStarts = new long[count];
+		long[][] bits = new long[count][];
+		for (int i = 0; i < count; i++)
+		{
+			starts[i] = in.readLong();
+			recordStarts[i] = in.readLong();
+			bits[i] = new long[in.readInt()];
+			for (int j = 0; j < bits[i].length; j++)
+				bits[i][j] = in.readLong();
+		}
+		return new BlockFilters(path, size, time != Long.MIN_VALUE ? new Date(time) : null, tail, starts, recordStarts, bits, end);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "BlockFilters [path=" + path + ", size=" + size + ", lastModified=" + lastModified + ", blocks=" + starts.length + ", end=" + end + "]";
+	}
+
+	/**
+	 * Растущий массив хэшей слов
+	 */
+	private static class HashList
+	{
+		long[] hashes = new long[256];
+		int count;
+
+		void add(long hash)
+		{
+			if (count == hashes.length)
+				hashes = Arrays.copyOf(hashes, count * 2);
+			hashes[count++] = hash;
+		}
+
+		/** Оставляет только разные хэши, по возрастанию */
+		int sortDistinct()
+		{
+			Arrays.sort(hashes, 0, count);
+			int n = 0;
+			for (int i = 0; i < count; i++)
+				if (n == 0 || hashes[n - 1] != hashes[i])
+					hashes[n++] = hashes[i];
+			count = n;
+			return n;
+		}
+
+		long[] distinct()
+		{
+			return Arrays.copyOf(hashes, sortDistinct());
+		}
+	}
+
+	/**
+	 * Собирает слова строк при просмотре файла с начала (или части файла с границы блока).
+	 * Для каждой строки: {@link #startLine(long, boolean)}, затем {@link #accept(byte[], int, int)}.
+	 * Блок попадает в фильтры, только если прочитан целиком
+	 */
+	public static class Builder implements LineConsumer
+	{
+		private long[] starts = new long[16];
+		private long[] recordStarts = new long[16];
+		private long[][] bits = new long[16][];
+		private int count;
+		private final HashList hashes = new HashList();
+		/** Номер текущего блока или -1 */
+		private long block = -1;
+		private long blockStart;
+		private long blockRecordStart;
+		/** Начало последней записи или -1 */
+		private long recordStart = -1;
+		/** Дочитали до конца файла (части) */
+		private boolean complete;
+		/** Начало отброшенного при остановке блока или -1 */
+		private long stoppedAt = -1;
+
+		/**
+		 * @param offset начало строки в файле
+		 * @param record строка начинает запись (с датой, или формат даты неизвестен)
+		 */
+		public void startLine(long offset, boolean record)
+		{
+			long lineBlock = offset / BLOCK_SIZE;
+			if (lineBlock != block)
+			{
+				finishBlock();
+				block = lineBlock;
+				blockStart = offset;
+				blockRecordStart = record ? offset : recordStart;
+			}
+			if (record)
+				recordStart = offset;
+		}
+
+		@Override
+		public void accept(byte[] buf, int from, int to)
+		{
+			forEachToken(buf, from, to, hashes);
+		}
+
+		/**
+		 * Просмотр прерван: текущий блок не полный и отбрасывается
+		 */
+		public void stop()
+		{
+			if (block >= 0)
+				stoppedAt = blockStart;
+			hashes.count = 0;
+			block = -1;
+		}
+
+		/**
+		 * Дочитали до конца
+		 */
+		public void finish()
+		{
+			finishBlock();
+			complete = true;
+		}
+
+		private void finishBlock()
+		{
+			if (block < 0)
+				return;
+			ensureCapacity();
+			starts[count] = blockStart;
+			recordStarts[count] = blockRecordStart;
+			bits[count] = createBits(hashes.hashes, hashes.sortDistinct());
+			count++;
+			hashes.count = 0;
+			block = -1;
+		}
+
+		/**
+		 * Добавляет блоки следующей части файла, начинающейся на границе блока.
+		 * Если части не стыкуются (эта не дочитана или следующая начинается в последнем блоке этой),
+		 * набранное остаётся как есть, а последний блок этой отбрасывается
+		 * @return false, если части не стыкуются
+		 */
+		public boolean addAll(Builder next)
+		{
+			if (!complete)
+				return false;
+			if (next.count == 0)
+			{
+				complete = next.complete;
+				stoppedAt = next.stoppedAt;
+				return complete;
+			}
+			if (count > 0 && next.starts[0] / BLOCK_SIZE <= starts[count - 1] / BLOCK_SIZE)
+			{
+				count--;
+				stoppedAt = starts[count];
+				complete = false;
+				return false;
+			}
+			for (int i = 0; i < next.count; i++)
+			{
+				ensureCapacity();
+				starts[count] = next.starts[i];
+				// запись, продолжающаяся в начале части, началась в предыдущей части
+				recordStarts[count] = next.recordStarts[i] >= 0 ? next.recordStarts[i] : recordStart;
+				bits[count] = next.bits[i];
+				count++;
+			}
+			if (next.recordStart >= 0)
+				recordStart = next.recordStart;
+			complete = next.complete;
+			stoppedAt = next.stoppedAt;
+			return true;
+		}
+
+		private void ensureCapacity()
+		{
+			if (count < starts.length)
+				return;
+			starts = Arrays.copyOf(starts, count * 2);
+			recordStarts = Arrays.copyOf(recordStarts, count * 2);
+			bits = Arrays.copyOf(bits, count * 2);
+		}
+
+		public boolean isEmpty()
+		{
+			return count == 0;
+		}
+
+		/**
+		 * @param size до куда файл просмотрен (размер файла на момент просмотра): блоки покрывают его до конца,
+		 * если просмотр дошёл до конца. Дописанное во время просмотра не покрыто
+		 * @param tail отпечаток файла перед size ({@link FilePrefix#tailOf(java.nio.channels.SeekableByteChannel, long)})
+		 */
+		public BlockFilters build(String path, long size, Date lastModified, long tail)
+		{
+			long[] blockRecordStarts = new long[count];
+			for (int i = 0; i < count; i++)
+				blockRecordStarts[i] = recordStarts[i] >= 0 ? recordStarts[i] : starts[i];
+			long end = complete ? size : (stoppedAt >= 0 ? stoppedAt : (count > 0 ? starts[count - 1] : 0));
+			return new BlockFilters(path, size, lastModified, tail, Arrays.copyOf(starts, count), blockRecordStarts, Arrays.copyOf(bits, count), end);
+		}
+	}
+}
@@ -35,6 +35,13 @@ public class CacheFileInfo implements Comparable<CacheFileInfo>
 	private Date contentStart;
 	private Date contentEnd;
 	private long size;
+	/** null, если файл ещё не просматривался или изменился */
+	private TimeIndex timeIndex;
+	/** Для файла сохранены фильтры блоков ({@link BlockFilters}). Сбрасывается при изменении файла */
+	private boolean blockFilters;
+	/** Время изменения файла, по которому построен индекс триграмм ({@link TrigramIndex}), или null, если индекса нет */
+	private Date indexedLastModified;
+	private long indexedSize;
 
 	CacheFileInfo()
 	{
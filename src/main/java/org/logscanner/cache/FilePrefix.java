@@ -0,0 +1,55 @@
+package org.logscanner.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Date;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Построено по первым {@link #getSize()} байтам файла. Логи только дописываются, поэтому построенное остаётся верным
+ * для начала выросшего файла. Файл считается дописанным, если байты перед {@link #getSize()} не изменились
+ * (см. {@link #getTail()}), иначе - усечённым или замененным новым (ротация), и всё строится заново
+ */
+public interface FilePrefix
+{
+	/** Сколько байт перед концом учитывается в {@link #getTail()} */
+	public static final int TAIL_LENGTH = 4096;
+
+	public long getSize();
+
+	public Date getLastModified();
+
+	/**
+	 * @return отпечаток ({@link #tailOf(SeekableByteChannel, long)}) байт перед {@link #getSize()}
+	 */
+	public long getTail();
+
+	/**
+	 * @param lastModified время изменения файла сейчас
+	 * @return файл тот же, что при построении, или дописан после него
+	 */
+	public default boolean isValidFor(SeekableByteChannel channel, Date lastModified) throws IOException
+	{
+		long size = channel.size();
+		if (size == getSize() && Objects.equals(lastModified, getLastModified()))
+			return true;
+		return size >= getSize() && tailOf(channel, getSize()) == getTail();
+	}
+
+	/**
+	 * CRC32 не больше {@link #TAIL_LENGTH} байт перед offset
+	 */
+	public static long tailOf(SeekableByteChannel channel, long offset) throws IOException
+	{
+		long from = Math.max(0, offset - TAIL_LENGTH);
+		ByteBuffer buffer = ByteBuffer.allocate((int)(offset - from));
+		channel.position(from);
+		while (buffer.hasRemaining() && channel.read(buffer) > 0)
+			;
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 0, buffer.position());
+		return crc.getValue();
+	}
+}
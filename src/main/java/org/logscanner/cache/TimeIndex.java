@@ -0,0 +1,150 @@
+package org.logscanner.cache;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Objects;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+
+import lombok.Getter;
+
+/**
+ * Разреженный индекс времени файла: смещения начал строк с датой и их даты, примерно через {@link #STEP} байт.
+ * Позволяет следующему поиску по тому же файлу сразу перейти к периоду, а по дописанному - ещё и к дописанному,
+ * если искомый период позже известного (см. {@link FilePrefix})
+ */
+@Getter
+@JsonAutoDetect(fieldVisibility=Visibility.ANY, getterVisibility=Visibility.NONE, isGetterVisibility=Visibility.NONE, setterVisibility=Visibility.NONE)
+public class TimeIndex implements FilePrefix
+{
+	/** Точки индекса не ближе этого друг к другу */
+	public static final long STEP = 1024 * 1024;
+
+	private long size;
+	private Date lastModified;
+	private long tail;
+	/** По возрастанию */
+	private long[] offsets;
+	private long[] times;
+
+	TimeIndex()
+	{
+	}
+
+	public TimeIndex(long size, Date lastModified, long tail, long[] offsets, long[] times)
+	{
+		if (offsets.length != times.length)
+			throw new IllegalArgumentException("Offsets and times differ in length");
+		this.size = size;
+		this.lastModified = lastModified;
+		this.tail = tail;
+		this.offsets = offsets;
+		this.times = times;
+	}
+
+	public boolean isValidFor(long size, Date lastModified)
+	{
+		return this.size == size && Objects.equals(this.lastModified, lastModified);
+	}
+
+	/**
+	 * Как {@link org.logscanner.jobs.DateOffsetLocator#locate(long)}: считается, что даты в файле не убывают
+	 * @return начало строки с датой раньше time (или 0). Все строки с датой не раньше time находятся после него
+	 */
+	public long findOffset(long time)
+	{
+		long result = 0;
+		for (int i = 0; i < offsets.length && times[i] < time; i++)
+			result = offsets[i];
+		return result;
+	}
+
+	/**
+	 * Индекс того же файла с добавленными точками другого просмотра (например, части файла)
+	 */
+	public TimeIndex merge(long[] otherOffsets, long[] otherTimes)
+	{
+		return merge(size, lastModified, tail, otherOffsets, otherTimes);
+	}
+
+	/**
+	 * Индекс дописанного файла: прежние точки и точки просмотра дописанного
+	 * @param size размер файла сейчас
+	 * @param tail отпечаток файла перед size
+	 */
+	public TimeIndex merge(long size, Date lastModified, long tail, long[] otherOffsets, long[] otherTimes)
+	{
+		Builder builder = new Builder();
+		int i = 0;
+		int j = 0;
+		while (i < offsets.length || j < otherOffsets.length)
+		{
+			if (j >= otherOffsets.length || (i < offsets.length && offsets[i] <= otherOffsets[j]))
+			{
+				builder.add(offsets[i], times[i]);
+				i++;
+			}
+			else
+			{
+				builder.add(otherOffsets[j], otherTimes[j]);
+				j++;
+			}
+		}
+		return new TimeIndex(size, lastModified, tail, builder.getOffsets(), builder.getTimes());
+	}
+
+	@Override
+	public String toString()
+	{
+		return "TimeIndex [size=" + size + ", lastModified=" + lastModified + ", points=" + offsets.length + "]";
+	}
+
+	/**
+	 * Набирает точки при просмотре: из строк, идущих по возрастанию смещения, берёт отстоящие не меньше чем на {@link #STEP}
+	 */
+	public static class Builder
+	{
+		private long[] offsets = new long[16];
+		private long[] times = new long[16];
+		private int count;
+
+		public void add(long offset, long time)
+		{
+			if (count > 0 && offset - offsets[count - 1] < STEP)
+				return;
+			if (count == offsets.length)
+			{
+				offsets = Arrays.copyOf(offsets, count * 2);
+				times = Arrays.copyOf(times, count * 2);
+			}
+			offsets[count] = offset;
+			times[count] = time;
+			count++;
+		}
+
+		/**
+		 * Добавляет точки следующей части файла
+		 */
+		public void addAll(Builder other)
+		{
+			for (int i = 0; i < other.count; i++)
+				add(other.offsets[i], other.times[i]);
+		}
+
+		public boolean isEmpty()
+		{
+			return count == 0;
+		}
+
+		public long[] getOffsets()
+		{
+			return Arrays.copyOf(offsets, count);
+		}
+
+		public long[] getTimes()
+		{
+			return Arrays.copyOf(times, count);
+		}
+	}
+}
@@ -0,0 +1,463 @@
+package org.logscanner.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.logscanner.util.search.LineConsumer;
+
+/**
+ * Индекс триграмм файла: для каждых трёх подряд идущих байт строки - номера блоков, в строках которых они встречаются.
+ * Блоки как у {@link BlockFilters}: строки, начинающиеся в [k * BLOCK_SIZE, (k + 1) * BLOCK_SIZE).
+ * Подстрока не короче трёх байт может быть только в блоках, где есть все её триграммы.
+ * Латинские буквы приводятся к нижнему регистру, так что индекс годится и для поиска без учёта регистра.
+ * <p>
+ * На диске: заголовок, начала блоков, триграммы по возрастанию со смещениями списков,
+ * списки блоков (разности соседних номеров, varint).
+ * Годится и для дописанного файла ({@link FilePrefix}): дописанное после построения читается всегда,
+ * а индекс продолжается с последнего блока ({@link Builder#Builder(TrigramIndex)})
+ */
+public class TrigramIndex implements FilePrefix
+{
+	private static final int FORMAT_VERSION = 2;
+
+	private final String path;
+	private final long size;
+	private final Date lastModified;
+	private final long tail;
+	/** Начало первой строки блока */
+	private final long[] starts;
+	/** Начало записи, которой принадлежит первая строка блока */
+	private final long[] recordStarts;
+	/** По возрастанию */
+	private final int[] trigrams;
+	/** Начало списка блоков триграммы в postings, плюс конец последнего списка */
+	private final int[] offsets;
+	private final byte[] postings;
+
+	TrigramIndex(String path, long size, Date lastModified, long tail, long[] starts, long[] recordStarts, int[] trigrams, int[] offsets, byte[] postings)
+	{
+		if (starts.length != recordStarts.length || trigrams.length + 1 != offsets.length)
+			throw new IllegalArgumentException("Index arrays differ in length");
+		this.path = Objects.requireNonNull(path);
+		this.size = size;
+		this.lastModified = lastModified;
+		this.tail = tail;
+		this.starts = starts;
+		this.recordStarts = recordStarts;
+		this.trigrams = trigrams;
+		this.offsets = offsets;
+		this.postings = postings;
+	}
+
+	public String getPath()
+	{
+		return path;
+	}
+
+	@Override
+	public long getSize()
+	{
+		return size;
+	}
+
+	@Override
+	public Date getLastModified()
+	{
+		return lastModified;
+	}
+
+	@Override
+	public long getTail()
+	{
+		return tail;
+	}
+
+	public int getBlockCount()
+	{
+		return starts.length;
+	}
+
+	public boolean isValidFor(long size, Date lastModified)
+	{
+		return this.size == size && Objects.equals(this.lastModified, lastModified);
+	}
+
+	/**
+	 * Триграммы искомой строки
+	 * @param ignoreCase поиск без учёта регистра: триграммы с байтами не из ASCII не используются, их регистр в индексе не свёрнут
+	 * @return null, если триграмм нет (строка короче трёх байт) - такую строку по индексу не отсеять
+	 */
+	public static int[] termTrigrams(String term, Charset charset, boolean ignoreCase)
+	{
+		byte[] bytes = term.getBytes(charset);
+		int[] result = new int[Math.max(bytes.length - 2, 0)];
+		int count = 0;
+		for (int i = 0; i + 2 < bytes.length; i++)
+			if (!ignoreCase || (bytes[i] >= 0 && bytes[i + 1] >= 0 && bytes[i + 2] >= 0))
+				result[count++] = trigram(bytes, i);
+		if (count == 0)
+			return null;
+		Arrays.sort(result, 0, count);
+		int n = 0;
+		for (int i = 0; i < count; i++)
+			if (n == 0 || result[n - 1] != result[i])
+				result[n++] = result[i];
+		return Arrays.copyOf(result, n);
+	}
+
+	private static int trigram(byte[] buf, int i)
+	{
+		return fold(buf[i]) << 16 | fold(buf[i + 1]) << 8 | fold(buf[i + 2]);
+	}
+
+	private static int fold(byte b)
+	{
+		return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b & 0xff;
+	}
+
+	/**
+	 * Части файла, которые надо прочитать, чтобы найти хотя бы одну из искомых строк
+	 * @param terms триграммы каждой искомой строки ({@link #termTrigrams(String, Charset, boolean)})
+	 * @param from откуда читать (начало строки)
+	 * @param to размер файла
+	 * @return пары [начало, конец) по возрастанию, соседние объединены
+	 */
+	public List<long[]> findRanges(List<int[]> terms, long from, long to)
+	{
+		boolean[] candidates = new boolean[starts.length];
+		for (int[] term : terms)
+		{
+			int[] blocks = null;
+			for (int i = 0; i < term.length && (blocks == null || blocks.length > 0); i++)
+			{
+				int[] list = getBlocks(term[i]);
+				blocks = blocks == null ? list : intersect(blocks, list);
+			}
+			for (int block : blocks)
+				candidates[block] = true;
+		}
+		List<long[]> result = new ArrayList<>();
+		for (int i = 0; i < starts.length; i++)
+		{
+			long blockEnd = i + 1 < starts.length ? starts[i + 1] : Math.min(size, to);
+			if (candidates[i] && blockEnd > from)
+				BlockFilters.addRange(result, Math.max(recordStarts[i], from), blockEnd);
+		}
+		if (size < to)
+			BlockFilters.addRange(result, Math.max(size, from), to);
+		return result;
+	}
+
+	/**
+	 * @return номера блоков с триграммой по возрастанию
+	 */
+	private int[] getBlocks(int trigram)
+	{
+		int index = Arrays.binarySearch(trigrams, trigram);
+		return index >= 0 ? blocksAt(index) : new int[0];
+	}
+
+	/**
+	 * @param index номер триграммы в {@link #trigrams}
+	 */
+	private int[] blocksAt(int index)
+	{
+		int[] result = new int[offsets[index + 1] - offsets[index]];
+		int count = 0;
+		int block = -1;
+		for (int i = offsets[index]; i < offsets[index + 1]; )
+		{
+			int delta = 0;
+			int shift = 0;
+			byte b;
+			do
+			{
+				b = postings[i++];
+				delta |= (b & 0x7f) << shift;
+				shift += 7;
+			}
+			while (b < 0);
+			block += delta;
+			result[count++] = block;
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	private static int[] intersect(int[] a, int[] b)
+	{
+		int[] result = new int[Math.min(a.length, b.length)];
+		int count = 0;
+		for (int i = 0, j = 0; i < a.length && j < b.length; )
+		{
+			if (a[i] < b[j])
+				i++;
+			else if (a[i] > b[j])
+				j++;
+			else
+			{
+				result[count++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	public void write(DataOutputStream out) throws IOException
+	{
+		out.writeInt(FORMAT_VERSION);
+		out.writeUTF(path);
+		out.writeLong(size);
+		out.writeLong(lastModified != null ? lastModified.getTime() : Long.MIN_VALUE);
+		out.writeLong(tail);
+		out.writeInt(starts.length);
+		for (int i = 0; i < starts.length; i++)
+		{
+			out.writeLong(starts[i]);
+			out.writeLong(recordStarts[i]);
+		}
+		out.writeInt(trigrams.length);
+		for (int i = 0; i < trigrams.length; i++)
+		{
+			out.writeInt(trigrams[i]);
+			out.writeInt(offsets[i]);
+		}
+		out.writeInt(postings.length);
+		out.write(postings);
+	}
+
+	public static TrigramIndex read(DataInputStream in) throws IOException
+	{
+		int version = in.readInt();
+		if (version != FORMAT_VERSION)
+			throw new IOException("Unsupported trigram index version " + version);
+		String path = in.readUTF();
+		long size = in.readLong();
+		long time = in.readLong();
+		long tail = in.readLong();
+		int blockCount = in.readInt();
+		long[] starts = new long[blockCount];
+		long[] recordStarts = new long[blockCount];
+		for (int i = 0; i < blockCount; i++)
+		{
+			starts[i] = in.readLong();
+			recordStarts[i] = in.readLong();
+		}
+		int trigramCount = in.readInt();
+		int[] trigrams = new int[trigramCount];
+		int[] offsets = new int[trigramCount + 1];
+		for (int i = 0; i < trigramCount; i++)
+		{
+			trigrams[i] = in.readInt();
+			offsets[i] = in.readInt();
+		}
+		byte[] postings = new byte[in.readInt()];
+		in.readFully(postings);
+		offsets[trigramCount] = postings.length;
+		return new TrigramIndex(path, size, time != Long.MIN_VALUE ? new Date(time) : null, tail, starts, recordStarts, trigrams, offsets, postings);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "TrigramIndex [path=" + path + ", size=" + size + ", lastModified=" + lastModified + ", blocks=" + starts.length
+				+ ", trigrams=" + trigrams.length + ", postings=" + postings.length + "]";
+	}
+
+	/**
+	 * Список блоков одной триграммы при построении
+	 */
+	private static class Posting
+	{
+		byte[] data = new byte[4];
+		int length;
+		int lastBlock = -1;
+
+		void add(int block)
+		{
+			if (length + 5 > data.length)
+				data = Arrays.copyOf(data, data.length * 2);
+			int delta = block - lastBlock;
+			while ((delta & ~0x7f) != 0)
+			{
+				data[length++] = (byte)((delta & 0x7f) | 0x80);
+				delta >>>= 7;
+			}
+			data[length++] = (byte)delta;
+			lastBlock = block;
+		}
+	}
+
+	/**
+	 * Строит индекс при чтении файла с начала до конца.
+	 * Для каждой строки: {@link #startLine(long, boolean)}, затем {@link #accept(byte[], int, int)}
+	 */
+	public static class Builder implements LineConsumer
+	{
+		/** Триграммы текущего блока: бит на каждую из 2^24 */
+		private final long[] blockTrigrams = new long[1 << 18];
+		/** Ненулевые слова blockTrigrams */
+		private int[] touched = new int[1024];
+		private int touchedCount;
+		private final Map<Integer, Posting> postings = new HashMap<>();
+		private long[] starts = new long[16];
+		private long[] recordStarts = new long[16];
+		private int count;
+		/** Номер текущего блока в файле или -1 */
+		private long block = -1;
+		/** Начало последней записи или -1 */
+		private long recordStart = -1;
+		/** С какого места читать файл */
+		private long resumeOffset;
+
+		public Builder()
+		{
+		}
+
+		/**
+		 * Продолжение индекса дописанного файла. Последний блок индекса мог быть прочитан не до конца:
+		 * он отбрасывается, и файл читается заново с его начала ({@link #getResumeOffset()})
+		 */
+		public Builder(TrigramIndex index)
+		{
+			int keep = Math.max(index.starts.length - 1, 0);
+			for (int i = 0; i < index.trigrams.length; i++)
+			{
+				Posting posting = null;
+				for (int block : index.blocksAt(i))
+				{
+					if (block >= keep)
+						break;
+					if (posting == null)
+						posting = postings.computeIfAbsent(index.trigrams[i], key -> new Posting());
+					posting.add(block);
+				}
+			}
+			starts = Arrays.copyOf(index.starts, Math.max(index.starts.length, 16));
+			recordStarts = Arrays.copyOf(index.recordStarts, starts.length);
+			count = keep;
+			if (keep < index.starts.length)
+			{
+				resumeOffset = index.starts[keep];
+				recordStart = index.recordStarts[keep];
+			}
+		}
+
+		/**
+		 * @return начало строки, с которой надо читать файл
+		 */
+		public long getResumeOffset()
+		{
+			return resumeOffset;
+		}
+
+		/**
+		 * @param offset начало строки в файле
+		 * @param record строка начинает запись (с датой, или формат даты неизвестен)
+		 */
+		public void startLine(long offset, boolean record)
+		{
+			long lineBlock = offset / BlockFilters.BLOCK_SIZE;
+			if (lineBlock != block)
+			{
+				finishBlock();
+				block = lineBlock;
+				if (count == starts.length)
+				{
+					starts = Arrays.copyOf(starts, count * 2);
+					recordStarts = Arrays.copyOf(recordStarts, count * 2);
+				}
+				starts[count] = offset;
+				recordStarts[count] = record || recordStart < 0 ? offset : recordStart;
+				count++;
+			}
+			if (record)
+				recordStart = offset;
+		}
+
+		@Override
+		public void accept(byte[] buf, int from, int to)
+		{
+			for (int i = from; i + 2 < to; i++)
+			{
+				int trigram = trigram(buf, i);
+				int word = trigram >>> 6;
+				if (blockTrigrams[word] == 0)
+				{
+					if (touchedCount == touched.length)
+						touched = Arrays.copyOf(touched, touchedCount * 2);
+					touched[touchedCount++] = word;
+				}
+				blockTrigrams[word] |= 1L << trigram;
+			}
+		}
+
+		private void finishBlock()
+		{
+			if (block < 0)
+				return;
+			int blockIndex = count - 1;
+			for (int i = 0; i < touchedCount; i++)
+			{
+				int word = touched[i];
+				long bits = blockTrigrams[word];
+				while (bits != 0)
+				{
+					int bit = Long.numberOfTrailingZeros(bits);
+					postings.computeIfAbsent(word << 6 | bit, key -> new Posting()).add(blockIndex);
+					bits &= bits - 1;
+				}
+				blockTrigrams[word] = 0;
+			}
+			touchedCount = 0;
+			block = -1;
+		}
+
+		/**
+		 * Дочитали до конца
+		 */
+		public void finish()
+		{
+			finishBlock();
+		}
+
+		public boolean isEmpty()
+		{
+			return count == 0;
+		}
+
+		/**
+		 * @param size сколько байт файла прочитано
+		 * @param tail отпечаток файла перед size ({@link FilePrefix#tailOf(java.nio.channels.SeekableByteChannel, long)})
+		 */
+		public TrigramIndex build(String path, long size, Date lastModified, long tail)
+		{
+			finishBlock();
+			int[] trigrams = postings.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+			int[] offsets = new int[trigrams.length + 1];
+			int length = 0;
+			for (int i = 0; i < trigrams.length; i++)
+			{
+				offsets[i] = length;
+				length += postings.get(trigrams[i]).length;
+			}
+			offsets[trigrams.length] = length;
+			byte[] data = new byte[length];
+			for (int i = 0; i < trigrams.length; i++)
+			{
+				Posting posting = postings.get(trigrams[i]);
+				System.arraycopy(posting.data, 0, data, offsets[i], posting.length);
+			}
+			return new TrigramIndex(path, size, lastModified, tail, Arrays.copyOf(starts, count), Arrays.copyOf(recordStarts, count), trigrams, offsets, data);
+		}
+	}
+}
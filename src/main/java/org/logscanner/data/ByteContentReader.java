@@ -21,6 +21,12 @@ public class ByteContentReader implements ContentReader
 		return new ByteArrayInputStream(content);
 	}
 
+	@Override
+	public boolean isRereadCheap()
+	{
+		return true;
+	}
+
 	@Override
 	public void close()
 	{
@@ -2,6 +2,8 @@ package org.logscanner.data;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
 
 /**
  * @author Victor Kadachigov
@@ -9,6 +11,35 @@ import java.io.InputStream;
 public interface ContentReader extends AutoCloseable
 {
 	public InputStream getInputStream() throws IOException;
+
+	/**
+	 * Повторное чтение дёшево (локальный файл, память) - копировать содержимое во время поиска незачем
+	 */
+	public default boolean isRereadCheap()
+	{
+		return false;
+	}
+
+	/**
+	 * Канал для чтения с произвольной позиции. Закрывает вызывающий
+	 * @return null если источник можно читать только последовательно
+	 */
+	public default SeekableByteChannel openChannel() throws IOException
+	{
+		return null;
+	}
+
+	/**
+	 * Поток с позиции offset. В отличие от {@link #getInputStream()} закрывает вызывающий
+	 */
+	public default InputStream getInputStream(long offset) throws IOException
+	{
+		SeekableByteChannel channel = openChannel();
+		if (channel == null)
+			throw new IOException("Random access is not supported by " + getClass().getSimpleName());
+		channel.position(offset);
+		return Channels.newInputStream(channel);
+	}
 	@Override
 	public void close();
 }
@@ -32,6 +32,8 @@ public class Location implements Named
 	private String user;
 	private String password;
 	private LocationType type = LocationType.LOCAL;
+	/** Держать индексы файлов готовыми к поиску, см. {@link org.logscanner.service.TrigramIndexer}, {@link org.logscanner.service.IndexWatcher} */
+	private Boolean indexed;
 	
 	Location() {
 		//for deserialization
@@ -3,6 +3,7 @@ package org.logscanner.data;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.Date;
+import java.util.List;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -18,6 +19,11 @@ public class LogEvent
 	private String locationName;
 	private String path;
 	private String text;
+	/** Какие из искомых строк найдены (поиск по нескольким строкам) */
+	private List<String> terms;
+	/** Строки до и после найденной, если заданы при поиске */
+	private List<String> linesBefore;
+	private List<String> linesAfter;
 	
 	public LogEvent(String text) {
 		this.text = text;
@@ -29,4 +35,20 @@ public class LogEvent
 		this.path = path;
 		this.text = text;
 	}
+
+	/**
+	 * Строка вместе с окружающими строками
+	 */
+	public String getTextWithContext()
+	{
+		if (linesBefore == null && linesAfter == null)
+			return text;
+		StringBuilder sb = new StringBuilder();
+		if (linesBefore != null)
+			linesBefore.forEach(line -> sb.append(line).append('\n'));
+		sb.append(text);
+		if (linesAfter != null)
+			linesAfter.forEach(line -> sb.append('\n').append(line));
+		return sb.toString();
+	}
 }
@@ -1,6 +1,9 @@
 package org.logscanner.data;
 
+import java.io.File;
+
 import org.apache.commons.lang3.StringUtils;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
 import org.logscanner.util.Named;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
@@ -28,6 +31,8 @@ public class LogPattern implements Named
 	private String encoding;
 	private String[] includes;
 	private String datePattern;
+	/** Шаблон строки в стиле logback: {@code %d [%-5level] [%thread] %logger - %msg%n} */
+	private String layout;
 	
 	LogPattern()
 	{
@@ -40,6 +45,25 @@ public class LogPattern implements Named
 		this.name = name;
 	}
 
+	/**
+	 * Файл отбирается поиском с этим шаблоном, как в {@link org.logscanner.util.fs.LocalDirectoryScanner}
+	 * @param relativePath путь относительно каталога места поиска
+	 */
+	public boolean isIncluded(String relativePath)
+	{
+		if (includes == null)
+			return true;
+		for (String include : includes)
+		{
+			String pattern = include.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+			if (pattern.endsWith(File.separator))
+				pattern += SelectorUtils.DEEP_TREE_MATCH;
+			if (SelectorUtils.matchPath(pattern, relativePath))
+				return true;
+		}
+		return false;
+	}
+
 	public String getDescription()
 	{
 		StringBuilder sb = new StringBuilder()
@@ -0,0 +1,264 @@
+package org.logscanner.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Чтение локального файла через {@link FileChannel#map}. Файл отображается окнами по {@link #WINDOW_SIZE},
+ * данные не копируются в кучу, кроме небольшого буфера читающего.
+ * Отображение создаётся один раз и используется всеми потоками из {@link #getInputStream()},
+ * так что запись найденного файла в архив или папку читает те же страницы, что и поиск.
+ * {@link #close()} освобождает отображение сразу: пока оно есть, файл нельзя удалить или усечь (ротация в Windows)
+ */
+@Slf4j
+public class MappedContentReader implements ContentReader
+{
+	private static final long WINDOW_SIZE = 256 * 1024 * 1024;
+	/** Освобождает отображение, не дожидаясь сборщика мусора, или null, если JDK этого не позволяет */
+	private static final Consumer<ByteBuffer> UNMAPPER = createUnmapper();
+
+	private final Path path;
+	private final long size;
+
+	private volatile MappedByteBuffer[] windows;
+
+	public MappedContentReader(Path path, long size)
+	{
+		this.path = path;
+		this.size = size;
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException
+	{
+		return new MappedInputStream(getWindows());
+	}
+
+	@Override
+	public InputStream getInputStream(long offset) throws IOException
+	{
+		InputStream result = getInputStream();
+		result.skip(offset);
+		return result;
+	}
+
+	@Override
+	public boolean isRereadCheap()
+	{
+		return true;
+	}
+
+	@Override
+	public SeekableByteChannel openChannel() throws IOException
+	{
+		return FileChannel.open(path, StandardOpenOption.READ);
+	}
+
+	private MappedByteBuffer[] getWindows() throws IOException
+	{
+		MappedByteBuffer[] result = windows;
+		if (result == null)
+		{
+			synchronized (this)
+			{
+				result = windows;
+				if (result == null)
+				{
+					result = new MappedByteBuffer[(int)((size + WINDOW_SIZE - 1) / WINDOW_SIZE)];
+					// отображение остаётся действительным после закрытия канала
+					try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+					{
+						for (int i = 0; i < result.length; i++)
+						{
+							long position = i * WINDOW_SIZE;
+							result[i] = channel.map(MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+						}
+					}
+					windows = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Освобождает отображение. Потоки из {@link #getInputStream()} после этого читать нельзя.
+	 * Если JDK не позволяет освободить отображение явно, его освободит сборщик мусора
+	 */
+	@Override
+	public void close()
+	{
+		MappedByteBuffer[] result;
+		synchronized (this)
+		{
+			result = windows;
+			windows = null;
+		}
+		if (result == null || UNMAPPER == null)
+			return;
+		try
+		{
+			for (MappedByteBuffer window : result)
+				UNMAPPER.accept(window);
+		}
+		catch (RuntimeException ex)
+		{
+			log.warn("Unable to unmap {}: {}", path, ex.toString());
+		}
+	}
+
+	/**
+	 * @return отображение освобождается при {@link #close()}, а не сборщиком мусора
+	 */
+	public static boolean isUnmapSupported()
+	{
+		return UNMAPPER != null;
+	}
+
+	private static Consumer<ByteBuffer> createUnmapper()
+	{
+		try
+		{
+			// JDK 9+
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			Object unsafe = theUnsafe.get(null);
+			return buffer -> invoke(invokeCleaner, unsafe, buffer);
+		}
+		catch (ReflectiveOperationException | RuntimeException ex)
+		{
+			// JDK 8: ((sun.nio.ch.DirectBuffer)buffer).cleaner().clean()
+		}
+		try
+		{
+			Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+			Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			return buffer -> {
+				Object bufferCleaner = invoke(cleaner, buffer);
+				if (bufferCleaner != null)
+					invoke(clean, bufferCleaner);
+			};
+		}
+		catch (ReflectiveOperationException | RuntimeException ex)
+		{
+			log.info("Mapped files are unmapped by garbage collector: {}", ex.toString());
+			return null;
+		}
+	}
+
+	private static Object invoke(Method method, Object target, Object... args)
+	{
+		try
+		{
+			return method.invoke(target, args);
+		}
+		catch (IllegalAccessException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+		catch (InvocationTargetException ex)
+		{
+			throw new IllegalStateException(ex.getCause());
+		}
+	}
+
+	private static class MappedInputStream extends InputStream
+	{
+		private final MappedByteBuffer[] windows;
+		private int index;
+		private ByteBuffer current;
+
+		MappedInputStream(MappedByteBuffer[] windows)
+		{
+			this.windows = windows;
+			this.current = windows.length > 0 ? windows[0].duplicate() : null;
+		}
+
+		/**
+		 * @return false если данных больше нет
+		 */
+		private boolean ensureRemaining()
+		{
+			while (current != null && !current.hasRemaining())
+				current = ++index < windows.length ? windows[index].duplicate() : null;
+			return current != null;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			if (!ensureRemaining())
+				return -1;
+			try
+			{
+				return current.get() & 0xff;
+			}
+			catch (InternalError ex)
+			{
+				throw truncated(ex);
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if (len == 0)
+				return 0;
+			if (!ensureRemaining())
+				return -1;
+			int n = Math.min(len, current.remaining());
+			try
+			{
+				current.get(b, off, n);
+			}
+			catch (InternalError ex)
+			{
+				throw truncated(ex);
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException
+		{
+			long skipped = 0;
+			while (skipped < n && ensureRemaining())
+			{
+				int step = (int)Math.min(n - skipped, current.remaining());
+				current.position(current.position() + step);
+				skipped += step;
+			}
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException
+		{
+			return current != null ? current.remaining() : 0;
+		}
+
+		/**
+		 * Обращение к отображённой странице файла, который обрезали (copytruncate при ротации),
+		 * приходит в Java как {@link InternalError}
+		 */
+		private static IOException truncated(InternalError ex)
+		{
+			return new IOException("File was truncated while reading", ex);
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package org.logscanner.data;
+
+/**
+ * Что показывать в результатах поиска
+ */
+public enum ResultMode
+{
+	/** Найденные строки (записи) */
+	LINES,
+	/** Только файлы, в которых есть совпадение: файл дальше первого совпадения не читается */
+	FILES,
+	/** Количество совпадений по файлам и итог по местам поиска, без самих строк */
+	COUNT,
+	/** N самых новых найденных записей: файлы просматриваются от новых к старым, слишком старые пропускаются */
+	NEWEST;
+}
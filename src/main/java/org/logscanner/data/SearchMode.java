@@ -0,0 +1,16 @@
+package org.logscanner.data;
+
+/**
+ * Как интерпретировать строку поиска
+ */
+public enum SearchMode
+{
+	/** Подстрока */
+	TEXT,
+	/** Несколько подстрок через ';', строка отбирается если найдена любая из них */
+	TERMS,
+	/** Регулярное выражение ({@link java.util.regex.Pattern}), ищется вхождение в строку */
+	REGEX,
+	/** Логическое выражение: AND, OR, NOT, скобки, фразы в кавычках ({@link org.logscanner.util.search.QueryMatcher}) */
+	QUERY;
+}
@@ -0,0 +1,77 @@
+package org.logscanner.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Копия содержимого, сделанная во время поиска: всё прочитанное из {@link #tee(InputStream)}
+ * сохраняется в памяти, а после {@link #MEMORY_THRESHOLD} - во временном файле.
+ * Так удалённый файл для записи результата не нужно читать второй раз.
+ * {@link #close()} удаляет временный файл.
+ */
+public class SpoolContentReader implements ContentReader
+{
+	private static final Logger log = LoggerFactory.getLogger(SpoolContentReader.class);
+
+	private static final int MEMORY_THRESHOLD = 1024 * 1024;
+
+	private final DeferredFileOutputStream spool = new DeferredFileOutputStream(MEMORY_THRESHOLD, "logscanner", ".spool", null);
+
+	/**
+	 * @return поток, копирующий прочитанное в спул. Закрытие потока закрывает и спул
+	 */
+	public InputStream tee(InputStream inputStream)
+	{
+		return new TeeInputStream(inputStream, spool, true);
+	}
+
+	/**
+	 * Дочитывает остаток потока из {@link #tee(InputStream)}, чтобы в спуле оказался весь файл
+	 */
+	public void drain(InputStream teeInputStream) throws IOException
+	{
+		IOUtils.copy(teeInputStream, NullOutputStream.NULL_OUTPUT_STREAM);
+		teeInputStream.close();
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException
+	{
+		if (spool.isInMemory())
+			return new ByteArrayInputStream(spool.getData());
+		return Files.newInputStream(spool.getFile().toPath());
+	}
+
+	@Override
+	public boolean isRereadCheap()
+	{
+		return true;
+	}
+
+	@Override
+	public void close()
+	{
+		try
+		{
+			spool.close();
+		}
+		catch (IOException ex)
+		{
+			log.error(ex.getMessage());
+		}
+		File file = spool.getFile();
+		if (file != null)
+			FileUtils.deleteQuietly(file);
+	}
+}
@@ -4,8 +4,11 @@ import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,6 +20,8 @@ public class UriContentReader implements ContentReader
 {
 	private static final Logger log = LoggerFactory.getLogger(UriContentReader.class);
 	private static final int DEFAULT_BUFFER_SIZE = 20 * 1024 * 1024; // 20Mb
+	/** Умеет ли файловая система схемы перемещаться по каналу. Проверка открывает файл, поэтому запоминаем */
+	private static final Map<String, Boolean> seekableSchemes = new ConcurrentHashMap<>();
 	private final URI uri;
 	private final long size;
 	
@@ -54,6 +59,26 @@ public class UriContentReader implements ContentReader
 		return inputStream;
 	}
 
+	@Override
+	public SeekableByteChannel openChannel() throws IOException
+	{
+		if (Boolean.FALSE.equals(seekableSchemes.get(uri.getScheme())))
+			return null;
+		SeekableByteChannel channel = Files.newByteChannel(Paths.get(uri));
+		try
+		{
+			channel.position(0); // sftp-fs отдаёт канал поверх потока, без перемещения
+			seekableSchemes.put(uri.getScheme(), true);
+			return channel;
+		}
+		catch (UnsupportedOperationException ex)
+		{
+			seekableSchemes.put(uri.getScheme(), false);
+			channel.close();
+			return null;
+		}
+	}
+
 	@Override
 	public void close()
 	{
@@ -45,7 +45,7 @@ public class CopyTextAction extends BaseAction
 		LogEvent logEvent = resultModel.getSelectedItem();
 		if (logEvent != null)
 		{
-			StringSelection stringSelection = new StringSelection(logEvent.getText());
+			StringSelection stringSelection = new StringSelection(logEvent.getTextWithContext());
 		    Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
 		    clipboard.setContents(stringSelection, stringSelection);
 		}
@@ -116,8 +116,10 @@ public class ExportAction extends BaseAction
 					writer.write(path);
 					writer.write("\n@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@\n\n");
 				}
-				writer.write(event.getText());
+				writer.write(event.getTextWithContext());
 				writer.write('\n');
+				if (event.getLinesBefore() != null || event.getLinesAfter() != null)
+					writer.write("--\n");
 			}
 		}
 	}
@@ -18,6 +18,7 @@ import javax.swing.JTable;
 import javax.swing.JToolBar;
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
+import javax.swing.event.ListSelectionEvent;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.TableColumn;
 
@@ -93,6 +94,7 @@ public class ResultsPanel extends JPanel
 		};
 		table.setFillsViewportHeight(true);
 		table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+		table.setAutoCreateRowSorter(true); // сортировка по столбцу "Found" группирует результаты по искомой строке
 		
 		FontMetrics fm = table.getFontMetrics(table.getFont());
 		table.setRowHeight(fm.getHeight() + 8);
@@ -121,7 +123,15 @@ public class ResultsPanel extends JPanel
 		popupMenu.add(new JMenuItem(copyTextAction));
 		
 		table.setComponentPopupMenu(popupMenu);
-		table.getSelectionModel().addListSelectionListener(resultModel);
+		table.getSelectionModel().addListSelectionListener(
+				(ListSelectionEvent event) -> 
+				{
+					int row = table.getSelectedRow();
+					if (row >= 0)
+						row = table.convertRowIndexToModel(row);
+					resultModel.valueChanged(new ListSelectionEvent(event.getSource(), row, row, event.getValueIsAdjusting()));
+				}
+		);
 		
 		resultModel.addPropertyChangeListener(
 				"jobState",
@@ -139,7 +149,7 @@ public class ResultsPanel extends JPanel
 						        			messageAccessor.getMessage(
 				        							"results_panel.text.done",
 				        							new String[] { LogUtils.createDurationString(resultModel.getStartTime(), resultModel.getEndTime()) }
-				        					)
+				        					) + createMatchCountsString()
 					        		);
 					        	else
 					        		MessageBox.showExceptionDialog(null, messageAccessor.getMessage("dialog.title.error"), resultModel.getError());
@@ -150,6 +160,15 @@ public class ResultsPanel extends JPanel
 		);
 	}
 	
+	private String createMatchCountsString()
+	{
+		StringBuilder sb = new StringBuilder();
+		resultModel.getMatchCounts().forEach(
+				(location, count) -> sb.append('\n').append(messageAccessor.getMessage("results_panel.text.matches", new Object[] { location, count }))
+		);
+		return sb.toString();
+	}
+	
 	private JToolBar createToolBar()
 	{		
 		JToolBar toolBar = new JToolBar();
@@ -217,6 +236,9 @@ public class ResultsPanel extends JPanel
 					case 2:
 						result = StringUtils.abbreviate(logEvent.getText(), "...", 500);
 						break;
+					case 3:
+						result = logEvent.getTerms() != null ? StringUtils.join(logEvent.getTerms(), ", ") : null;
+						break;
 					default:
 						result = "";
 				}
@@ -2,6 +2,7 @@ package org.logscanner.gui;
 
 import java.awt.event.ActionEvent;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -9,6 +10,8 @@ import java.sql.Date;
 import java.text.MessageFormat;
 import java.time.ZoneId;
 import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import javax.annotation.PostConstruct;
 
@@ -16,10 +19,13 @@ import org.apache.commons.lang3.StringUtils;
 import org.logscanner.AppConstants;
 import org.logscanner.common.gui.BaseAction;
 import org.logscanner.common.gui.MessageBox;
+import org.logscanner.data.SearchMode;
 import org.logscanner.exception.BusinessException;
 import org.logscanner.jobs.CopyFilesWriter;
 import org.logscanner.service.JobResultModel;
 import org.logscanner.service.SearchModel;
+import org.logscanner.util.search.QueryMatcher;
+import org.logscanner.util.search.QuerySyntaxException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.Job;
@@ -80,6 +86,22 @@ public class SearchAction extends BaseAction {
 		if (searchModel.getSelectedLocations().isEmpty()) {
 			throw new BusinessException(messageAccessor.getMessage("action.search.text.no_locations")); 
 		}
+		if (searchModel.getSearchMode() == SearchMode.REGEX && StringUtils.isNotEmpty(searchModel.getSearchString())) {
+			try {
+				Pattern.compile(searchModel.getSearchString());
+			}
+			catch (PatternSyntaxException ex) {
+				throw new BusinessException(messageAccessor.getMessage("action.search.text.bad_regex", new String[] { ex.getDescription() }));
+			}
+		}
+		if (searchModel.getSearchMode() == SearchMode.QUERY && StringUtils.isNotEmpty(searchModel.getSearchString())) {
+			try {
+				QueryMatcher.compile(searchModel.getSearchString(), StandardCharsets.UTF_8);
+			}
+			catch (QuerySyntaxException ex) {
+				throw new BusinessException(messageAccessor.getMessage("action.search.text.bad_query", new String[] { ex.getDescription() }));
+			}
+		}
 		if (searchModel.isSaveResults()) {
 			switch (searchModel.getSaveType()) {
 				case SearchModel.SAVE_TYPE_FILE:
@@ -123,6 +145,15 @@ public class SearchAction extends BaseAction {
 				.addDate(AppConstants.JOB_PARAM_TO, Date.from(searchModel.getTo().atZone(ZoneId.systemDefault()).toInstant()))
 				.addLong(AppConstants.JOB_PARAM_SAVE_TO_ARCHIVE, searchModel.isSaveResults() ? searchModel.getSaveType() : 0L)
 				.addString(AppConstants.JOB_SEARCH_STRING, searchModel.getSearchString())
+				.addString(AppConstants.JOB_PARAM_SEARCH_MODE, searchModel.getSearchMode().name())
+				.addLong(AppConstants.JOB_PARAM_IGNORE_CASE, searchModel.isIgnoreCase() ? 1L : 0L)
+				.addLong(AppConstants.JOB_PARAM_LINES_BEFORE, (long)searchModel.getLinesBefore())
+				.addLong(AppConstants.JOB_PARAM_LINES_AFTER, (long)searchModel.getLinesAfter())
+				.addString(AppConstants.JOB_PARAM_LEVEL, StringUtils.defaultString(searchModel.getLevel()))
+				.addString(AppConstants.JOB_PARAM_LOGGER, StringUtils.defaultString(searchModel.getLogger()))
+				.addString(AppConstants.JOB_PARAM_THREAD, StringUtils.defaultString(searchModel.getThread()))
+				.addString(AppConstants.JOB_PARAM_RESULT_MODE, searchModel.getResultMode().name())
+				.addLong(AppConstants.JOB_PARAM_NEWEST_COUNT, (long)searchModel.getNewestCount())
 				.addString(AppConstants.JOB_PARAM_LOCATIONS, StringUtils.join(searchModel.getSelectedLocations(), ','))
 				.addString(AppConstants.JOB_PARAM_PATTERN_CODE, searchModel.getPatternCode());
 //				.addString(AppConstants.JOB_PARAM_ENCODING, searchModel.getEncoding());
@@ -24,7 +24,9 @@ import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
+import javax.swing.JSpinner;
 import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingConstants;
 
 import org.apache.commons.lang3.StringUtils;
@@ -34,6 +36,8 @@ import org.logscanner.common.gui.datepicker.DatePickerSettings;
 import org.logscanner.common.gui.datepicker.DateTimePicker;
 import org.logscanner.common.gui.datepicker.TimePickerSettings;
 import org.logscanner.data.LocationGroup;
+import org.logscanner.data.ResultMode;
+import org.logscanner.data.SearchMode;
 import org.logscanner.jobs.CopyFilesWriter;
 import org.logscanner.service.AppProperties;
 import org.logscanner.service.JobResultModel;
@@ -41,6 +45,7 @@ import org.logscanner.service.LocationDao;
 import org.logscanner.service.LogPatternDao;
 import org.logscanner.service.SearchModel;
 import org.logscanner.util.ServiceHelper;
+import org.logscanner.util.search.LayoutFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -50,6 +55,7 @@ import org.springframework.stereotype.Component;
 import com.jgoodies.binding.adapter.BasicComponentFactory;
 import com.jgoodies.binding.adapter.Bindings;
 import com.jgoodies.binding.adapter.RadioButtonAdapter;
+import com.jgoodies.binding.adapter.SpinnerAdapterFactory;
 import com.jgoodies.binding.beans.BeanAdapter;
 import com.jgoodies.binding.beans.PropertyAdapter;
 import com.jgoodies.binding.value.ValueHolder;
@@ -66,6 +72,8 @@ public class SearchPanel extends JPanel
 	private static final long serialVersionUID = 1L;
 	private static final int HPAD = 5; 
 	private static final int VPAD = 5; 
+	private static final int MAX_CONTEXT_LINES = 100;
+	private static final int MAX_NEWEST_COUNT = 10000;
 
 	@Autowired
 	private SearchModel searchModel;
@@ -326,9 +334,42 @@ public class SearchPanel extends JPanel
 		ValueModel searchTextAdapter = beanAdapter.getValueModel("searchString");
 		searchText = BasicComponentFactory.createTextField(searchTextAdapter, false);
 		box1.add(searchText);
+		box1.add(Box.createRigidArea(new Dimension(HPAD, 0)));
+		box1.add(createSearchModeCombo());
+		box1.add(Box.createRigidArea(new Dimension(HPAD, 0)));
+		box1.add(BasicComponentFactory.createCheckBox(beanAdapter.getValueModel("ignoreCase"), messageAccessor.getMessage("search_panel.text.ignore_case")));
+		box1.add(Box.createRigidArea(new Dimension(HPAD, 0)));
+		box1.add(new JLabel(messageAccessor.getMessage("search_panel.text.lines_before")));
+		box1.add(Box.createRigidArea(new Dimension(HPAD, 0)));
+		box1.add(createContextSpinner("linesBefore"));
+		box1.add(Box.createRigidArea(new Dimension(HPAD, 0)));
+		box1.add(new JLabel(messageAccessor.getMessage("search_panel.text.lines_after")));
+		box1.add(Box.createRigidArea(new Dimension(HPAD, 0)));
+		box1.add(createContextSpinner("linesAfter"));
 		panel.add(box1);
 		panel.add(Box.createRigidArea(new Dimension(0, VPAD)));
 		
+		final Box box2 = Box.createHorizontalBox();
+		box2.add(new JLabel(messageAccessor.getMessage("search_panel.text.level")));
+		box2.add(Box.createRigidArea(new Dimension(HPAD, 0)));
+		box2.add(createLevelCombo());
+		box2.add(Box.createRigidArea(new Dimension(HPAD, 0)));
+		box2.add(new JLabel(messageAccessor.getMessage("search_panel.text.logger")));
+		box2.add(Box.createRigidArea(new Dimension(HPAD, 0)));
+		box2.add(BasicComponentFactory.createTextField(beanAdapter.getValueModel("logger"), false));
+		box2.add(Box.createRigidArea(new Dimension(HPAD, 0)));
+		box2.add(new JLabel(messageAccessor.getMessage("search_panel.text.thread")));
+		box2.add(Box.createRigidArea(new Dimension(HPAD, 0)));
+		box2.add(BasicComponentFactory.createTextField(beanAdapter.getValueModel("thread"), false));
+		box2.add(Box.createRigidArea(new Dimension(HPAD, 0)));
+		box2.add(new JLabel(messageAccessor.getMessage("search_panel.text.show")));
+		box2.add(Box.createRigidArea(new Dimension(HPAD, 0)));
+		box2.add(createResultModeCombo());
+		box2.add(Box.createRigidArea(new Dimension(HPAD, 0)));
+		box2.add(createNewestCountSpinner());
+		panel.add(box2);
+		panel.add(Box.createRigidArea(new Dimension(0, VPAD)));
+		
 //		final Box box2 = Box.createHorizontalBox();
 //		box2.add(new JLabel("кодировка:"));
 //		box2.add(Box.createRigidArea(new Dimension(HPAD, 0)));
@@ -342,6 +383,88 @@ public class SearchPanel extends JPanel
 		return panel;
 	}
 	
+	private JComboBox<ListItem<SearchMode>> createSearchModeCombo()
+	{
+		List<ListItem<SearchMode>> modes = new ArrayList<>();
+		for (SearchMode mode : SearchMode.values())
+			modes.add(new ListItem<>(mode, messageAccessor.getMessage("search_panel.search_mode." + mode.name().toLowerCase())));
+		JComboBox<ListItem<SearchMode>> combo = new JComboBox<>(modes.toArray(new ListItem[modes.size()]));
+		combo.setSelectedIndex(searchModel.getSearchMode().ordinal());
+		combo.setMaximumSize(combo.getPreferredSize());
+		combo.addItemListener(
+				(ItemEvent event) -> 
+				{
+					if (event.getStateChange() == ItemEvent.SELECTED)
+						searchModel.setSearchMode(((ListItem<SearchMode>)event.getItem()).getValue());
+				}
+		);
+		return combo;
+	}
+	
+	private JComboBox<ListItem<ResultMode>> createResultModeCombo()
+	{
+		List<ListItem<ResultMode>> modes = new ArrayList<>();
+		for (ResultMode mode : ResultMode.values())
+			modes.add(new ListItem<>(mode, messageAccessor.getMessage("search_panel.result_mode." + mode.name().toLowerCase())));
+		JComboBox<ListItem<ResultMode>> combo = new JComboBox<>(modes.toArray(new ListItem[modes.size()]));
+		combo.setSelectedIndex(searchModel.getResultMode().ordinal());
+		combo.setMaximumSize(combo.getPreferredSize());
+		combo.addItemListener(
+				(ItemEvent event) -> 
+				{
+					if (event.getStateChange() == ItemEvent.SELECTED)
+						searchModel.setResultMode(((ListItem<ResultMode>)event.getItem()).getValue());
+				}
+		);
+		return combo;
+	}
+	
+	private JComboBox<ListItem<String>> createLevelCombo()
+	{
+		List<ListItem<String>> levels = new ArrayList<>();
+		levels.add(new ListItem<>("", messageAccessor.getMessage("search_panel.level.any")));
+		for (String level : LayoutFilter.LEVELS.subList(1, LayoutFilter.LEVELS.size()))
+			levels.add(new ListItem<>(level + "+", level + "+"));
+		JComboBox<ListItem<String>> combo = new JComboBox<>(levels.toArray(new ListItem[levels.size()]));
+		levels.stream()
+				.filter(item -> Objects.equals(item.getValue(), searchModel.getLevel()))
+				.findFirst()
+				.ifPresent(combo::setSelectedItem);
+		combo.setMaximumSize(combo.getPreferredSize());
+		combo.addItemListener(
+				(ItemEvent event) -> 
+				{
+					if (event.getStateChange() == ItemEvent.SELECTED)
+						searchModel.setLevel(((ListItem<String>)event.getItem()).getValue());
+				}
+		);
+		return combo;
+	}
+	
+	private JSpinner createContextSpinner(String propertyName)
+	{
+		SpinnerNumberModel model = SpinnerAdapterFactory.createNumberAdapter(beanAdapter.getValueModel(propertyName), 0, 0, MAX_CONTEXT_LINES, 1);
+		JSpinner spinner = new JSpinner(model);
+		spinner.setMaximumSize(spinner.getPreferredSize());
+		return spinner;
+	}
+	
+	/**
+	 * Число записей нужно только в режиме {@link ResultMode#NEWEST}
+	 */
+	private JSpinner createNewestCountSpinner()
+	{
+		SpinnerNumberModel model = SpinnerAdapterFactory.createNumberAdapter(beanAdapter.getValueModel("newestCount"), 200, 1, MAX_NEWEST_COUNT, 100);
+		JSpinner spinner = new JSpinner(model);
+		spinner.setMaximumSize(spinner.getPreferredSize());
+		spinner.setEnabled(searchModel.getResultMode() == ResultMode.NEWEST);
+		searchModel.addPropertyChangeListener(
+				"resultMode",
+				(PropertyChangeEvent event) -> spinner.setEnabled(event.getNewValue() == ResultMode.NEWEST)
+		);
+		return spinner;
+	}
+	
 	private JPanel createRquidSearchPanel()
 	{
 		JPanel panel = new JPanel(new BorderLayout());
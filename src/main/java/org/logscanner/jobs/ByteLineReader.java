@@ -0,0 +1,268 @@
+package org.logscanner.jobs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.logscanner.util.TimestampParser;
+import org.logscanner.util.search.LineConsumer;
+import org.logscanner.util.search.LineMatcher;
+
+/**
+ * Построчное чтение без декодирования: строки - это диапазоны байт во внутреннем буфере.
+ * Буфер переиспользуется, при длинной строке растёт.
+ * Предыдущие строки для {@link #getPreviousLines()} - кольцевой буфер смещений, запись - диапазон от её начала;
+ * их байты сохраняются в буфере при сдвиге.
+ */
+public class ByteLineReader implements LogLineReader
+{
+	private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	/** Предыдущие строки, занимающие больше, забываются */
+	private static final int MAX_HISTORY_BYTES = 1024 * 1024;
+	/** Запись длиннее обрезается */
+	private static final int MAX_RECORD_BYTES = 256 * 1024;
+
+	private final InputStream inputStream;
+	private final Charset charset;
+	private byte[] buffer;
+	/** количество прочитанных байт в буфере */
+	private int limit;
+	/** смещение начала буфера от начала потока */
+	private long bufferOffset;
+	/** откуда искать следующую строку */
+	private int position;
+	private int lineStart;
+	private int lineEnd;
+	private boolean eof;
+	private boolean hasLine;
+	/** Кольцевой буфер начал и концов предыдущих строк */
+	private int[] historyStart = new int[0];
+	private int[] historyEnd = new int[0];
+	private int historyCount;
+	private int historyNext;
+	/** Начало записи в буфере или -1 */
+	private int recordStart = -1;
+	private int recordEnd;
+	private int recordLines;
+	/** Запись, превысившая {@link #MAX_RECORD_BYTES}, копируется сюда, чтобы не держать в буфере весь длинный стек */
+	private byte[] detachedRecord;
+	private int detachedLength;
+	private boolean detached;
+
+	public ByteLineReader(InputStream inputStream, Charset charset)
+	{
+		this(inputStream, charset, DEFAULT_BUFFER_SIZE);
+	}
+
+	public ByteLineReader(InputStream inputStream, Charset charset, int bufferSize)
+	{
+		this.inputStream = inputStream;
+		this.charset = charset;
+		this.buffer = new byte[bufferSize];
+	}
+
+	@Override
+	public boolean nextLine() throws IOException
+	{
+		if (hasLine && historyStart.length > 0)
+			addToHistory();
+		hasLine = true;
+		lineStart = position;
+		int scanFrom = position;
+		while (true)
+		{
+			for (int i = scanFrom; i < limit; i++)
+			{
+				if (buffer[i] == '\n')
+				{
+					setLineEnd(i);
+					position = i + 1;
+					return true;
+				}
+			}
+			if (eof)
+			{
+				if (lineStart >= limit)
+					return false;
+				setLineEnd(limit);
+				position = limit;
+				return true;
+			}
+			scanFrom = limit - lineStart;
+			fill();
+			scanFrom += lineStart;
+		}
+	}
+
+	private void setLineEnd(int end)
+	{
+		lineEnd = (end > lineStart && buffer[end - 1] == '\r') ? end - 1 : end;
+	}
+
+	private void addToHistory()
+	{
+		historyStart[historyNext] = lineStart;
+		historyEnd[historyNext] = lineEnd;
+		historyNext = (historyNext + 1) % historyStart.length;
+		historyCount = Math.min(historyCount + 1, historyStart.length);
+	}
+
+	private int historyIndex(int age)
+	{
+		return (historyNext - age + historyStart.length) % historyStart.length;
+	}
+
+	/**
+	 * Сдвигает начало текущей строки (и сохраняемых предыдущих) в начало буфера (при необходимости увеличивая его) и дочитывает поток
+	 */
+	private void fill() throws IOException
+	{
+		while (historyCount > 0 && lineStart - historyStart[historyIndex(historyCount)] > MAX_HISTORY_BYTES)
+			historyCount--;
+		int keepFrom = historyCount > 0 ? historyStart[historyIndex(historyCount)] : lineStart;
+		if (recordStart >= 0)
+			keepFrom = Math.min(keepFrom, recordStart);
+		if (keepFrom > 0)
+		{
+			System.arraycopy(buffer, keepFrom, buffer, 0, limit - keepFrom);
+			bufferOffset += keepFrom;
+			limit -= keepFrom;
+			position -= keepFrom;
+			lineStart -= keepFrom;
+			if (recordStart >= 0)
+			{
+				recordStart -= keepFrom;
+				recordEnd -= keepFrom;
+			}
+			for (int i = 1; i <= historyCount; i++)
+			{
+				historyStart[historyIndex(i)] -= keepFrom;
+				historyEnd[historyIndex(i)] -= keepFrom;
+			}
+		}
+		else if (limit == buffer.length)
+		{
+			byte[] newBuffer = new byte[buffer.length * 2];
+			System.arraycopy(buffer, 0, newBuffer, 0, limit);
+			buffer = newBuffer;
+		}
+		int n = inputStream.read(buffer, limit, buffer.length - limit);
+		if (n < 0)
+			eof = true;
+		else
+			limit += n;
+	}
+
+	@Override
+	public boolean matches(LineMatcher matcher)
+	{
+		return matcher.matches(buffer, lineStart, lineEnd);
+	}
+
+	@Override
+	public List<String> getMatchedTerms(LineMatcher matcher)
+	{
+		return matcher.getMatchedTerms(buffer, lineStart, lineEnd);
+	}
+
+	@Override
+	public boolean accept(LineConsumer consumer)
+	{
+		consumer.accept(buffer, lineStart, lineEnd);
+		return true;
+	}
+
+	@Override
+	public long parseTimestamp(TimestampParser parser)
+	{
+		return parser.parse(buffer, lineStart, lineEnd);
+	}
+
+	@Override
+	public String getLinePrefix(int maxLength)
+	{
+		return new String(buffer, lineStart, Math.min(lineEnd - lineStart, maxLength), charset);
+	}
+
+	@Override
+	public String getLine()
+	{
+		return new String(buffer, lineStart, lineEnd - lineStart, charset);
+	}
+
+	@Override
+	public long getLineOffset()
+	{
+		return bufferOffset + lineStart;
+	}
+
+	@Override
+	public void setHistorySize(int lines)
+	{
+		historyStart = new int[lines];
+		historyEnd = new int[lines];
+		historyCount = 0;
+		historyNext = 0;
+	}
+
+	@Override
+	public List<String> getPreviousLines()
+	{
+		int count = historyCount - Math.min(historyCount, Math.max(recordLines - 1, 0));
+		List<String> result = new ArrayList<>(count);
+		for (int i = historyCount; i > historyCount - count; i--)
+		{
+			int index = historyIndex(i);
+			result.add(new String(buffer, historyStart[index], historyEnd[index] - historyStart[index], charset));
+		}
+		return result;
+	}
+
+	@Override
+	public void startRecord()
+	{
+		recordStart = lineStart;
+		recordEnd = lineEnd;
+		recordLines = 1;
+		detached = false;
+	}
+
+	@Override
+	public void extendRecord()
+	{
+		if (recordStart < 0 && !detached)
+		{
+			startRecord();
+			return;
+		}
+		recordLines++;
+		if (detached)
+			return;
+		if (lineEnd - recordStart <= MAX_RECORD_BYTES)
+		{
+			recordEnd = lineEnd;
+			return;
+		}
+		detachedLength = recordEnd - recordStart;
+		if (detachedRecord == null || detachedRecord.length < detachedLength)
+			detachedRecord = new byte[MAX_RECORD_BYTES];
+		System.arraycopy(buffer, recordStart, detachedRecord, 0, detachedLength);
+		detached = true;
+		recordStart = -1;
+	}
+
+	@Override
+	public String getRecord()
+	{
+		String result;
+		if (detached)
+			result = new String(detachedRecord, 0, detachedLength, charset);
+		else if (recordStart >= 0)
+			result = new String(buffer, recordStart, recordEnd - recordStart, charset);
+		else
+			return getLine();
+		return result.indexOf('\r') >= 0 ? result.replace("\r\n", "\n") : result;
+	}
+}
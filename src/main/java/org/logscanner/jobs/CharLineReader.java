@@ -0,0 +1,360 @@
+package org.logscanner.jobs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.logscanner.util.TimestampParser;
+import org.logscanner.util.search.LineMatcher;
+
+/**
+ * Построчное чтение с декодированием - для кодировок, в которых нельзя искать по байтам (UTF-16 и т.п.).
+ * <p>
+ * Устроено как {@link ByteLineReader}, только буфер символьный: строки - диапазоны во внутреннем буфере,
+ * матчер получает их как {@link CharSequence} без создания {@link String}.
+ * Декодер и буферы переиспользуются в пределах потока: читатель забирает их при создании
+ * и возвращает в {@link #release()}. Если в потоке уже читается другой файл, создаются новые.
+ */
+public class CharLineReader implements LogLineReader
+{
+	private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	private static final int MIN_BUFFER_SIZE = 16;
+	/** Буфер, выросший из-за длинных строк больше этого, не сохраняется для следующих файлов */
+	private static final int MAX_REUSED_BUFFER_SIZE = 1024 * 1024;
+	/** Предыдущие строки, занимающие больше, забываются */
+	private static final int MAX_HISTORY_CHARS = 1024 * 1024;
+	/** Запись длиннее обрезается */
+	private static final int MAX_RECORD_CHARS = 256 * 1024;
+
+	private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<>();
+
+	private final InputStream inputStream;
+	private Buffers buffers;
+	private final CharsetDecoder decoder;
+	/** Прочитанные, но ещё не декодированные байты */
+	private final ByteBuffer bytes;
+	private char[] buffer;
+	/** количество декодированных символов в буфере */
+	private int limit;
+	/** откуда искать следующую строку */
+	private int position;
+	private int lineStart;
+	private int lineEnd;
+	private boolean endOfInput;
+	private boolean eof;
+	private boolean hasLine;
+	private final Line line = new Line();
+	/** Кольцевой буфер начал и концов предыдущих строк */
+	private int[] historyStart = new int[0];
+	private int[] historyEnd = new int[0];
+	private int historyCount;
+	private int historyNext;
+	/** Начало записи в буфере или -1 */
+	private int recordStart = -1;
+	private int recordEnd;
+	private int recordLines;
+	/** Запись, превысившая {@link #MAX_RECORD_CHARS} */
+	private String detachedRecord;
+	private boolean detached;
+
+	public CharLineReader(InputStream inputStream, Charset charset)
+	{
+		this(inputStream, charset, DEFAULT_BUFFER_SIZE);
+	}
+
+	public CharLineReader(InputStream inputStream, Charset charset, int bufferSize)
+	{
+		this.inputStream = inputStream;
+		Buffers reused = BUFFERS.get();
+		if (reused != null && reused.charset.equals(charset) && bufferSize == DEFAULT_BUFFER_SIZE)
+		{
+			BUFFERS.remove();
+			buffers = reused;
+		}
+		else
+			buffers = new Buffers(charset, bufferSize);
+		this.decoder = buffers.decoder.reset();
+		this.bytes = buffers.bytes;
+		this.buffer = buffers.chars;
+		bytes.clear();
+		bytes.flip();
+	}
+
+	@Override
+	public boolean nextLine() throws IOException
+	{
+		if (hasLine && historyStart.length > 0)
+			addToHistory();
+		hasLine = true;
+		lineStart = position;
+		int scanFrom = position;
+		while (true)
+		{
+			for (int i = scanFrom; i < limit; i++)
+			{
+				if (buffer[i] == '\n')
+				{
+					setLineEnd(i);
+					position = i + 1;
+					return true;
+				}
+			}
+			if (eof)
+			{
+				if (lineStart >= limit)
+					return false;
+				setLineEnd(limit);
+				position = limit;
+				return true;
+			}
+			scanFrom = limit - lineStart;
+			fill();
+			scanFrom += lineStart;
+		}
+	}
+
+	private void setLineEnd(int end)
+	{
+		lineEnd = (end > lineStart && buffer[end - 1] == '\r') ? end - 1 : end;
+		line.start = lineStart;
+		line.end = lineEnd;
+	}
+
+	private void addToHistory()
+	{
+		historyStart[historyNext] = lineStart;
+		historyEnd[historyNext] = lineEnd;
+		historyNext = (historyNext + 1) % historyStart.length;
+		historyCount = Math.min(historyCount + 1, historyStart.length);
+	}
+
+	private int historyIndex(int age)
+	{
+		return (historyNext - age + historyStart.length) % historyStart.length;
+	}
+
+	/**
+	 * Сдвигает начало текущей строки (и сохраняемых предыдущих) в начало буфера (при необходимости увеличивая его),
+	 * дочитывает и декодирует поток
+	 */
+	private void fill() throws IOException
+	{
+		while (historyCount > 0 && lineStart - historyStart[historyIndex(historyCount)] > MAX_HISTORY_CHARS)
+			historyCount--;
+		int keepFrom = historyCount > 0 ? historyStart[historyIndex(historyCount)] : lineStart;
+		if (recordStart >= 0)
+			keepFrom = Math.min(keepFrom, recordStart);
+		if (keepFrom > 0)
+		{
+			System.arraycopy(buffer, keepFrom, buffer, 0, limit - keepFrom);
+			limit -= keepFrom;
+			position -= keepFrom;
+			lineStart -= keepFrom;
+			if (recordStart >= 0)
+			{
+				recordStart -= keepFrom;
+				recordEnd -= keepFrom;
+			}
+			for (int i = 1; i <= historyCount; i++)
+			{
+				historyStart[historyIndex(i)] -= keepFrom;
+				historyEnd[historyIndex(i)] -= keepFrom;
+			}
+		}
+		// суррогатной паре нужно два символа
+		if (buffer.length - limit < 2)
+		{
+			char[] newBuffer = new char[buffer.length * 2];
+			System.arraycopy(buffer, 0, newBuffer, 0, limit);
+			buffer = newBuffer;
+		}
+		CharBuffer out = CharBuffer.wrap(buffer, limit, buffer.length - limit);
+		while (out.position() == limit && !eof)
+		{
+			if (!endOfInput)
+			{
+				bytes.compact();
+				int n = inputStream.read(bytes.array(), bytes.position(), bytes.remaining());
+				if (n < 0)
+					endOfInput = true;
+				else
+					bytes.position(bytes.position() + n);
+				bytes.flip();
+			}
+			// некорректные последовательности заменяются, как в InputStreamReader
+			if (decoder.decode(bytes, out, endOfInput).isUnderflow() && endOfInput)
+				eof = decoder.flush(out).isUnderflow();
+		}
+		limit = out.position();
+	}
+
+	/**
+	 * Возвращает декодер и буферы для следующего файла в этом потоке. После этого читать нельзя
+	 */
+	@Override
+	public void release()
+	{
+		if (buffers == null)
+			return;
+		if (buffer.length <= MAX_REUSED_BUFFER_SIZE)
+		{
+			buffers.chars = buffer;
+			BUFFERS.set(buffers);
+		}
+		buffers = null;
+	}
+
+	@Override
+	public boolean matches(LineMatcher matcher)
+	{
+		return matcher.matches(line);
+	}
+
+	@Override
+	public List<String> getMatchedTerms(LineMatcher matcher)
+	{
+		return matcher.getMatchedTerms(line);
+	}
+
+	@Override
+	public long parseTimestamp(TimestampParser parser)
+	{
+		return parser.parse(line, 0, line.length());
+	}
+
+	@Override
+	public String getLinePrefix(int maxLength)
+	{
+		return new String(buffer, lineStart, Math.min(lineEnd - lineStart, maxLength));
+	}
+
+	@Override
+	public String getLine()
+	{
+		return new String(buffer, lineStart, lineEnd - lineStart);
+	}
+
+	@Override
+	public void setHistorySize(int lines)
+	{
+		historyStart = new int[lines];
+		historyEnd = new int[lines];
+		historyCount = 0;
+		historyNext = 0;
+	}
+
+	@Override
+	public List<String> getPreviousLines()
+	{
+		int count = historyCount - Math.min(historyCount, Math.max(recordLines - 1, 0));
+		List<String> result = new ArrayList<>(count);
+		for (int i = historyCount; i > historyCount - count; i--)
+		{
+			int index = historyIndex(i);
+			result.add(new String(buffer, historyStart[index], historyEnd[index] - historyStart[index]));
+		}
+		return result;
+	}
+
+	@Override
+	public void startRecord()
+	{
+		recordStart = lineStart;
+		recordEnd = lineEnd;
+		recordLines = 1;
+		detached = false;
+		detachedRecord = null;
+	}
+
+	@Override
+	public void extendRecord()
+	{
+		if (recordStart < 0 && !detached)
+		{
+			startRecord();
+			return;
+		}
+		recordLines++;
+		if (detached)
+			return;
+		if (lineEnd - recordStart <= MAX_RECORD_CHARS)
+		{
+			recordEnd = lineEnd;
+			return;
+		}
+		detachedRecord = new String(buffer, recordStart, recordEnd - recordStart);
+		detached = true;
+		recordStart = -1;
+	}
+
+	@Override
+	public String getRecord()
+	{
+		String result;
+		if (detached)
+			result = detachedRecord;
+		else if (recordStart >= 0)
+			result = new String(buffer, recordStart, recordEnd - recordStart);
+		else
+			return getLine();
+		return result.indexOf('\r') >= 0 ? result.replace("\r\n", "\n") : result;
+	}
+
+	/**
+	 * Текущая строка без копирования. Действительна до следующего {@link #nextLine()}
+	 */
+	private class Line implements CharSequence
+	{
+		int start;
+		int end;
+
+		@Override
+		public int length()
+		{
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index)
+		{
+			return buffer[start + index];
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to)
+		{
+			return CharBuffer.wrap(buffer, start + from, to - from);
+		}
+
+		@Override
+		public String toString()
+		{
+			return new String(buffer, start, end - start);
+		}
+	}
+
+	private static class Buffers
+	{
+		final Charset charset;
+		final CharsetDecoder decoder;
+		final ByteBuffer bytes;
+		char[] chars;
+
+		Buffers(Charset charset, int bufferSize)
+		{
+			this.charset = charset;
+			this.decoder = charset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			// хотя бы один символ в любой кодировке
+			this.bytes = ByteBuffer.allocate(Math.max(bufferSize, MIN_BUFFER_SIZE));
+			this.chars = new char[Math.max(bufferSize, MIN_BUFFER_SIZE)];
+		}
+	}
+}
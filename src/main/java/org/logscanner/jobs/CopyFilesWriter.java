@@ -42,6 +42,10 @@ public class CopyFilesWriter implements ItemWriter<FileData>, StepExecutionListe
 				Files.createDirectories(filePath.getParent());
 				Files.copy(inputStream, filePath, StandardCopyOption.REPLACE_EXISTING);	
 			}
+			finally
+			{
+				fileData.getContentReader().close(); // временная копия (SpoolContentReader) больше не нужна
+			}
 		}
 	}
 
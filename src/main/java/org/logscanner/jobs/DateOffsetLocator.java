@@ -0,0 +1,97 @@
+package org.logscanner.jobs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+import org.logscanner.util.TimestampFormat;
+import org.logscanner.util.TimestampParser;
+
+/**
+ * Бинарный поиск по смещению в упорядоченном по времени логе: находит начало строки,
+ * с которой имеет смысл читать файл, чтобы не пропустить записи начиная с dateFrom.
+ * Работает только для кодировок, где перевод строки - байт '\n' (см. {@link org.logscanner.util.search.SearchUtils#isByteSearchable}).
+ */
+public class DateOffsetLocator
+{
+	/** Меньше этого интервала дальше не делим - дочитаем линейно */
+	private static final int MIN_GAP = 64 * 1024;
+	/** Сколько байт после точки деления просматриваем в поисках строки с датой */
+	private static final int PROBE_SIZE = 16 * 1024;
+	/** Обрезанную буфером строку разбираем, только если дата в ней точно поместилась */
+	private static final int DATE_PREFIX_LENGTH = 64;
+
+	private final SeekableByteChannel channel;
+	private final long size;
+	private final TimestampParser dateParser;
+	private final ByteBuffer buffer = ByteBuffer.allocate(PROBE_SIZE);
+
+	public DateOffsetLocator(SeekableByteChannel channel, long size, TimestampFormat dateFormat)
+	{
+		this.channel = channel;
+		this.size = size;
+		this.dateParser = dateFormat.newParser();
+	}
+
+	/**
+	 * @return смещение начала строки с датой раньше dateFrom (или 0). Все строки с датой не раньше dateFrom находятся после него
+	 */
+	public long locate(long dateFrom) throws IOException
+	{
+		long lo = 0; // всегда начало строки, дата которой меньше dateFrom
+		long hi = size;
+		while (hi - lo > MIN_GAP)
+		{
+			long mid = lo + (hi - lo) / 2;
+			long[] found = new long[1];
+			long date = findDateAfter(mid, found);
+			if (date == TimestampFormat.NO_DATE)
+				break; // не нашли дату рядом - дальше не сужаем
+			if (date < dateFrom)
+			{
+				if (found[0] >= hi)
+					break; // порядок строк нарушен
+				lo = found[0];
+			}
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Первая строка, начинающаяся после offset и содержащая дату
+	 * @param lineStart [0] - смещение найденной строки
+	 */
+	private long findDateAfter(long offset, long[] lineStart) throws IOException
+	{
+		buffer.clear();
+		channel.position(offset);
+		while (buffer.hasRemaining() && channel.read(buffer) > 0)
+			;
+		byte[] buf = buffer.array();
+		int limit = buffer.position();
+
+		int pos = 0;
+		// offset может попасть в середину строки - начинаем со следующей
+		while (pos < limit && buf[pos] != '\n')
+			pos++;
+		pos++;
+		while (pos < limit)
+		{
+			int end = pos;
+			while (end < limit && buf[end] != '\n')
+				end++;
+			if (end == limit && offset + limit < size && end - pos < DATE_PREFIX_LENGTH)
+				return TimestampFormat.NO_DATE; // строка обрезана буфером
+			long date = dateParser.parse(buf, pos, end);
+			if (date != TimestampFormat.NO_DATE)
+			{
+				lineStart[0] = offset + pos;
+				return date;
+			}
+			pos = end + 1;
+		}
+		return TimestampFormat.NO_DATE;
+	}
+}
@@ -3,17 +3,22 @@ package org.logscanner.jobs;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.builder.CompareToBuilder;
 import org.logscanner.AppConstants;
+import org.logscanner.cache.CacheFileInfo;
 import org.logscanner.data.DirInfo;
 import org.logscanner.data.FileInfo;
 import org.logscanner.data.FilterParams;
 import org.logscanner.data.Location;
 import org.logscanner.data.LogPattern;
+import org.logscanner.data.ResultMode;
 import org.logscanner.logger.Logged;
 import org.logscanner.logger.Logged.Level;
+import org.logscanner.service.CacheManager;
 import org.logscanner.service.FileServiceSelector;
 import org.logscanner.service.FileSystemService;
 import org.logscanner.service.JobResultModel;
@@ -42,11 +47,14 @@ public class DirectoryFilesProcessor implements ItemProcessor<Location, DirInfo>
 	private FileServiceSelector fileServiceSelector;
 	@Autowired
 	private JobResultModel resultModel;
+	@Autowired
+	private CacheManager cacheManager;
 
 	private StepExecution stepExecution;
 	private LogPattern pattern;
 	private Date dateFrom;
 	private Date dateTo;
+	private ResultMode resultMode;
 
 	@Override
 	@Logged(level = Level.DEBUG)
@@ -74,7 +82,7 @@ public class DirectoryFilesProcessor implements ItemProcessor<Location, DirInfo>
 		{
 			resultModel.addFilesToProcess(list.size());
 			
-			Collections.sort(list, new NameComparator());
+			Collections.sort(list, resultMode == ResultMode.NEWEST ? new NewestFirstComparator(list) : new NameComparator());
 			result = new DirInfo();
 			result.setLocationCode(location.getCode());
 			result.setHost(location.getHost());
@@ -96,6 +104,33 @@ public class DirectoryFilesProcessor implements ItemProcessor<Location, DirInfo>
 		}
 	}
 
+	/**
+	 * По убыванию времени изменения из кэша, файлы без него - в конце по имени
+	 */
+	public class NewestFirstComparator implements Comparator<FileInfo>
+	{
+		private final Map<String, Long> lastModified = new HashMap<>();
+
+		public NewestFirstComparator(List<FileInfo> files)
+		{
+			for (FileInfo file : files)
+			{
+				CacheFileInfo cacheFileInfo = cacheManager.getFileInfo(file.getLocationCode(), file.getFilePath(), null);
+				if (cacheFileInfo != null && cacheFileInfo.getLastModified() != null)
+					lastModified.put(file.getFilePath(), cacheFileInfo.getLastModified().getTime());
+			}
+		}
+
+		@Override
+		public int compare(FileInfo f1, FileInfo f2)
+		{
+			return (new CompareToBuilder())
+							.append(lastModified.getOrDefault(f2.getFilePath(), Long.MIN_VALUE), lastModified.getOrDefault(f1.getFilePath(), Long.MIN_VALUE))
+							.append(f1.getFilePath().toLowerCase(), f2.getFilePath().toLowerCase())
+							.toComparison();
+		}
+	}
+
     @AfterStep
 	@Override
 	public ExitStatus afterStep(StepExecution stepExecution)
@@ -111,5 +146,6 @@ public class DirectoryFilesProcessor implements ItemProcessor<Location, DirInfo>
         this.pattern = patternDao.getByCode(stepExecution.getJobParameters().getString(AppConstants.JOB_PARAM_PATTERN_CODE));
         this.dateFrom = stepExecution.getJobParameters().getDate(AppConstants.JOB_PARAM_FROM);
         this.dateTo = stepExecution.getJobParameters().getDate(AppConstants.JOB_PARAM_TO);
+        this.resultMode = ResultMode.valueOf(stepExecution.getJobParameters().getString(AppConstants.JOB_PARAM_RESULT_MODE, ResultMode.LINES.name()));
     }
 }
@@ -1,41 +1,67 @@
 package org.logscanner.jobs;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.Charset;
 import java.text.DateFormat;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
 
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.time.FastDateFormat;
 import org.logscanner.AppConstants;
+import org.logscanner.cache.BlockFilters;
 import org.logscanner.cache.CacheFileInfo;
+import org.logscanner.cache.FilePrefix;
+import org.logscanner.cache.TimeIndex;
+import org.logscanner.cache.TrigramIndex;
+import org.logscanner.data.ContentReader;
 import org.logscanner.data.FileData;
 import org.logscanner.data.FileInfo;
 import org.logscanner.data.LogEvent;
 import org.logscanner.data.LogPattern;
+import org.logscanner.data.ResultMode;
+import org.logscanner.data.SpoolContentReader;
+import org.logscanner.data.SearchMode;
 import org.logscanner.exception.FileTooBigException;
 import org.logscanner.logger.Logged;
 import org.logscanner.logger.Logged.Level;
+import org.logscanner.service.AppProperties;
 import org.logscanner.service.CacheManager;
 import org.logscanner.service.FileServiceSelector;
 import org.logscanner.service.FileSystemService;
 import org.logscanner.service.FileSystemService.ReaderType;
 import org.logscanner.service.JobResultModel;
 import org.logscanner.service.LogPatternDao;
+import org.logscanner.service.SearchModel;
+import org.logscanner.util.CompressionUtils;
 import org.logscanner.util.DateFormatSelector;
+import org.logscanner.util.LogLayout;
+import org.logscanner.util.ReadAheadInputStream;
+import org.logscanner.util.TimestampFormat;
+import org.logscanner.util.TimestampParser;
+import org.logscanner.util.search.LayoutFilter;
+import org.logscanner.util.search.LineMatcher;
+import org.logscanner.util.fs.SelectorUtils;
+import org.logscanner.util.search.SearchUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.ExitStatus;
@@ -45,6 +71,8 @@ import org.springframework.batch.core.annotation.AfterStep;
 import org.springframework.batch.core.annotation.BeforeStep;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -55,6 +83,21 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class FileContentProcessor implements ItemProcessor<FileInfo, FileData>, StepExecutionListener
 {
+	/** Сколько байт от начала строки декодировать для разбора даты */
+	private static final int DATE_PREFIX_LENGTH = 64;
+	/** Файлы меньше этого размера читаем целиком, не ищем начало периода делением пополам */
+	private static final long SEEK_MIN_SIZE = 4 * 1024 * 1024;
+	/** Файлы (точнее, непрочитанный остаток) больше этого размера просматриваются по частям параллельно */
+	private static final long SPLIT_MIN_SIZE = 64 * 1024 * 1024;
+	/** Части меньше этого размера не выделяем */
+	private static final long SPLIT_CHUNK_MIN_SIZE = 16 * 1024 * 1024;
+	/** Столько распакованных байт читаем в своём потоке, дальше распаковка идёт в {@link #decompressTaskExecutor} */
+	private static final long READ_AHEAD_SYNC_LENGTH = 4 * 1024 * 1024;
+	private static final int READ_AHEAD_BLOCK_SIZE = 256 * 1024;
+	private static final int READ_AHEAD_BLOCKS = 4;
+	/** Время изменения в zip хранится с точностью до 2 секунд */
+	private static final long ZIP_TIME_PRECISION = 2000;
+	
 	@Autowired
 	private JobResultModel resultModel;
 	@Autowired
@@ -63,16 +106,50 @@ public class FileContentProcessor implements ItemProcessor<FileInfo, FileData>,
 	private FileServiceSelector fileServiceSelector;
 	@Autowired
 	private CacheManager cacheManager;
+	@Autowired
+	private AppProperties appProperties;
+	@Autowired
+	private ForkJoinPool fileSplitPool;
+	@Autowired
+	@Qualifier("decompressTaskExecutor")
+	private TaskExecutor decompressTaskExecutor;
 
 	private StepExecution stepExecution;
 	private String commonPrefix;
 	private String searchString;
+	private SearchMode searchMode;
+	private boolean ignoreCase;
 	private String encoding;
+	private Charset charset;
+	private boolean byteSearch;
+	private LineMatcher lineMatcher;
+	/** Отбор записей по уровню, логгеру, потоку или null */
+	private LayoutFilter layoutFilter;
 	private String datePattern;
+	private String[] includes;
+	private int maxArchiveDepth;
 	private Date dateFrom;
 	private Date dateTo;
 	
-	private FastDateFormat dateFormat = null;
+	private long fromTime;
+	private long toTime;
+	/** Найденные файлы будут сохраняться */
+	private boolean saveResults;
+	/** Сколько строк до и после найденной добавлять к ней */
+	private int linesBefore;
+	private int linesAfter;
+	/** В режимах {@link ResultMode#FILES} и {@link ResultMode#COUNT} найденные строки не сохраняются, только считаются */
+	private ResultMode resultMode;
+	/** Режим {@link ResultMode#NEWEST}: найденное собирается здесь и попадает в результат после шага */
+	private NewestEvents newestEvents;
+	/** Набирать фильтры блоков ({@link BlockFilters}) при чтении файлов с начала */
+	private boolean collectBlockFilters;
+	/** Слова искомых строк для отсева блоков или null, если блоки по ним отсеять нельзя */
+	private List<long[]> blockFilterTerms;
+	/** Триграммы искомых строк для отсева блоков по индексу ({@link TrigramIndex}) или null */
+	private List<int[]> trigramTerms;
+	
+	private volatile TimestampFormat dateFormat = null;
 	
 	@Override
 	@Logged(level = Level.DEBUG)
@@ -81,6 +158,8 @@ public class FileContentProcessor implements ItemProcessor<FileInfo, FileData>,
 		try 
 		{
 			resultModel.addProcessedFile();
+			if (isTooOld(file))
+				return null;
 
 			FileData result = null;
 			FileSystemService fileSystemService = fileServiceSelector.select(file.getLocationType());
@@ -89,7 +168,7 @@ public class FileContentProcessor implements ItemProcessor<FileInfo, FileData>,
 			fileData.setLocationCode(file.getLocationCode());
 			fileData.setFilePath(file.getFilePath());
 			fileData.setZipPath(getZipPath(file));
-			fileData.setContentReader(fileSystemService.readContent(file, ReaderType.URI));
+			fileData.setContentReader(fileSystemService.readContent(file, ReaderType.MAPPED));
 			if (checkBeforeRead(file))
 			{
 				result = fileData;
@@ -101,17 +180,17 @@ public class FileContentProcessor implements ItemProcessor<FileInfo, FileData>,
 //					if (match(inputStream, fileData))
 //						result = fileData;
 //				}
-				InputStream inputStream = fileData.getContentReader().getInputStream();
+				ContentReader contentReader = fileData.getContentReader();
 				try
 				{
-					if (match(inputStream, fileData))
+					if (matchContent(contentReader, fileData))
 						result = fileData;
 					else
-						fileData.getContentReader().close();
+						contentReader.close();
 				}
 				catch (Exception ex)
 				{
-					fileData.getContentReader().close();
+					contentReader.close();
 					throw ex;
 				}
 			}
@@ -131,10 +210,25 @@ public class FileContentProcessor implements ItemProcessor<FileInfo, FileData>,
 		}
 	}
 
+    /**
+     * Режим {@link ResultMode#NEWEST}: файл, который по кэшу кончается не позже самой старой из уже найденных N записей,
+     * ничего не добавит. Файлы идут от новых к старым, так что дальше таких будет всё больше
+     */
+    private boolean isTooOld(FileInfo fileInfo)
+    {
+    	if (newestEvents == null)
+    		return false;
+    	CacheFileInfo cacheFileInfo = cacheManager.getFileInfo(fileInfo.getLocationCode(), fileInfo.getFilePath(), dateTo);
+    	if (cacheFileInfo == null || cacheFileInfo.getContentEnd() == null || !newestEvents.isTooOld(cacheFileInfo.getContentEnd().getTime()))
+    		return false;
+    	log.debug("Skipping {} {}: older than found events", fileInfo.getLocationCode(), fileInfo.getFilePath());
+    	return true;
+    }
+
     private boolean checkBeforeRead(FileInfo fileInfo)
 	{
     	boolean result = false;
-    	if (StringUtils.isEmpty(searchString))
+    	if (lineMatcher == null)
     	{
     		CacheFileInfo cacheFileInfo = cacheManager.getFileInfo(fileInfo.getLocationCode(), fileInfo.getFilePath(), dateTo);
     		if (cacheFileInfo != null)
@@ -152,127 +246,861 @@ public class FileContentProcessor implements ItemProcessor<FileInfo, FileData>,
 		return result;
 	}
 
-	private boolean match(InputStream inputStream, FileData fileData) throws IOException 
-    {
-    	boolean result = false;
+	private boolean matchContent(ContentReader contentReader, FileData fileData) throws IOException
+	{
+		if (FilenameUtils.isExtension(fileData.getFilePath(), "zip"))
+		{
+			Boolean result = matchZipFile(contentReader, fileData);
+			if (result != null)
+				return result;
+		}
+		long startOffset = findStartOffset(contentReader, fileData);
+		if (trigramTerms != null || blockFilterTerms != null)
+		{
+			Boolean result = matchInBlocks(contentReader, fileData, startOffset);
+			if (result != null)
+				return result;
+		}
+		boolean collectTokens = needsBlockFilters(contentReader, fileData, startOffset);
+		List<long[]> parts = splitToChunks(contentReader, fileData, startOffset);
+		if (parts != null)
+			return matchInChunks(contentReader, fileData, parts, true, collectTokens);
+		if (startOffset == 0 && saveResults && !contentReader.isRereadCheap())
+			return matchAndSpool(contentReader, fileData);
+		if (startOffset == 0)
+			return match(contentReader.getInputStream(), fileData, startOffset, collectTokens); // поток остаётся открытым для записи результата
+		try (InputStream inputStream = contentReader.getInputStream(startOffset))
+		{
+			return match(inputStream, fileData, startOffset, false);
+		}
+	}
 
-		log.info("Checking {} {}", fileData.getLocationCode(), fileData.getFilePath());
-		
-    	if (FilenameUtils.isExtension(fileData.getFilePath(), "zip"))
-    	{
-    		ZipInputStream zipInputStream = new ZipInputStream(inputStream);
-			ZipEntry zipEntry = zipInputStream.getNextEntry();
-			while (zipEntry != null && !result)
+	/**
+	 * Фильтры блоков набираются при чтении с начала несжатого файла с произвольным доступом, если их ещё нет
+	 */
+	private boolean needsBlockFilters(ContentReader contentReader, FileData fileData, long startOffset) throws IOException
+	{
+		if (!collectBlockFilters || startOffset != 0 || CompressionUtils.hasCompressedExtension(fileData.getFilePath()))
+			return false;
+		CacheFileInfo cacheFileInfo = cacheManager.getFileInfo(fileData.getLocationCode(), fileData.getFilePath(), null);
+		if (cacheFileInfo == null || cacheFileInfo.isBlockFilters())
+			return false;
+		try (SeekableByteChannel channel = contentReader.openChannel())
+		{
+			return channel != null && channel.size() >= SEEK_MIN_SIZE && !CompressionUtils.isCompressed(channel);
+		}
+		catch (UnsupportedOperationException ex)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Читает только блоки, в которых могут быть искомые строки: по индексу триграмм ({@link TrigramIndex}),
+	 * если он есть, иначе по фильтрам блоков ({@link BlockFilters})
+	 * @return null, если действительных индекса и фильтров для файла нет
+	 */
+	private Boolean matchInBlocks(ContentReader contentReader, FileData fileData, long startOffset) throws IOException
+	{
+		long size;
+		List<long[]> parts = null;
+		try (SeekableByteChannel channel = contentReader.openChannel())
+		{
+			if (channel == null)
+				return null;
+			size = channel.size();
+			if (trigramTerms != null)
 			{
-				if (!zipEntry.isDirectory())
+				TrigramIndex index = cacheManager.getTrigramIndex(fileData.getLocationCode(), fileData.getFilePath());
+				if (index != null && isValidFor(index, fileData, channel))
+					parts = index.findRanges(trigramTerms, startOffset, size);
+			}
+			if (parts == null && blockFilterTerms != null)
+			{
+				BlockFilters blockFilters = cacheManager.getBlockFilters(fileData.getLocationCode(), fileData.getFilePath());
+				// дописано больше, чем покрыто фильтрами: дешевле перестроить их при чтении с начала
+				if (blockFilters != null && size - blockFilters.getSize() > blockFilters.getSize())
+					cacheManager.dropBlockFilters(fileData.getLocationCode(), fileData.getFilePath());
+				else if (blockFilters != null && isValidFor(blockFilters, fileData, channel))
+					parts = blockFilters.findRanges(blockFilterTerms, startOffset, size);
+			}
+		}
+		catch (UnsupportedOperationException ex)
+		{
+			return null;
+		}
+		if (parts == null)
+			return null;
+		log.debug("Index of {}: {} of {} bytes to read", fileData.getFilePath(), parts.stream().mapToLong(part -> part[1] - part[0]).sum(), size - startOffset);
+		if (parts.isEmpty())
+			return false;
+		return matchInChunks(contentReader, fileData, parts, parts.get(parts.size() - 1)[1] == size, false);
+	}
+
+	/**
+	 * Удалённый файл читается один раз: во время поиска содержимое копируется в {@link SpoolContentReader},
+	 * который при совпадении заменяет исходный ContentReader для записи результата, а иначе удаляется
+	 */
+	private boolean matchAndSpool(ContentReader contentReader, FileData fileData) throws IOException
+	{
+		SpoolContentReader spool = new SpoolContentReader();
+		boolean result = false;
+		try (InputStream inputStream = spool.tee(contentReader.getInputStream()))
+		{
+			result = match(inputStream, fileData, 0, false);
+			if (result)
+				spool.drain(inputStream);
+		}
+		finally
+		{
+			if (!result)
+				spool.close();
+		}
+		if (result)
+		{
+			contentReader.close();
+			fileData.setContentReader(spool);
+		}
+		return result;
+	}
+
+	/**
+	 * Zip с произвольным доступом читается по центральному каталогу: записи, изменённые до dateFrom
+	 * или не подходящие под шаблоны имён, пропускаются, остальные просматриваются параллельно в {@link #fileSplitPool}
+	 * @return null, если архив нельзя читать с произвольным доступом
+	 */
+	private Boolean matchZipFile(ContentReader contentReader, FileData fileData) throws IOException
+	{
+		SeekableByteChannel channel;
+		try
+		{
+			channel = contentReader.openChannel();
+		}
+		catch (UnsupportedOperationException ex)
+		{
+			return null;
+		}
+		if (channel == null)
+			return null;
+		ZipFile archive;
+		try
+		{
+			archive = new ZipFile(channel);
+		}
+		catch (ZipException ex)
+		{
+			// нет центрального каталога (архив дописывается или повреждён) - читаем потоком
+			log.warn("{} {}: {}", fileData.getLocationCode(), fileData.getFilePath(), ex.getMessage());
+			return null;
+		}
+		try (ZipFile zipFile = archive)
+		{
+			String[] entryPatterns = entryNamePatterns(fileData.getFilePath());
+			List<ForkJoinTask<List<ScanResult>>> tasks = new ArrayList<>();
+			for (ZipArchiveEntry entry : Collections.list(zipFile.getEntriesInPhysicalOrder()))
+			{
+				if (entry.isDirectory() || !isEntrySelected(entry.getName(), entry.getTime(), entryPatterns) || !zipFile.canReadEntryData(entry))
+					continue;
+				tasks.add(fileSplitPool.submit(() -> {
+					List<ScanResult> results = new ArrayList<>();
+					try (InputStream inputStream = zipFile.getInputStream(entry))
+					{
+						scanEntry(inputStream, fileData, fileData.getFilePath() + "!/" + entry.getName(), 1, results, false);
+					}
+					return results;
+				}));
+			}
+			log.info("Checking {} {} ({} entries)", fileData.getLocationCode(), fileData.getFilePath(), tasks.size());
+			boolean result = false;
+			try
+			{
+				for (ForkJoinTask<List<ScanResult>> task : tasks)
 				{
-					BufferedReader reader = new BufferedReader(new InputStreamReader(zipInputStream, encoding));
-					result = match(reader, fileData);
+					for (ScanResult scanResult : join(task))
+						result |= finish(fileData, Collections.singletonList(scanResult), true, true);
+					if (result && isFirstMatchEnough())
+						break;
 				}
-				zipEntry = zipInputStream.getNextEntry();
 			}
-    	}
-    	else
-    	{
-			BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, encoding));
-			result = match(reader, fileData);
-    	}
+			finally
+			{
+				for (ForkJoinTask<List<ScanResult>> task : tasks)
+					task.cancel(false);
+				// архив закрывается, когда запущенные задачи его уже не читают
+				for (ForkJoinTask<List<ScanResult>> task : tasks)
+					task.quietlyJoin();
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Шаблоны имён записей архива: последние части шаблонов includes, кроме тех, под которые подходит сам архив
+	 * @return null, если записи не отбираются по имени
+	 */
+	private String[] entryNamePatterns(String archivePath)
+	{
+		if (includes == null)
+			return null;
+		String archiveName = FilenameUtils.getName(archivePath);
+		List<String> result = new ArrayList<>();
+		for (String include : includes)
+		{
+			String namePattern = FilenameUtils.getName(include);
+			if (StringUtils.isNotEmpty(namePattern) && !SelectorUtils.match(namePattern, archiveName))
+				result.add(namePattern);
+		}
+		return result.isEmpty() ? null : result.toArray(new String[result.size()]);
+	}
+
+	/**
+	 * Запись, изменённая до dateFrom, не может содержать строк из периода.
+	 * Вложенные zip просматриваются всегда, сжатые записи проверяются и по имени без расширения (app.log.gz - как app.log)
+	 * @param time время изменения или -1
+	 */
+	private boolean isEntrySelected(String entryName, long time, String[] entryPatterns)
+	{
+		if (time != -1 && time + ZIP_TIME_PRECISION < fromTime)
+			return false;
+		String name = FilenameUtils.getName(entryName);
+		if (entryPatterns == null || FilenameUtils.isExtension(name.toLowerCase(), "zip"))
+			return true;
+		String baseName = CompressionUtils.hasCompressedExtension(name) ? FilenameUtils.removeExtension(name) : name;
+		for (String pattern : entryPatterns)
+			if (SelectorUtils.match(pattern, name) || SelectorUtils.match(pattern, baseName))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Для больших упорядоченных по времени файлов с произвольным доступом ищет, откуда начинать чтение,
+	 * чтобы не разбирать даты всех строк до dateFrom: по индексу времени из кэша, если файл с тех пор не менялся
+	 * или только дописан (тогда поиск периода позже известного продолжается с конца прежнего просмотра),
+	 * иначе делением пополам. Архивы, сжатые файлы и последовательные источники (SFTP) читаются с начала.
+	 */
+	private long findStartOffset(ContentReader contentReader, FileData fileData) throws IOException
+	{
+		if (!byteSearch || CompressionUtils.hasCompressedExtension(fileData.getFilePath()))
+			return 0;
+		try (SeekableByteChannel channel = contentReader.openChannel())
+		{
+			if (channel == null || channel.size() < SEEK_MIN_SIZE || CompressionUtils.isCompressed(channel))
+				return 0;
+			TimeIndex timeIndex = findTimeIndex(fileData, channel);
+			TimestampFormat dateFormat = this.dateFormat;
+			long result;
+			if (timeIndex != null)
+				result = timeIndex.findOffset(fromTime);
+			else if (dateFormat != null)
+				result = new DateOffsetLocator(channel, channel.size(), dateFormat).locate(fromTime);
+			else
+				return 0;
+			if (result > 0)
+				log.debug("Skipping {} bytes of {}", result, fileData.getFilePath());
+			return result;
+		}
+		catch (UnsupportedOperationException ex)
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * @return индекс времени, построенный для этого файла или для его начала, если файл с тех пор только дописан, или null
+	 */
+	private TimeIndex findTimeIndex(FileData fileData, SeekableByteChannel channel) throws IOException
+	{
+		CacheFileInfo cacheFileInfo = cacheManager.getFileInfo(fileData.getLocationCode(), fileData.getFilePath(), null);
+		if (cacheFileInfo == null || cacheFileInfo.getTimeIndex() == null)
+			return null;
+		TimeIndex result = cacheFileInfo.getTimeIndex();
+		return isValidFor(result, fileData, channel) ? result : null;
+	}
 
+	/**
+	 * Построенное по файлу годится, если файл с тех пор не менялся или только дописан.
+	 * Иначе файл усечён или заменён, и всё, что кэш знает о его содержимом, сбрасывается
+	 */
+	private boolean isValidFor(FilePrefix prefix, FileData fileData, SeekableByteChannel channel) throws IOException
+	{
+		CacheFileInfo cacheFileInfo = cacheManager.getFileInfo(fileData.getLocationCode(), fileData.getFilePath(), null);
+		if (cacheFileInfo != null && prefix.isValidFor(channel, cacheFileInfo.getLastModified()))
+			return true;
+		cacheManager.resetContent(fileData.getLocationCode(), fileData.getFilePath());
+		return false;
+	}
+
+	/**
+	 * Делит большой файл с произвольным доступом на части по границам строк.
+	 * Части начинаются с первой строки блока ({@link BlockFilters#BLOCK_SIZE}), чтобы фильтры блоков частей стыковались
+	 * @return части [начало, конец) (первая - с startOffset, последняя - до конца файла) или null, если делить не нужно
+	 */
+	private List<long[]> splitToChunks(ContentReader contentReader, FileData fileData, long startOffset) throws IOException
+	{
+		if (lineMatcher == null || !byteSearch || CompressionUtils.hasCompressedExtension(fileData.getFilePath()))
+			return null;
+		try (SeekableByteChannel channel = contentReader.openChannel())
+		{
+			if (channel == null)
+				return null;
+			long size = channel.size();
+			long length = size - startOffset;
+			int count = (int)Math.min(fileSplitPool.getParallelism(), length / SPLIT_CHUNK_MIN_SIZE);
+			if (length < SPLIT_MIN_SIZE || count < 2 || CompressionUtils.isCompressed(channel))
+				return null;
+			List<Long> bounds = new ArrayList<>();
+			bounds.add(startOffset);
+			ByteBuffer buffer = ByteBuffer.allocate(8192);
+			for (int i = 1; i < count; i++)
+			{
+				long offset = startOffset + length * i / count;
+				long bound = nextLineStart(channel, offset - offset % BlockFilters.BLOCK_SIZE, buffer);
+				if (bound > bounds.get(bounds.size() - 1) && bound < size)
+					bounds.add(bound);
+			}
+			bounds.add(size);
+			if (bounds.size() < 3)
+				return null;
+			List<long[]> result = new ArrayList<>();
+			for (int i = 0; i + 1 < bounds.size(); i++)
+				result.add(new long[] { bounds.get(i), bounds.get(i + 1) });
+			return result;
+		}
+		catch (UnsupportedOperationException ex)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @return начало первой строки, начинающейся не раньше offset
+	 */
+	private static long nextLineStart(SeekableByteChannel channel, long offset, ByteBuffer buffer) throws IOException
+	{
+		long position = offset - 1; // offset может уже быть началом строки
+		channel.position(position);
+		while (true)
+		{
+			buffer.clear();
+			int n = channel.read(buffer);
+			if (n <= 0)
+				return channel.size();
+			byte[] buf = buffer.array();
+			for (int i = 0; i < n; i++)
+				if (buf[i] == '\n')
+					return position + i + 1;
+			position += n;
+		}
+	}
+
+	/**
+	 * Части файла просматриваются в {@link #fileSplitPool}, найденное собирается в порядке частей.
+	 * Запись, начатая в части, дочитывается за её концом, а строки без даты в начале следующих частей пропускаются:
+	 * стек исключения на границе частей остаётся в своей записи.
+	 * Если часть дошла до записей позже dateTo, следующие части не нужны.
+	 * @param parts [начало, конец) по возрастанию, каждая с начала строки
+	 * @param toEnd последняя часть - до конца файла
+	 * @param collectTokens набирать фильтры блоков (части подряд с начала файла)
+	 */
+	private boolean matchInChunks(ContentReader contentReader, FileData fileData, List<long[]> parts, boolean toEnd, boolean collectTokens) throws IOException
+	{
+		log.info("Checking {} {} in {} parts", fileData.getLocationCode(), fileData.getFilePath(), parts.size());
+		// записи различаются по дате: формат нужен всем частям с первой строки
+		if (dateFormat == null)
+			selectDateFormat(contentReader);
+		List<ForkJoinTask<ScanResult>> tasks = new ArrayList<>();
+		for (int i = 0; i < parts.size(); i++)
+		{
+			long from = parts.get(i)[0];
+			long end = i + 1 < parts.size() || !toEnd ? parts.get(i)[1] : -1;
+			boolean skipLeading = i > 0;
+			tasks.add(fileSplitPool.submit(() -> {
+				try (InputStream inputStream = contentReader.getInputStream(from))
+				{
+					return scan(createLineReader(inputStream), fileData, fileData.getFilePath(), from, end, skipLeading, collectTokens);
+				}
+			}));
+		}
+		List<ScanResult> chunks = new ArrayList<>();
+		try
+		{
+			for (ForkJoinTask<ScanResult> task : tasks)
+			{
+				ScanResult chunk = join(task);
+				chunks.add(chunk);
+				if (chunk.stopped)
+					break;
+			}
+		}
+		finally
+		{
+			for (ForkJoinTask<ScanResult> task : tasks)
+				task.cancel(false);
+			// отображение файла освобождается при закрытии ContentReader, когда запущенные задачи его уже не читают
+			for (ForkJoinTask<ScanResult> task : tasks)
+				task.quietlyJoin();
+		}
+		return finish(fileData, chunks, parts.get(0)[0] == 0, toEnd);
+	}
+
+	private static <T> T join(ForkJoinTask<T> task) throws IOException
+	{
+		try
+		{
+			return task.get();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException(ex);
+		}
+		catch (ExecutionException ex)
+		{
+			if (ex.getCause() instanceof IOException)
+				throw (IOException)ex.getCause();
+			throw new IOException(ex.getCause());
+		}
+	}
+
+	/**
+	 * @param startOffset откуда читается inputStream. Если не с начала - начало содержимого файла неизвестно
+	 * @param collectTokens набирать фильтры блоков (несжатый файл с начала)
+	 */
+	private boolean match(InputStream inputStream, FileData fileData, long startOffset, boolean collectTokens) throws IOException 
+    {
+		log.info("Checking {} {}", fileData.getLocationCode(), fileData.getFilePath());
+		
+		if (startOffset > 0) // сжатые файлы и архивы всегда читаются с начала
+			return match(createLineReader(inputStream), fileData, startOffset);
+		List<ScanResult> results = new ArrayList<>();
+		scanEntry(inputStream, fileData, fileData.getFilePath(), 0, results, collectTokens);
+		boolean result = false;
+		for (ScanResult scanResult : results)
+			result |= finish(fileData, Collections.singletonList(scanResult), true, true);
 		return result;
 	}
+
+	/**
+	 * Просмотр файла или записи архива. Сжатое распаковывается, вложенные zip просматриваются
+	 * на лету, без распаковки на диск, до {@link #maxArchiveDepth} уровня вложенности
+	 * @param path цепочка вложенности для найденных строк: outer.zip!/inner.zip!/app.log
+	 * @param depth сколько архивов и сжатых файлов уже раскрыто
+	 * @param results результаты просмотра вложенных файлов в порядке следования
+	 * @param collectTokens набирать фильтры блоков, если это несжатый файл
+	 * @return найдено достаточно, дальше можно не смотреть (см. {@link #isFirstMatchEnough()})
+	 */
+	private boolean scanEntry(InputStream inputStream, FileData fileData, String path, int depth, List<ScanResult> results, boolean collectTokens) throws IOException
+	{
+		PushbackInputStream pushbackStream = new PushbackInputStream(inputStream, CompressionUtils.SIGNATURE_LENGTH);
+		String format = CompressionUtils.detect(pushbackStream);
+		if (format == null)
+		{
+			ScanResult result = scan(createLineReader(pushbackStream), fileData, path, depth == 0 ? 0 : -1, depth == 0 && collectTokens);
+			results.add(result);
+			return result.found;
+		}
+		if (depth >= maxArchiveDepth)
+		{
+			log.warn("Skipping {} {}: archives nested deeper than {}", fileData.getLocationCode(), path, maxArchiveDepth);
+			return false;
+		}
+		if (CompressionUtils.ZIP.equals(format))
+		{
+			String[] entryPatterns = entryNamePatterns(path);
+			ZipInputStream zipInputStream = new ZipInputStream(pushbackStream);
+			for (ZipEntry zipEntry = zipInputStream.getNextEntry(); zipEntry != null; zipEntry = zipInputStream.getNextEntry())
+			{
+				if (zipEntry.isDirectory() || !isEntrySelected(zipEntry.getName(), zipEntry.getTime(), entryPatterns))
+					continue;
+				if (scanEntry(zipInputStream, fileData, path + "!/" + zipEntry.getName(), depth + 1, results, false) && isFirstMatchEnough())
+					return true;
+			}
+			return false;
+		}
+		try (InputStream content = decompress(format, pushbackStream))
+		{
+			return scanEntry(content, fileData, path, depth + 1, results, false);
+		}
+	}
+
+	/**
+	 * Распаковка большого файла идёт в отдельном потоке параллельно с разбором строк.
+	 * Закрытие результата не закрывает inputStream
+	 */
+	private InputStream decompress(String compressor, InputStream inputStream) throws IOException
+	{
+		InputStream decompressor = CompressionUtils.createDecompressor(compressor, inputStream);
+		return new ReadAheadInputStream(decompressor, decompressTaskExecutor, READ_AHEAD_SYNC_LENGTH, READ_AHEAD_BLOCK_SIZE, READ_AHEAD_BLOCKS);
+	}
     
-    private boolean match(BufferedReader reader, FileData fileData) throws IOException
+    /**
+     * Без строки поиска файл отбирается по первой записи в периоде, в режиме {@link ResultMode#FILES} - по первому совпадению
+     */
+    private boolean isFirstMatchEnough()
     {
-    	boolean result = false;
-    	String line;
-    	List<LogEvent> list = new ArrayList<>();
-    	boolean dateInRangeWholeFile = false;
-    	Date contentStart = null;
-    	Date contentEnd = null;
-    	Date lastParsedDate = null;
-    	boolean lastParsedDateInRange = false;
-    	while ((line = reader.readLine()) != null)
+    	return lineMatcher == null || resultMode == ResultMode.FILES;
+    }
+
+    private LogLineReader createLineReader(InputStream inputStream)
+    {
+    	LogLineReader result = byteSearch
+    			? new ByteLineReader(inputStream, charset)
+    			: new CharLineReader(inputStream, charset);
+    	if (linesBefore > 0)
+    		result.setHistorySize(linesBefore);
+    	return result;
+    }
+    
+    private boolean match(LogLineReader reader, FileData fileData, long startOffset) throws IOException
+    {
+    	return finish(fileData, Collections.singletonList(scan(reader, fileData, fileData.getFilePath(), startOffset, false)), startOffset == 0, true);
+    }
+
+    /**
+     * Формат даты по первой строке файла, если он не задан в шаблоне
+     */
+    private void selectDateFormat(ContentReader contentReader) throws IOException
+    {
+    	try (InputStream inputStream = contentReader.getInputStream(0))
+    	{
+    		LogLineReader reader = createLineReader(inputStream);
+    		try
+    		{
+    			if (reader.nextLine())
+    				selectDateFormat(reader);
+    		}
+    		finally
+    		{
+    			reader.release();
+    		}
+    	}
+    }
+
+    private synchronized void selectDateFormat(LogLineReader reader)
+    {
+    	if (dateFormat != null)
+    		return;
+    	if (StringUtils.isEmpty(datePattern))
+    		datePattern = DateFormatSelector.selectFormat(reader.getLinePrefix(DATE_PREFIX_LENGTH));
+    	if (StringUtils.isNotEmpty(datePattern)) 
+    		dateFormat = compileDateFormat();
+    }
+
+    private ScanResult scan(LogLineReader reader, FileData fileData, String path, long startOffset, boolean collectTokens) throws IOException
+    {
+    	return scan(reader, fileData, path, startOffset, -1, false, collectTokens);
+    }
+
+    /**
+     * Просмотр строк файла или его части.
+     * Когда формат даты известен, строка с датой и следующие строки без даты (стек исключения) - одна запись:
+     * совпадение в любой её строке возвращает всю запись
+     * @param path путь для найденных строк
+     * @param startOffset смещение начала потока в файле для индекса времени или -1 (сжатое, запись архива)
+     * @param end конец части файла или -1, если читать до конца. Запись, начатая до end, и строки после найденного
+     * ({@link #linesAfter}) дочитываются за ним
+     * @param skipLeading строки без даты в начале продолжают запись предыдущей части и уже просмотрены с ней
+     * @param collectTokens набирать фильтры блоков: поток с начала файла или с первой строки блока
+     */
+    private ScanResult scan(LogLineReader reader, FileData fileData, String path, long startOffset, long end, boolean skipLeading, boolean collectTokens) 
+    		throws IOException
+    {
+    	try
+    	{
+    		return scanLines(reader, path, startOffset, end, skipLeading, collectTokens);
+    	}
+    	finally
+    	{
+    		reader.release();
+    	}
+    }
+
+    private ScanResult scanLines(LogLineReader reader, String path, long startOffset, long end, boolean skipLeading, boolean collectTokens) throws IOException
+    {
+    	ScanResult result = new ScanResult();
+    	result.path = path;
+    	if (startOffset >= 0 && byteSearch)
+    		result.timeIndex = new TimeIndex.Builder();
+    	if (startOffset >= 0 && byteSearch && collectTokens)
+    		result.blockFilters = new BlockFilters.Builder();
+    	TimestampParser dateParser = null;
+    	LogEvent recordEvent = null; // найденная запись, которая ещё может продолжиться
+    	LogEvent contextEvent = null; // найденная строка, к которой добавляются следующие
+    	boolean recordCounted = false; // совпадение в текущей записи уже посчитано
+    	int contextRemaining = 0;
+    	boolean accepted = layoutFilter == null; // текущая запись проходит отбор по полям
+    	boolean ending = false; // за концом части началась следующая запись
+    	while (reader.nextLine())
     	{
     		if (dateFormat == null)
+    			selectDateFormat(reader);
+    		if (dateParser == null && dateFormat != null)
+    			dateParser = dateFormat.newParser();
+    		long time = dateParser != null ? reader.parseTimestamp(dateParser) : TimestampFormat.NO_DATE;
+    		
+    		boolean dateIsEmpty = time == TimestampFormat.NO_DATE; 
+    		boolean beyondEnd = end >= 0 && startOffset + reader.getLineOffset() >= end;
+    		if (beyondEnd && (dateParser == null || !dateIsEmpty))
+    			ending = true;
+    		if (result.blockFilters != null && !beyondEnd)
     		{
-    			synchronized (this)
-				{
-    				if (dateFormat == null)
+    			result.blockFilters.startLine(startOffset + reader.getLineOffset(), dateParser == null || !dateIsEmpty);
+    			reader.accept(result.blockFilters);
+    		}
+    		if (skipLeading && dateParser != null && dateIsEmpty && result.firstTime == TimestampFormat.NO_DATE)
+    			continue;
+    		if (dateParser != null)
+    		{
+    			if (dateIsEmpty)
+    				reader.extendRecord();
+    			else
+    			{
+    				if (recordEvent != null)
     				{
-            			if (StringUtils.isEmpty(datePattern))
-            				datePattern = DateFormatSelector.selectFormat(line);
-            			if (StringUtils.isNotEmpty(datePattern)) 
-            			{
-            				dateFormat = FastDateFormat.getInstance(datePattern);
-            				log.info("Using date format '{}'", datePattern);
-            			}
+    					recordEvent.setText(reader.getRecord());
+    					if (linesAfter > 0)
+    					{
+    						contextEvent = recordEvent;
+    						contextRemaining = linesAfter;
+    					}
+    					recordEvent = null;
     				}
-				}
+    				recordCounted = false;
+    				reader.startRecord();
+    			}
+    		}
+    		if (contextRemaining > 0)
+    		{
+    			contextEvent.getLinesAfter().add(reader.getLine());
+    			contextRemaining--;
+    		}
+    		if (ending)
+    		{
+    			// дальше - следующая часть
+    			if (contextRemaining == 0)
+    				break;
+    			continue;
     		}
-    		Date dt = tryToParseDate(line, dateFormat);
-    		
-    		boolean dateIsEmpty = dt == null; 
     		boolean dateInRange = false;
     		if (!dateIsEmpty)
     		{
-    			if (contentStart == null)
-    				contentStart = dt;
-    			dateInRange = dt.compareTo(dateFrom) >= 0 && dt.compareTo(dateTo) <= 0;
-    			dateInRangeWholeFile |= dateInRange;
-    			lastParsedDate = dt;
-    			lastParsedDateInRange = dateInRange; 
-
-        		if (dt.compareTo(dateFrom) > 0 && dt.compareTo(dateTo) > 0)
+    			if (result.timeIndex != null)
+    				result.timeIndex.add(startOffset + reader.getLineOffset(), time);
+    			if (result.firstTime == TimestampFormat.NO_DATE)
+    				result.firstTime = time;
+    			dateInRange = time >= fromTime && time <= toTime;
+    			result.dateInRange |= dateInRange;
+    			result.lastTime = time;
+    			result.lastTimeInRange = dateInRange; 
+
+        		if (time > fromTime && time > toTime)
+        		{
+        			result.stopped = true;
         			break;
+        		}
     		}
     		
     		if (dateIsEmpty || dateInRange)
     		{
-    			if (StringUtils.isNotEmpty(searchString))
+    			if (lineMatcher != null)
     			{
-    	    		if (StringUtils.contains(line, searchString)
-    	    				&& (dateInRange || lastParsedDate == null || lastParsedDateInRange))
+    				// поля есть только в первой строке записи
+    				if (layoutFilter != null && (dateParser == null || !dateIsEmpty))
+    					accepted = reader.matches(layoutFilter);
+    	    		if (accepted 
+    	    				&& (dateInRange || result.lastTime == TimestampFormat.NO_DATE || result.lastTimeInRange)
+    	    				&& reader.matches(lineMatcher))
     	    		{
-    	    			list.add(new LogEvent(dt != null ? dt : lastParsedDate, "server1", fileData.getFilePath(), line));
-    	    			result = true;
+    	    			if (resultMode == ResultMode.FILES || resultMode == ResultMode.COUNT)
+    	    			{
+    	    				if (!recordCounted)
+    	    				{
+    	    					if (result.lastTime == TimestampFormat.NO_DATE)
+    	    						result.leadingCount++;
+    	    					else
+    	    						result.count++;
+    	    					recordCounted = dateParser != null;
+    	    				}
+    	    				// совпадение до первой даты в части файла может не попасть в период
+    	    				if (resultMode == ResultMode.FILES && (result.lastTime != TimestampFormat.NO_DATE || dateParser == null))
+    	    				{
+    	    					result.found = true;
+    	    					result.stopped = true;
+    	    					break;
+    	    				}
+    	    				continue;
+    	    			}
+    	    			if (recordEvent != null)
+    	    			{
+    	    				addTerms(recordEvent, reader.getMatchedTerms(lineMatcher));
+    	    				continue;
+    	    			}
+    	    			if (newestEvents != null && result.lastTime != TimestampFormat.NO_DATE && newestEvents.isTooOld(result.lastTime))
+    	    				continue;
+    	    			Date eventDate = result.lastTime != TimestampFormat.NO_DATE ? new Date(result.lastTime) : null;
+    	    			LogEvent event = new LogEvent(eventDate, "server1", path, reader.getLine());
+    	    			event.setTerms(reader.getMatchedTerms(lineMatcher));
+    	    			if (linesBefore > 0)
+    	    				event.setLinesBefore(reader.getPreviousLines());
+    	    			if (linesAfter > 0)
+    	    				event.setLinesAfter(new ArrayList<>(linesAfter));
+    	    			if (dateParser != null)
+    	    				recordEvent = event;
+    	    			else if (linesAfter > 0)
+    	    			{
+    	    				contextEvent = event;
+    	    				contextRemaining = linesAfter;
+    	    			}
+    	    			if (result.lastTime == TimestampFormat.NO_DATE)
+    	    				result.leadingEvents.add(event);
+    	    			else
+    	    				result.events.add(event);
     	    		}
     			}
     			else if (dateInRange)
     			{
-    				result = true;
+    				result.found = true;
+    				result.stopped = true;
     				break;
     			}
     		}
     	}
-    	if (line == null) //we reach end of file
-    		contentEnd = lastParsedDate;
-    	if (dateInRangeWholeFile)
+    	if (recordEvent != null)
+    		recordEvent.setText(reader.getRecord());
+    	if (startOffset >= 0 && byteSearch)
+    		result.end = ending ? end : startOffset + reader.getLineOffset();
+    	if (result.blockFilters != null)
+    	{
+    		if (result.stopped)
+    			result.blockFilters.stop();
+    		else
+    			result.blockFilters.finish();
+    	}
+    	return result;
+    }
+
+    private static void addTerms(LogEvent event, List<String> terms)
+    {
+    	if (terms == null)
+    		return;
+    	if (event.getTerms() == null)
+    	{
+    		event.setTerms(terms);
+    		return;
+    	}
+    	List<String> result = new ArrayList<>(event.getTerms());
+    	for (String term : terms)
+    		if (!result.contains(term))
+    			result.add(term);
+    	event.setTerms(result);
+    }
+
+    /**
+     * Сводит результаты частей файла (в порядке следования) и обновляет кэш
+     * @param fromStart первая часть начинается с начала файла
+     * @param toEnd последняя часть кончается в конце файла
+     */
+    private boolean finish(FileData fileData, List<ScanResult> chunks, boolean fromStart, boolean toEnd)
+    {
+    	boolean result = false;
+    	boolean eof = toEnd;
+    	List<LogEvent> list = new ArrayList<>();
+    	long count = 0;
+    	boolean dateInRangeWholeFile = false;
+    	Date contentStart = null;
+    	Date contentEnd = null;
+    	long lastParsedTime = TimestampFormat.NO_DATE;
+    	TimeIndex.Builder timeIndex = new TimeIndex.Builder();
+    	BlockFilters.Builder blockFilters = null;
+    	long end = -1;
+    	for (ScanResult chunk : chunks)
+    	{
+    		end = chunk.end;
+    		if (chunk.timeIndex != null)
+    			timeIndex.addAll(chunk.timeIndex);
+    		if (chunk.blockFilters != null && blockFilters == null)
+    			blockFilters = chunk.blockFilters;
+    		else if (chunk.blockFilters != null)
+    			blockFilters.addAll(chunk.blockFilters);
+    		// строки без даты в начале следующих частей просмотрены с записью предыдущей части (см. scanLines),
+    		// а до первой даты файла и в файле без дат дата найденного неизвестна
+    		if (lastParsedTime == TimestampFormat.NO_DATE)
+    		{
+    			list.addAll(chunk.leadingEvents);
+    			count += chunk.leadingCount;
+    		}
+    		list.addAll(chunk.events);
+    		count += chunk.count;
+    		result |= chunk.found;
+    		dateInRangeWholeFile |= chunk.dateInRange;
+    		if (chunk.firstTime != TimestampFormat.NO_DATE)
+    		{
+    			if (contentStart == null && fromStart)
+    				contentStart = new Date(chunk.firstTime);
+    			lastParsedTime = chunk.lastTime;
+    		}
+    		if (chunk.stopped)
+    		{
+    			eof = false;
+    			break;
+    		}
+    	}
+    	result |= !list.isEmpty() || count > 0;
+    	if (eof && lastParsedTime != TimestampFormat.NO_DATE) //we reach end of file
+    		contentEnd = new Date(lastParsedTime);
+    	if (dateInRangeWholeFile && newestEvents != null)
+    		newestEvents.addAll(list);
+    	else if (dateInRangeWholeFile && count > 0 && resultMode == ResultMode.FILES)
+    		resultModel.addMatchedFile(fileData.getLocationCode(), chunks.get(0).path);
+    	else if (dateInRangeWholeFile && count > 0)
+    		resultModel.addMatchCount(fileData.getLocationCode(), chunks.get(0).path, count);
+    	else if (dateInRangeWholeFile)
     		resultModel.addAll(list);
     	if (contentStart != null || contentEnd != null) 
     		cacheManager.updateFromContent(fileData.getLocationCode(), fileData.getFilePath(), contentStart, contentEnd);
-    	if (lastParsedDate == null)
+    	if (end >= 0 && (!timeIndex.isEmpty() || (blockFilters != null && !blockFilters.isEmpty())))
+    		saveIndexes(fileData, timeIndex, blockFilters, end);
+    	if (lastParsedTime == TimestampFormat.NO_DATE)
     		log.error("Unable to determine date in file {} {}", fileData.getLocationCode(), fileData.getFilePath());
-    	result |= lastParsedDate == null; // we can't check date at all
+    	result |= lastParsedTime == TimestampFormat.NO_DATE; // we can't check date at all
     	return result;
     }
 
-	private Date tryToParseDate(String line, FastDateFormat dateFormat) 
-	{
-		Date result = null;
-		if (dateFormat != null)
-		{
-			try
-			{
-				result = dateFormat.parse(line);
-			}
-			catch (ParseException | NumberFormatException ex)
-			{
-				//Can't parse date. DO NOTHING.
-			}
-		}
-		return result;
-	}
-	
+    /**
+     * Сохраняет в кэше индекс времени и фильтры блоков с размером и отпечатком файла ({@link FilePrefix}) на момент просмотра:
+     * дописанное во время просмотра не прочитано и должно читаться и дальше.
+     * Точки индекса времени дописанного файла добавляются к прежним
+     * @param end до куда файл просмотрен
+     */
+    private void saveIndexes(FileData fileData, TimeIndex.Builder timeIndex, BlockFilters.Builder blockFilters, long end)
+    {
+    	try (SeekableByteChannel channel = fileData.getContentReader().openChannel())
+    	{
+    		if (channel == null)
+    			return;
+    		long tail = FilePrefix.tailOf(channel, end);
+    		if (!timeIndex.isEmpty())
+    		{
+    			CacheFileInfo cacheFileInfo = cacheManager.getFileInfo(fileData.getLocationCode(), fileData.getFilePath(), null);
+    			TimeIndex previous = cacheFileInfo != null ? cacheFileInfo.getTimeIndex() : null;
+    			boolean appended = previous != null && previous.isValidFor(channel, cacheFileInfo.getLastModified());
+    			// прежний индекс покрывает больше просмотренного (просмотр остановлен на dateTo)
+    			if (appended && previous.getSize() > end)
+    				cacheManager.updateTimeIndex(fileData.getLocationCode(), fileData.getFilePath(), timeIndex.getOffsets(), timeIndex.getTimes(), 
+    						previous.getSize(), previous.getTail(), true);
+    			else
+    				cacheManager.updateTimeIndex(fileData.getLocationCode(), fileData.getFilePath(), timeIndex.getOffsets(), timeIndex.getTimes(), 
+    						end, tail, appended);
+    		}
+    		if (blockFilters != null && !blockFilters.isEmpty())
+    			cacheManager.saveBlockFilters(fileData.getLocationCode(), fileData.getFilePath(), blockFilters, end, tail);
+    	}
+    	catch (IOException | UnsupportedOperationException ex)
+    	{
+    		log.warn("Unable to save indexes of {} {}: {}", fileData.getLocationCode(), fileData.getFilePath(), ex.toString());
+    	}
+    }
+
 	public static void main(String[] args) throws Exception
 	{
 		String s;
@@ -309,6 +1137,8 @@ public class FileContentProcessor implements ItemProcessor<FileInfo, FileData>,
 	@Override
 	public ExitStatus afterStep(StepExecution stepExecution)
 	{
+		if (newestEvents != null)
+			resultModel.addAll(newestEvents.getNewestFirst());
 		return null;
 	}
 
@@ -319,14 +1149,159 @@ public class FileContentProcessor implements ItemProcessor<FileInfo, FileData>,
         this.stepExecution = stepExecution;
 		commonPrefix = stepExecution.getJobExecution().getExecutionContext().getString(AppConstants.PROP_COMMON_PATH);
     	searchString = stepExecution.getJobParameters().getString(AppConstants.JOB_SEARCH_STRING);
+    	searchMode = SearchMode.valueOf(stepExecution.getJobParameters().getString(AppConstants.JOB_PARAM_SEARCH_MODE, SearchMode.TEXT.name()));
     	LogPattern logPattern = patternDao.getByCode(stepExecution.getJobParameters().getString(AppConstants.JOB_PARAM_PATTERN_CODE)); 
     	encoding = logPattern.getEncoding();
     	datePattern = logPattern.getDatePattern();
+    	includes = logPattern.getIncludes();
+    	maxArchiveDepth = appProperties.getMaxArchiveDepth();
     	if (StringUtils.isEmpty(encoding))
     		encoding = "UTF-8";
+    	charset = Charset.forName(encoding);
+    	byteSearch = SearchUtils.isByteSearchable(charset);
+    	ignoreCase = stepExecution.getJobParameters().getLong(AppConstants.JOB_PARAM_IGNORE_CASE, 0L) != 0;
+    	lineMatcher = SearchUtils.createMatcher(searchMode, searchString, charset, ignoreCase);
+    	layoutFilter = createLayoutFilter(logPattern);
+    	if (layoutFilter != null)
+    	{
+    		log.info("Filtering {}", layoutFilter);
+    		if (lineMatcher == null)
+    			lineMatcher = SearchUtils.ALL;
+    	}
+    	if (lineMatcher != null)
+    		log.info("Searching {}{} {}", searchMode, ignoreCase ? " (ignore case)" : "", lineMatcher);
+    	if (!byteSearch)
+    		log.info("Encoding {} is not byte searchable. Lines will be decoded", encoding);
     	dateFrom = stepExecution.getJobParameters().getDate(AppConstants.JOB_PARAM_FROM);
     	dateTo = stepExecution.getJobParameters().getDate(AppConstants.JOB_PARAM_TO);
+    	fromTime = dateFrom.getTime();
+    	toTime = dateTo.getTime();
+    	long saveType = stepExecution.getJobParameters().getLong(AppConstants.JOB_PARAM_SAVE_TO_ARCHIVE, 0L);
+    	saveResults = saveType == SearchModel.SAVE_TYPE_FILE || saveType == SearchModel.SAVE_TYPE_FOLDER;
+    	linesBefore = stepExecution.getJobParameters().getLong(AppConstants.JOB_PARAM_LINES_BEFORE, 0L).intValue();
+    	linesAfter = stepExecution.getJobParameters().getLong(AppConstants.JOB_PARAM_LINES_AFTER, 0L).intValue();
+    	resultMode = ResultMode.valueOf(stepExecution.getJobParameters().getString(AppConstants.JOB_PARAM_RESULT_MODE, ResultMode.LINES.name()));
+    	newestEvents = resultMode == ResultMode.NEWEST && lineMatcher != null
+    			? new NewestEvents((int)Math.min(stepExecution.getJobParameters().getLong(AppConstants.JOB_PARAM_NEWEST_COUNT, 200L), appProperties.getMaxResults()))
+    			: null;
+    	if (resultMode == ResultMode.FILES || resultMode == ResultMode.COUNT)
+    	{
+    		// строк нет - нет и контекста
+    		linesBefore = 0;
+    		linesAfter = 0;
+    	}
+    	if (lineMatcher != null && resultMode != ResultMode.LINES)
+    		log.info("Showing {}", resultMode);
+    	collectBlockFilters = appProperties.isBlockFilters() && byteSearch && lineMatcher != null;
+    	blockFilterTerms = collectBlockFilters ? createBlockFilterTerms() : null;
+    	trigramTerms = byteSearch && lineMatcher != null ? createTrigramTerms() : null;
 
-    	dateFormat = null;
+    	// заданный формат нужен уже первому файлу для поиска начала периода (см. findStartOffset)
+    	dateFormat = StringUtils.isNotEmpty(datePattern) ? compileDateFormat() : null;
     }
+
+    private TimestampFormat compileDateFormat()
+    {
+    	TimestampFormat result = TimestampFormat.compile(datePattern, charset);
+    	log.info("Using date format '{}'{}", datePattern, result.isCompiled() ? "" : " (not compiled)");
+    	return result;
+    }
+
+    /**
+     * Слова искомых строк для отсева блоков файла по фильтрам ({@link BlockFilters})
+     * @return null, если блоки отсеять нельзя: регулярное выражение, запрос, поиск без учёта регистра,
+     * строка без слов, отделённых в ней с обеих сторон
+     */
+    private List<long[]> createBlockFilterTerms()
+    {
+    	if (ignoreCase || StringUtils.isEmpty(searchString) || (searchMode != SearchMode.TEXT && searchMode != SearchMode.TERMS))
+    		return null;
+    	List<String> terms = searchMode == SearchMode.TERMS ? SearchUtils.splitTerms(searchString) : Collections.singletonList(searchString);
+    	List<long[]> result = new ArrayList<>();
+    	for (String term : terms)
+    	{
+    		long[] tokens = BlockFilters.termTokens(term, charset);
+    		if (tokens == null)
+    			return null;
+    		result.add(tokens);
+    	}
+    	return result.isEmpty() ? null : result;
+    }
+
+    /**
+     * Триграммы искомых строк для отсева блоков файла по индексу ({@link TrigramIndex})
+     * @return null, если блоки отсеять нельзя: регулярное выражение, запрос, строка короче трёх байт
+     */
+    private List<int[]> createTrigramTerms()
+    {
+    	if (StringUtils.isEmpty(searchString) || (searchMode != SearchMode.TEXT && searchMode != SearchMode.TERMS))
+    		return null;
+    	List<String> terms = searchMode == SearchMode.TERMS ? SearchUtils.splitTerms(searchString) : Collections.singletonList(searchString);
+    	List<int[]> result = new ArrayList<>();
+    	for (String term : terms)
+    	{
+    		int[] trigrams = TrigramIndex.termTrigrams(term, charset, ignoreCase);
+    		if (trigrams == null)
+    			return null;
+    		result.add(trigrams);
+    	}
+    	return result.isEmpty() ? null : result;
+    }
+
+    /**
+     * Заодно берёт формат даты из шаблона строки, если он не задан отдельно
+     * @return null если отбора по полям нет или шаблон строки не позволяет его сделать
+     */
+    private LayoutFilter createLayoutFilter(LogPattern logPattern)
+    {
+    	if (StringUtils.isEmpty(logPattern.getLayout()))
+    		return null;
+    	try
+    	{
+    		LogLayout layout = LogLayout.compile(logPattern.getLayout(), charset);
+    		if (StringUtils.isEmpty(datePattern))
+    			datePattern = layout.getDatePattern();
+    		LayoutFilter result = new LayoutFilter(
+    				layout, 
+    				stepExecution.getJobParameters().getString(AppConstants.JOB_PARAM_LEVEL), 
+    				stepExecution.getJobParameters().getString(AppConstants.JOB_PARAM_LOGGER), 
+    				stepExecution.getJobParameters().getString(AppConstants.JOB_PARAM_THREAD), 
+    				charset);
+    		return result.isEmpty() ? null : result;
+    	}
+    	catch (IllegalArgumentException ex)
+    	{
+    		log.error("Layout of pattern {} is ignored: {}", logPattern.getCode(), ex.getMessage());
+    		return null;
+    	}
+    }
+
+	/**
+	 * Результат просмотра файла или его части
+	 */
+	private static class ScanResult
+	{
+		/** Найденные строки до первой строки с датой. Попадут в результат, если в предыдущих частях дат не было */
+		final List<LogEvent> leadingEvents = new ArrayList<>();
+		final List<LogEvent> events = new ArrayList<>();
+		/** Совпадения вместо leadingEvents и events, если строки не сохраняются */
+		long leadingCount;
+		long count;
+		/** Путь для найденного в этой части */
+		String path;
+		/** Точки индекса времени или null, если смещения в файле неизвестны */
+		TimeIndex.Builder timeIndex;
+		/** Слова строк по блокам или null, если фильтры блоков не набираются */
+		BlockFilters.Builder blockFilters;
+		/** До куда просмотрен файл (конец файла или начало строки, на которой просмотр остановлен) или -1, если смещения неизвестны */
+		long end = -1;
+		long firstTime = TimestampFormat.NO_DATE;
+		long lastTime = TimestampFormat.NO_DATE;
+		boolean lastTimeInRange;
+		boolean dateInRange;
+		/** Без строки поиска: найдена строка в периоде. В режиме {@link ResultMode#FILES}: найдено совпадение */
+		boolean found;
+		/** Просмотр остановлен, дальше файл читать не нужно */
+		boolean stopped;
+	}
 }
@@ -7,8 +7,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.text.DateFormat;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -19,14 +19,13 @@ import java.util.zip.ZipInputStream;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.time.FastDateFormat;
 import org.logscanner.AppConstants;
 import org.logscanner.cache.CacheFileInfo;
-import org.logscanner.data.ByteContentReader;
 import org.logscanner.data.FileData;
 import org.logscanner.data.FileInfo;
 import org.logscanner.data.LogEvent;
 import org.logscanner.data.LogPattern;
+import org.logscanner.data.SpoolContentReader;
 import org.logscanner.exception.FileTooBigException;
 import org.logscanner.logger.Logged;
 import org.logscanner.logger.Logged.Level;
@@ -36,6 +35,8 @@ import org.logscanner.service.FileSystemService;
 import org.logscanner.service.FileSystemService.ReaderType;
 import org.logscanner.service.JobResultModel;
 import org.logscanner.service.LogPatternDao;
+import org.logscanner.util.TimestampFormat;
+import org.logscanner.util.TimestampParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.ExitStatus;
@@ -69,6 +70,7 @@ public class FileContentProcessor3 implements ItemProcessor<FileInfo, FileData>,
 	private String searchString;
 	private String encoding;
 	private String datePattern;
+	private TimestampFormat dateFormat;
 	private Date dateFrom;
 	private Date dateTo;
 	
@@ -94,16 +96,21 @@ public class FileContentProcessor3 implements ItemProcessor<FileInfo, FileData>,
 			}
 			else
 			{
-				try (InputStream inputStream = fileSystemService.getInputStream(file))
+				SpoolContentReader spool = new SpoolContentReader();
+				try (InputStream inputStream = spool.tee(fileSystemService.getInputStream(file)))
 				{
-					inputStream.mark(Integer.MAX_VALUE);
 					if (match(inputStream, fileData))
 					{
-						inputStream.reset();
-						fileData.setContentReader(new ByteContentReader(IOUtils.toByteArray(inputStream)));
+						spool.drain(inputStream);
+						fileData.setContentReader(spool);
 						result = fileData;
 					}
 				}
+				finally
+				{
+					if (result == null)
+						spool.close();
+				}
 			}
 			if (result != null)
 				resultModel.addSelectedFile();
@@ -176,9 +183,7 @@ public class FileContentProcessor3 implements ItemProcessor<FileInfo, FileData>,
     	boolean result = false;
     	String line;
     	List<LogEvent> list = new ArrayList<>();
-    	FastDateFormat dateFormat = StringUtils.isNotEmpty(datePattern) 
-    								? FastDateFormat.getInstance(datePattern)
-    								: null;
+    	TimestampParser dateParser = dateFormat != null ? dateFormat.newParser() : null;
     	boolean dateInRangeWholeFile = false;
     	Date contentStart = null;
     	Date contentEnd = null;
@@ -186,7 +191,7 @@ public class FileContentProcessor3 implements ItemProcessor<FileInfo, FileData>,
     	boolean lastParsedDateInRange = false;
     	while ((line = reader.readLine()) != null)
     	{
-    		Date dt = tryToParseDate(line, dateFormat);
+    		Date dt = tryToParseDate(line, dateParser);
     		
     		boolean dateIsEmpty = dt == null; 
     		boolean dateInRange = false;
@@ -231,19 +236,14 @@ public class FileContentProcessor3 implements ItemProcessor<FileInfo, FileData>,
     	return result;
     }
 
-	private Date tryToParseDate(String line, FastDateFormat dateFormat) 
+	private Date tryToParseDate(String line, TimestampParser dateParser) 
 	{
 		Date result = null;
-		if (dateFormat != null)
+		if (dateParser != null)
 		{
-			try
-			{
-				result = dateFormat.parse(line);
-			}
-			catch (ParseException | NumberFormatException ex)
-			{
-				//Can't parse date. DO NOTHING.
-			}
+			long time = dateParser.parse(line, 0, line.length());
+			if (time != TimestampFormat.NO_DATE)
+				result = new Date(time);
 		}
 		return result;
 	}
@@ -299,6 +299,7 @@ public class FileContentProcessor3 implements ItemProcessor<FileInfo, FileData>,
     	datePattern = logPattern.getDatePattern();
     	if (StringUtils.isEmpty(encoding))
     		encoding = "UTF-8";
+    	dateFormat = StringUtils.isNotEmpty(datePattern) ? TimestampFormat.compile(datePattern, Charset.forName(encoding)) : null;
     	dateFrom = stepExecution.getJobParameters().getDate(AppConstants.JOB_PARAM_FROM);
     	dateTo = stepExecution.getJobParameters().getDate(AppConstants.JOB_PARAM_TO);
     }
@@ -0,0 +1,86 @@
+package org.logscanner.jobs;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.logscanner.util.TimestampFormat;
+import org.logscanner.util.TimestampParser;
+import org.logscanner.util.search.LineConsumer;
+import org.logscanner.util.search.LineMatcher;
+
+/**
+ * Построчное чтение лога для {@link FileContentProcessor}.
+ * Строка декодируется в {@link String} только по требованию.
+ */
+public interface LogLineReader
+{
+	/**
+	 * @return false если достигнут конец файла
+	 */
+	public boolean nextLine() throws IOException;
+
+	public boolean matches(LineMatcher matcher);
+
+	public List<String> getMatchedTerms(LineMatcher matcher);
+
+	/**
+	 * Передаёт consumer байты текущей строки
+	 * @return false, если байтов строки нет (строки декодируются) и consumer не вызван
+	 */
+	public default boolean accept(LineConsumer consumer)
+	{
+		return false;
+	}
+
+	/**
+	 * @return дата в начале текущей строки или {@link TimestampFormat#NO_DATE}
+	 */
+	public long parseTimestamp(TimestampParser parser);
+
+	/**
+	 * Начало текущей строки, достаточное для разбора даты
+	 */
+	public String getLinePrefix(int maxLength);
+
+	public String getLine();
+
+	/**
+	 * @return смещение начала текущей строки от начала потока в байтах или -1, если оно неизвестно (строки декодируются)
+	 */
+	public default long getLineOffset()
+	{
+		return -1;
+	}
+
+	/**
+	 * Запоминать столько предыдущих строк для {@link #getPreviousLines()}
+	 */
+	public void setHistorySize(int lines);
+
+	/**
+	 * Строки перед текущей записью (не больше {@link #setHistorySize(int)}), от ранних к поздним
+	 */
+	public List<String> getPreviousLines();
+
+	/**
+	 * Текущая строка начинает новую запись: строку с датой и следующие за ней строки без даты (стек исключения и т.п.)
+	 */
+	public void startRecord();
+
+	/**
+	 * Добавляет текущую строку к записи. Слишком длинная запись дальше не растёт
+	 */
+	public void extendRecord();
+
+	/**
+	 * Текст текущей записи, строки через '\n'
+	 */
+	public String getRecord();
+
+	/**
+	 * Чтение закончено: переиспользуемые буферы можно отдать следующему читателю
+	 */
+	public default void release()
+	{
+	}
+}
@@ -0,0 +1,73 @@
+package org.logscanner.jobs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.logscanner.data.LogEvent;
+
+/**
+ * N самых новых найденных записей - куча с самой старой в вершине. В неё пишут все потоки просмотра файлов.
+ * Пока куча заполнена, файлы и записи не новее вершины можно не просматривать ({@link #isTooOld(long)})
+ */
+public class NewestEvents
+{
+	private static final Comparator<LogEvent> OLDEST_FIRST = Comparator.comparingLong(NewestEvents::timeOf);
+
+	private final int capacity;
+	private final PriorityQueue<LogEvent> heap;
+	/** Время вершины заполненной кучи, иначе Long.MIN_VALUE. Читается без блокировки */
+	private volatile long threshold = Long.MIN_VALUE;
+
+	public NewestEvents(int capacity)
+	{
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		this.capacity = capacity;
+		this.heap = new PriorityQueue<>(capacity, OLDEST_FIRST);
+	}
+
+	/**
+	 * Записи без даты старше любых других
+	 */
+	private static long timeOf(LogEvent event)
+	{
+		return event.getLogTime() != null ? event.getLogTime().getTime() : Long.MIN_VALUE;
+	}
+
+	public synchronized void addAll(Collection<LogEvent> events)
+	{
+		for (LogEvent event : events)
+		{
+			if (heap.size() < capacity)
+				heap.add(event);
+			else if (timeOf(event) > timeOf(heap.peek()))
+			{
+				heap.poll();
+				heap.add(event);
+			}
+		}
+		if (heap.size() == capacity)
+			threshold = timeOf(heap.peek());
+	}
+
+	/**
+	 * Запись с этим временем (или файл, который им заканчивается) в кучу уже не попадёт
+	 */
+	public boolean isTooOld(long time)
+	{
+		return time <= threshold;
+	}
+
+	/**
+	 * @return записи от новых к старым
+	 */
+	public synchronized List<LogEvent> getNewestFirst()
+	{
+		List<LogEvent> result = new ArrayList<>(heap);
+		result.sort(OLDEST_FIRST.reversed());
+		return result;
+	}
+}
@@ -93,6 +93,10 @@ public class PackFilesWriter3 extends AbstractItemStreamItemWriter<FileData> imp
 					os.writeTo(outputStream);	
 				}
 			}
+			finally
+			{
+				fileData.getContentReader().close(); // временная копия (SpoolContentReader) больше не нужна
+			}
 		}
 	}
 	
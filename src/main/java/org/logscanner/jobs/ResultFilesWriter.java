@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import org.logscanner.data.FileData;
 import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.StepExecutionListener;
@@ -32,6 +33,24 @@ public class ResultFilesWriter<T> extends CompositeItemWriter<T> implements Step
 		super.setDelegates(delegates);
 	}
 
+	/**
+	 * Найденные файлы закрываются после всех писателей, даже если сохранять их не нужно
+	 */
+	@Override
+	public void write(List<? extends T> items) throws Exception
+	{
+		try
+		{
+			super.write(items);
+		}
+		finally
+		{
+			for (T item : items)
+				if (item instanceof FileData && ((FileData)item).getContentReader() != null)
+					((FileData)item).getContentReader().close();
+		}
+	}
+
 	@BeforeStep
 	@Override
 	public void beforeStep(StepExecution stepExecution)
@@ -70,6 +70,12 @@ public class AppProperties
 	private int settingsVersion = 1;
 	@Getter
 	private int maxResults = 10000;
+	/** Сколько уровней вложенных архивов и сжатых файлов раскрывать (zip в zip, gz в zip) */
+	@Getter
+	private int maxArchiveDepth = 3;
+	/** Строить при просмотре файлов фильтры блоков ({@link org.logscanner.cache.BlockFilters}) и не читать по ним блоки без искомых слов */
+	@Getter
+	private boolean blockFilters;
 	@Getter
 	@Setter
 	private String defaultPatternCode;
@@ -192,6 +198,8 @@ public class AppProperties
 									AppProperties.class
 							);
 		maxResults = p.maxResults;
+		maxArchiveDepth = p.maxArchiveDepth;
+		blockFilters = p.blockFilters;
 		defaultDir = p.defaultDir;
 		defaultPatternCode = p.defaultPatternCode;
 		defaultSaveToFile = p.defaultSaveToFile;
@@ -3,6 +3,7 @@ package org.logscanner.service;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -23,6 +24,7 @@ import org.logscanner.data.FilterParams;
 import org.logscanner.data.LocalFileInfo;
 import org.logscanner.data.Location;
 import org.logscanner.data.LocationType;
+import org.logscanner.data.MappedContentReader;
 import org.logscanner.data.UriContentReader;
 import org.logscanner.exception.BusinessException;
 import org.logscanner.exception.FileTooBigException;
@@ -43,6 +45,7 @@ public abstract class BaseFileService implements FileSystemService
 {
 	/** MAX_FILE_SIZE = 101 */
 	private static long MAX_FILE_SIZE = 101; //Mb
+	private static final long WRITE_QUIET_PERIOD = 10 * 60 * 1000;
 	
 	@Autowired
 	protected CacheManager cacheManager;
@@ -67,6 +70,14 @@ public abstract class BaseFileService implements FileSystemService
 							);
 				result = new ByteContentReader(Files.readAllBytes(path));
 				break;
+			case MAPPED:
+				// отображение, которое освободит только сборщик мусора, мешает ротации пишущегося лога
+				if (path.getFileSystem() == FileSystems.getDefault() && (MappedContentReader.isUnmapSupported() || !isBeingWritten(path)))
+				{
+					result = new MappedContentReader(path, size);
+					break;
+				}
+				// иначе читаем как URI
 			case URI:
 				result = new UriContentReader(path.toUri(), size);
 				break;
@@ -77,6 +88,14 @@ public abstract class BaseFileService implements FileSystemService
 		return result;
 	}
 	
+	/**
+	 * Файл, изменённый позже {@link #WRITE_QUIET_PERIOD} назад, считается ещё записываемым
+	 */
+	private static boolean isBeingWritten(Path path) throws IOException
+	{
+		return System.currentTimeMillis() - Files.getLastModifiedTime(path).toMillis() < WRITE_QUIET_PERIOD;
+	}
+
 	@Override
 	public InputStream getInputStream(FileInfo file) throws IOException, BusinessException
 	{
@@ -86,6 +105,15 @@ public abstract class BaseFileService implements FileSystemService
 	protected abstract boolean isSupported(Location location);
 	protected abstract LocalDirectoryScanner createDirectoryScanner(Location location);
 	protected abstract List<FileInfo> processScannerResults(LocalDirectoryScanner dirScanner, Location location);
+	protected abstract Path getPath(Location location, String filePath);
+
+	@Override
+	public BasicFileAttributes readAttributes(Location location, String filePath) throws IOException
+	{
+		if (!isSupported(location))
+			throw new IllegalArgumentException(Resources.getStr("error.unsupported_location_type", location.getType()));
+		return Files.readAttributes(getPath(location, filePath), BasicFileAttributes.class);
+	}
 
 	@Override
 	public List<FileInfo> listFiles(Location location, FilterParams filterParams) throws IOException
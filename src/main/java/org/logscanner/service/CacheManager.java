@@ -1,21 +1,31 @@
 package org.logscanner.service;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.PostConstruct;
 
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.logscanner.cache.BlockFilters;
 import org.logscanner.cache.Cache;
 import org.logscanner.cache.CacheFileInfo;
+import org.logscanner.cache.TimeIndex;
+import org.logscanner.cache.TrigramIndex;
 import org.logscanner.jobs.LocationsReader;
 import org.logscanner.util.ServiceHelper;
 import org.slf4j.Logger;
@@ -52,9 +62,22 @@ public class CacheManager
 	{
 		jobResultModel.addPropertyChangeListener("jobState", (event) -> {
 			if (event.getNewValue() == JobResultModel.JobState.STOPPED)
-				caches.forEach((locationCode, cache) -> saveCache(locationCode, cache));
+				saveCaches();
 		});
 	}
+
+	public void saveCaches()
+	{
+		caches.forEach((locationCode, cache) -> saveCache(locationCode, cache));
+	}
+
+	/**
+	 * Все файлы места поиска, известные кэшу
+	 */
+	public List<CacheFileInfo> getFiles(String locationCode)
+	{
+		return new ArrayList<>(findCache(locationCode).getFiles());
+	}
 	
 	/**
 	 * @param locationCode
@@ -103,6 +126,7 @@ public class CacheManager
 			if (!Objects.equals(newLastModifiedTime, fileInfo.getLastModified()))
 			{
 				fileInfo.setLastModified(newLastModifiedTime);
+				// индексы остаются: файл мог быть только дописан (проверяется при чтении, см. FilePrefix)
 				fileInfo.setContentEnd(null);
 				cache.changed(fileInfo);
 			}
@@ -137,6 +161,162 @@ public class CacheManager
 		return fileInfo;
 	}
 	
+	/**
+	 * Файл усечён или заменён другим (ротация): сведения о содержимом и индексы сбрасываются и строятся заново
+	 */
+	public CacheFileInfo resetContent(String locationCode, String path)
+	{
+		Cache cache = findCache(locationCode);
+		CacheFileInfo fileInfo = getFileInfo(cache, locationCode, path, null);
+		if (fileInfo == null)
+			return null;
+		log.info("{} {} was truncated or replaced", locationCode, path);
+		fileInfo.setContentStart(null);
+		fileInfo.setContentEnd(null);
+		fileInfo.setTimeIndex(null);
+		fileInfo.setBlockFilters(false);
+		fileInfo.setIndexedLastModified(null);
+		fileInfo.setIndexedSize(0);
+		cache.changed(fileInfo);
+		return fileInfo;
+	}
+
+	/**
+	 * Фильтры блоков будут построены заново при следующем чтении файла с начала
+	 */
+	public CacheFileInfo dropBlockFilters(String locationCode, String path)
+	{
+		Cache cache = findCache(locationCode);
+		CacheFileInfo fileInfo = getFileInfo(cache, locationCode, path, null);
+		if (fileInfo != null && fileInfo.isBlockFilters())
+		{
+			fileInfo.setBlockFilters(false);
+			cache.changed(fileInfo);
+		}
+		return fileInfo;
+	}
+
+	/**
+	 * Добавляет точки индекса времени, набранные при просмотре файла или его части.
+	 * Индекс привязывается к размеру и отпечатку файла при просмотре и времени изменения файла из кэша
+	 * @param appended прежний индекс годится для начала файла: точки добавляются к нему
+	 */
+	public CacheFileInfo updateTimeIndex(String locationCode, String path, long[] offsets, long[] times, long size, long tail, boolean appended)
+	{
+		Cache cache = findCache(locationCode);
+		CacheFileInfo fileInfo = getFileInfo(cache, locationCode, path, null);
+		if (fileInfo == null || fileInfo.getLastModified() == null || offsets.length == 0)
+			return fileInfo;
+		TimeIndex timeIndex = fileInfo.getTimeIndex();
+		if (timeIndex != null && appended)
+			timeIndex = timeIndex.merge(size, fileInfo.getLastModified(), tail, offsets, times);
+		else
+			timeIndex = new TimeIndex(size, fileInfo.getLastModified(), tail, offsets, times);
+		fileInfo.setTimeIndex(timeIndex);
+		cache.changed(fileInfo);
+		return fileInfo;
+	}
+	
+	/**
+	 * Сохраняет фильтры блоков, набранные при просмотре файла с начала.
+	 * Фильтры привязываются к размеру и отпечатку файла при просмотре и времени изменения файла из кэша
+	 */
+	public CacheFileInfo saveBlockFilters(String locationCode, String path, BlockFilters.Builder builder, long size, long tail)
+	{
+		Cache cache = findCache(locationCode);
+		CacheFileInfo fileInfo = getFileInfo(cache, locationCode, path, null);
+		if (fileInfo == null || fileInfo.getLastModified() == null || builder.isEmpty())
+			return fileInfo;
+		BlockFilters blockFilters = builder.build(path, size, fileInfo.getLastModified(), tail);
+		Path filtersPath = getBlockFiltersPath(locationCode, path);
+		try
+		{
+			Files.createDirectories(filtersPath.getParent());
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(filtersPath))))
+			{
+				blockFilters.write(out);
+			}
+			fileInfo.setBlockFilters(true);
+			cache.changed(fileInfo);
+		}
+		catch (IOException ex)
+		{
+			log.error("", ex);
+		}
+		return fileInfo;
+	}
+
+	/**
+	 * @return фильтры блоков файла или null. Годятся ли они для файла сейчас, проверяет {@link BlockFilters#isValidFor(java.nio.channels.SeekableByteChannel, Date)}
+	 */
+	public BlockFilters getBlockFilters(String locationCode, String path)
+	{
+		CacheFileInfo fileInfo = getFileInfo(locationCode, path, null);
+		if (fileInfo == null || !fileInfo.isBlockFilters())
+			return null;
+		Path filtersPath = getBlockFiltersPath(locationCode, path);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(filtersPath))))
+		{
+			BlockFilters result = BlockFilters.read(in);
+			return path.equals(result.getPath()) ? result : null;
+		}
+		catch (IOException ex)
+		{
+			log.warn("Unable to read block filters {}: {}", filtersPath, ex.toString());
+			dropBlockFilters(locationCode, path);
+			return null;
+		}
+	}
+
+	/**
+	 * Сохраняет индекс триграмм файла и отмечает в кэше, для какой версии файла он построен
+	 */
+	public CacheFileInfo saveTrigramIndex(String locationCode, TrigramIndex index)
+	{
+		Cache cache = findCache(locationCode);
+		CacheFileInfo fileInfo = getFileInfo(cache, locationCode, index.getPath(), null);
+		if (fileInfo == null)
+			return null;
+		Path indexPath = getTrigramIndexPath(locationCode, index.getPath());
+		try
+		{
+			Files.createDirectories(indexPath.getParent());
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexPath))))
+			{
+				index.write(out);
+			}
+			fileInfo.setIndexedLastModified(index.getLastModified());
+			fileInfo.setIndexedSize(index.getSize());
+			cache.changed(fileInfo);
+		}
+		catch (IOException ex)
+		{
+			log.error("", ex);
+		}
+		return fileInfo;
+	}
+
+	/**
+	 * @return индекс триграмм файла или null. Годится ли он для файла сейчас, проверяет {@link TrigramIndex#isValidFor(java.nio.channels.SeekableByteChannel, Date)}
+	 */
+	public TrigramIndex getTrigramIndex(String locationCode, String path)
+	{
+		CacheFileInfo fileInfo = getFileInfo(locationCode, path, null);
+		if (fileInfo == null || fileInfo.getIndexedLastModified() == null)
+			return null;
+		Path indexPath = getTrigramIndexPath(locationCode, path);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath))))
+		{
+			TrigramIndex result = TrigramIndex.read(in);
+			return path.equals(result.getPath()) ? result : null;
+		}
+		catch (IOException ex)
+		{
+			log.warn("Unable to read trigram index {}: {}", indexPath, ex.toString());
+			return null;
+		}
+	}
+
 	private Cache findCache(String locationCode)
 	{
 		Cache result = caches.get(locationCode);
@@ -204,4 +384,16 @@ public class CacheManager
 	{
 		return Paths.get(props.getDataDir(), "data", "files", locationCode, "dir.json");
 	}
+
+	private Path getBlockFiltersPath(String locationCode, String path)
+	{
+		String name = FilenameUtils.getName(path) + "-" + Integer.toHexString(path.hashCode()) + ".bf";
+		return Paths.get(props.getDataDir(), "data", "files", locationCode, "blocks", name);
+	}
+
+	private Path getTrigramIndexPath(String locationCode, String path)
+	{
+		String name = FilenameUtils.getName(path) + "-" + Integer.toHexString(path.hashCode()) + ".tri";
+		return Paths.get(props.getDataDir(), "data", "files", locationCode, "trigrams", name);
+	}
 }
@@ -2,6 +2,7 @@ package org.logscanner.service;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.List;
 
 import org.logscanner.data.ContentReader;
@@ -20,6 +21,8 @@ public interface FileSystemService
 	{
 		IN_MEMORY,
 		URI,
+		/** Отображение в память, только для файлов локальной файловой системы. Для остальных - как URI */
+		MAPPED,
 		AUTO
 	}
 	
@@ -27,4 +30,10 @@ public interface FileSystemService
 	public InputStream getInputStream(FileInfo file) throws IOException, BusinessException;
 	public String getRelativePath(FileInfo file, String basePath);
 	public List<FileInfo> listFiles(Location location, FilterParams filterParams) throws IOException;
+
+	/**
+	 * Атрибуты одного файла места поиска, без просмотра каталогов
+	 * @param filePath путь, как в {@link FileInfo#getFilePath()}
+	 */
+	public BasicFileAttributes readAttributes(Location location, String filePath) throws IOException;
 }
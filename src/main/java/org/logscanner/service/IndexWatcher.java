@@ -0,0 +1,292 @@
+package org.logscanner.service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.logscanner.cache.CacheFileInfo;
+import org.logscanner.data.Location;
+import org.logscanner.data.LocationType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Следит за файлами мест поиска с {@link Location#getIndexed()}, чтобы поиск заставал индексы готовыми.
+ * Локальные каталоги отслеживаются через {@link WatchService}: изменившийся файл, который поиск отбирает
+ * с одним из шаблонов ({@link TrigramIndexer#findPatterns}), дочитывает {@link TrigramIndexer}, когда его перестают писать.
+ * У известных кэшу файлов SFTP только опрашиваются атрибуты: так кэш узнаёт о дописанных,
+ * а сведения об усечённых и заменённых (ротация) сбрасываются до следующего поиска.
+ * Всё выполняется в одном фоновом потоке indexTaskScheduler; пока идёт поиск, изменения только копятся
+ */
+@Slf4j
+@Service
+public class IndexWatcher
+{
+	/** Как часто разбирать события WatchService, мс */
+	private static final long WATCH_INTERVAL = 2000;
+	/** Как часто опрашивать файлы SFTP и перечитывать список мест поиска, мс */
+	private static final long POLL_INTERVAL = 60_000;
+	/** Файл дочитывается, когда его не меняли столько, мс... */
+	private static final long QUIET_PERIOD = 10_000;
+	/** ...или когда с первого изменения прошло столько: активный лог пишется постоянно */
+	private static final long MAX_DELAY = 60_000;
+
+	@Autowired
+	private LocationDao locationDao;
+	@Autowired
+	private CacheManager cacheManager;
+	@Autowired
+	private TrigramIndexer trigramIndexer;
+	@Autowired
+	private FileServiceSelector fileServiceSelector;
+	@Autowired
+	@Qualifier("indexTaskScheduler")
+	private TaskScheduler indexTaskScheduler;
+
+	private WatchService watchService;
+	/** Отслеживаемые каталоги по ключам регистрации */
+	private final Map<WatchKey, WatchedDir> watchedDirs = new HashMap<>();
+	/** Коды мест поиска, каталоги которых отслеживаются */
+	private final Set<String> watchedLocations = new HashSet<>();
+	/** Изменившиеся файлы в порядке первого изменения */
+	private final Map<Path, PendingFile> pendingFiles = new LinkedHashMap<>();
+
+	@PostConstruct
+	public void init()
+	{
+		indexTaskScheduler.scheduleWithFixedDelay(this::poll, POLL_INTERVAL);
+		indexTaskScheduler.scheduleWithFixedDelay(this::processEvents, WATCH_INTERVAL);
+	}
+
+	@PreDestroy
+	public void destroy()
+	{
+		if (watchService == null)
+			return;
+		try
+		{
+			watchService.close();
+		}
+		catch (IOException ex)
+		{
+			log.warn("Unable to close watch service: {}", ex.toString());
+		}
+	}
+
+	/**
+	 * Начинает следить за новыми локальными местами поиска и опрашивает файлы SFTP
+	 */
+	private void poll()
+	{
+		try
+		{
+			for (Location location : locationDao.getAll())
+			{
+				if (!Boolean.TRUE.equals(location.getIndexed()))
+					continue;
+				if (location.getType() == LocationType.LOCAL && !watchedLocations.contains(location.getCode()))
+					watch(location);
+				else if (location.getType() == LocationType.SFTP && !trigramIndexer.isSearchRunning())
+					pollAttributes(location);
+			}
+		}
+		catch (RuntimeException ex)
+		{
+			// исключение отменило бы дальнейший опрос
+			log.error("", ex);
+		}
+	}
+
+	private void watch(Location location)
+	{
+		Path basedir = Paths.get(location.getPath());
+		if (!Files.isDirectory(basedir))
+			return;
+		try
+		{
+			if (watchService == null)
+				watchService = FileSystems.getDefault().newWatchService();
+			register(location.getCode(), basedir);
+			watchedLocations.add(location.getCode());
+			log.info("Watching {} {}", location.getCode(), basedir);
+		}
+		catch (IOException ex)
+		{
+			log.warn("Unable to watch {} {}: {}", location.getCode(), basedir, ex.toString());
+		}
+	}
+
+	/**
+	 * Регистрирует каталог и все вложенные
+	 */
+	private void register(String locationCode, Path dir) throws IOException
+	{
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult preVisitDirectory(Path subdir, BasicFileAttributes attrs) throws IOException
+			{
+				WatchKey key = subdir.register(watchService,
+						StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+				watchedDirs.put(key, new WatchedDir(locationCode, subdir));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException ex)
+			{
+				log.debug("Unable to watch {}: {}", file, ex.toString());
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Запоминает изменившиеся файлы и, если поиск не идёт, дочитывает те, которые перестали писать
+	 */
+	private void processEvents()
+	{
+		if (watchService == null)
+			return;
+		try
+		{
+			long now = System.currentTimeMillis();
+			WatchKey key;
+			while ((key = watchService.poll()) != null)
+			{
+				WatchedDir dir = watchedDirs.get(key);
+				for (WatchEvent<?> event : key.pollEvents())
+				{
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+					{
+						// события потеряны: известные кэшу файлы проверит общий проход
+						trigramIndexer.schedule();
+						continue;
+					}
+					if (dir == null)
+						continue;
+					Path path = dir.path.resolve((Path)event.context());
+					if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path))
+						register(dir.locationCode, path);
+					// блокировки, временные и прочие файлы, которые поиск не отбирает, в кэш не попадают
+					else if (!trigramIndexer.findPatterns(dir.locationCode, path).isEmpty())
+						pendingFiles.computeIfAbsent(path, p -> new PendingFile(dir.locationCode, now)).changed = now;
+				}
+				if (!key.reset())
+					watchedDirs.remove(key);
+			}
+			updatePending(now);
+		}
+		catch (ClosedWatchServiceException ex)
+		{
+			log.debug("Watch service is closed");
+		}
+		catch (IOException | RuntimeException ex)
+		{
+			log.error("", ex);
+		}
+	}
+
+	private void updatePending(long now)
+	{
+		boolean updated = false;
+		for (Iterator<Map.Entry<Path, PendingFile>> it = pendingFiles.entrySet().iterator(); it.hasNext(); )
+		{
+			Map.Entry<Path, PendingFile> entry = it.next();
+			PendingFile pending = entry.getValue();
+			if (now - pending.changed < QUIET_PERIOD && now - pending.first < MAX_DELAY)
+				continue;
+			if (!trigramIndexer.update(pending.locationCode, entry.getKey().toString()))
+				break; // идёт поиск: дочитаем после него
+			it.remove();
+			updated = true;
+		}
+		if (updated)
+			cacheManager.saveCaches();
+	}
+
+	/**
+	 * Сверяет с кэшем атрибуты уже известных ему файлов удалённого места поиска, каталоги не просматриваются:
+	 * о новых файлах кэш узнает при поиске. Файл, ставший меньше, усечён или заменён
+	 */
+	private void pollAttributes(Location location)
+	{
+		try
+		{
+			FileSystemService fileSystemService = fileServiceSelector.select(location.getType());
+			for (CacheFileInfo cacheFileInfo : cacheManager.getFiles(location.getCode()))
+			{
+				if (trigramIndexer.isSearchRunning())
+					return;
+				BasicFileAttributes attrs;
+				try
+				{
+					attrs = fileSystemService.readAttributes(location, cacheFileInfo.getPath());
+				}
+				catch (NoSuchFileException ex)
+				{
+					continue;
+				}
+				if (attrs.size() < cacheFileInfo.getSize())
+					cacheManager.resetContent(location.getCode(), cacheFileInfo.getPath());
+				cacheManager.updateFromAttributes(location.getCode(), cacheFileInfo.getPath(), attrs);
+			}
+			cacheManager.saveCaches();
+		}
+		catch (IOException | RuntimeException ex)
+		{
+			log.warn("Unable to poll {}: {}", location.getCode(), ex.toString());
+		}
+	}
+
+	private static class WatchedDir
+	{
+		final String locationCode;
+		final Path path;
+
+		WatchedDir(String locationCode, Path path)
+		{
+			this.locationCode = locationCode;
+			this.path = path;
+		}
+	}
+
+	private static class PendingFile
+	{
+		final String locationCode;
+		/** Время первого и последнего замеченного изменения */
+		final long first;
+		long changed;
+
+		PendingFile(String locationCode, long first)
+		{
+			this.locationCode = locationCode;
+			this.first = first;
+			this.changed = first;
+		}
+	}
+}
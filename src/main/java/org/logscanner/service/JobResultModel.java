@@ -6,6 +6,8 @@ import java.time.LocalTime;
 import java.time.ZoneId;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.PostConstruct;
@@ -62,6 +64,8 @@ public class JobResultModel extends AbstractListModel<LogEvent> implements JobEx
 	private AtomicInteger filesToProcess = new AtomicInteger();
 	private AtomicInteger processedFiles = new AtomicInteger();
 	private AtomicInteger selectedFiles = new AtomicInteger();
+	/** Место поиска -> число совпадений (режим {@link org.logscanner.data.ResultMode#COUNT}) */
+	private Map<String, Long> matchCounts = new TreeMap<>();
 	
 	@PostConstruct
 	void init()
@@ -92,6 +96,28 @@ public class JobResultModel extends AbstractListModel<LogEvent> implements JobEx
 			fireIntervalAdded(this, Math.max(0, size - events.size()), size);
 	}
 
+    /**
+     * Файл с числом совпадений вместо найденных строк. Число добавляется к итогу по месту поиска
+     */
+    public synchronized void addMatchCount(String locationCode, String path, long count)
+    {
+    	add(new LogEvent(null, locationCode, path, String.valueOf(count)));
+    	matchCounts.merge(locationCode, count, Long::sum);
+    }
+
+    /**
+     * Файл с совпадениями без строк и без числа совпадений (режим {@link org.logscanner.data.ResultMode#FILES})
+     */
+    public synchronized void addMatchedFile(String locationCode, String path)
+    {
+    	add(new LogEvent(null, locationCode, path, ""));
+    }
+
+    public synchronized Map<String, Long> getMatchCounts()
+    {
+    	return new TreeMap<>(matchCounts);
+    }
+
     public synchronized void addPropertyChangeListener(PropertyChangeListener listener) 
     {
         if (changeSupport == null)
@@ -131,6 +157,7 @@ public class JobResultModel extends AbstractListModel<LogEvent> implements JobEx
 	{
 		int size = queue.size();
 		queue.clear();
+		matchCounts.clear();
 		fireIntervalRemoved(this, 0, size);
 		error = null;
 		startTime = null;
@@ -184,6 +211,7 @@ public class JobResultModel extends AbstractListModel<LogEvent> implements JobEx
 		
 		log.info("Work time {}", LogUtils.createDurationString(startTime, endTime));		
 		log.info((new StatisticsPrinter()).print());
+		getMatchCounts().forEach((location, count) -> log.info("{}: {} matches", location, count));
 		if (jobExecution.getStatus() == BatchStatus.FAILED || jobExecution.getStatus() == BatchStatus.UNKNOWN)
 		{
 			List<Throwable> list = jobExecution.getAllFailureExceptions();
@@ -44,6 +44,12 @@ public class LocalFileService extends BaseFileService
 		return result;
 	}
 	
+	@Override
+	protected Path getPath(Location location, String filePath)
+	{
+		return Paths.get(filePath);
+	}
+
 	@Override
 	protected LocalDirectoryScanner createDirectoryScanner(Location location)
 	{
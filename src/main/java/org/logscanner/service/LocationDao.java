@@ -56,6 +56,15 @@ public class LocationDao extends DaoSupport
 	{
 		return root;
 	}
+
+	public List<Location> getAll()
+	{
+		List<Location> result = new ArrayList<>();
+		for (Named named : toList(root))
+			if (named instanceof Location)
+				result.add((Location)named);
+		return result;
+	}
 	
 	@Override
 	protected void checkDaoConfig() throws IllegalArgumentException 
@@ -42,6 +42,15 @@ public class SFTPFileService extends BaseFileService
 		return location.getType() == LocationType.SFTP;
 	}
 	
+	/**
+	 * Путь на сервере через файловую систему SFTP, открытую для поиска
+	 */
+	@Override
+	protected Path getPath(Location location, String filePath)
+	{
+		return ((SFTPDirectoryScanner)createDirectoryScanner(location)).getFileSystem().getPath(filePath);
+	}
+
 	@Override
 	protected LocalDirectoryScanner createDirectoryScanner(Location location)
 	{
@@ -21,6 +21,8 @@ import javax.swing.event.SwingPropertyChangeSupport;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.logscanner.common.gui.ListItem;
+import org.logscanner.data.ResultMode;
+import org.logscanner.data.SearchMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -62,8 +64,26 @@ public class SearchModel implements Serializable
 	@Getter
 	private String searchString;
 	@Getter
+	private SearchMode searchMode = SearchMode.TEXT;
+	@Getter
 	private String patternCode;
 	@Getter
+	private boolean ignoreCase;
+	@Getter
+	private int linesBefore;
+	@Getter
+	private int linesAfter;
+	@Getter
+	private String level;
+	@Getter
+	private String logger;
+	@Getter
+	private String thread;
+	@Getter
+	private ResultMode resultMode = ResultMode.LINES;
+	@Getter
+	private int newestCount = 200;
+	@Getter
 	private Long executionId;
 	private PropertyChangeSupport propertyChangeSupport;
 	
@@ -106,6 +126,51 @@ public class SearchModel implements Serializable
 		this.searchString = searchString;
 		firePropertyChange("searchString", oldSearchString, searchString);
 	}
+	public void setSearchMode(SearchMode searchMode) {
+		SearchMode oldSearchMode = this.searchMode;
+		this.searchMode = searchMode;
+		firePropertyChange("searchMode", oldSearchMode, searchMode);
+	}
+	public void setIgnoreCase(boolean ignoreCase) {
+		boolean oldIgnoreCase = this.ignoreCase;
+		this.ignoreCase = ignoreCase;
+		firePropertyChange("ignoreCase", oldIgnoreCase, ignoreCase);
+	}
+	public void setLinesBefore(int linesBefore) {
+		int oldLinesBefore = this.linesBefore;
+		this.linesBefore = linesBefore;
+		firePropertyChange("linesBefore", oldLinesBefore, linesBefore);
+	}
+	public void setLinesAfter(int linesAfter) {
+		int oldLinesAfter = this.linesAfter;
+		this.linesAfter = linesAfter;
+		firePropertyChange("linesAfter", oldLinesAfter, linesAfter);
+	}
+	public void setLevel(String level) {
+		String oldLevel = this.level;
+		this.level = level;
+		firePropertyChange("level", oldLevel, level);
+	}
+	public void setLogger(String logger) {
+		String oldLogger = this.logger;
+		this.logger = logger;
+		firePropertyChange("logger", oldLogger, logger);
+	}
+	public void setThread(String thread) {
+		String oldThread = this.thread;
+		this.thread = thread;
+		firePropertyChange("thread", oldThread, thread);
+	}
+	public void setResultMode(ResultMode resultMode) {
+		ResultMode oldResultMode = this.resultMode;
+		this.resultMode = resultMode;
+		firePropertyChange("resultMode", oldResultMode, resultMode);
+	}
+	public void setNewestCount(int newestCount) {
+		int oldNewestCount = this.newestCount;
+		this.newestCount = newestCount;
+		firePropertyChange("newestCount", oldNewestCount, newestCount);
+	}
 	public void setSaveResults(boolean saveResults) {
 		boolean oldSaveResults = this.saveResults;
 		this.saveResults = saveResults;
@@ -0,0 +1,337 @@
+package org.logscanner.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.logscanner.cache.CacheFileInfo;
+import org.logscanner.cache.FilePrefix;
+import org.logscanner.cache.TimeIndex;
+import org.logscanner.cache.TrigramIndex;
+import org.logscanner.data.Location;
+import org.logscanner.data.LocationType;
+import org.logscanner.data.LogPattern;
+import org.logscanner.jobs.ByteLineReader;
+import org.logscanner.jobs.LogLineReader;
+import org.logscanner.util.CompressionUtils;
+import org.logscanner.util.DateFormatSelector;
+import org.logscanner.util.TimestampFormat;
+import org.logscanner.util.TimestampParser;
+import org.logscanner.util.search.SearchUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Дочитывает в фоне файлы мест поиска с {@link Location#getIndexed()}: обновляет индекс времени ({@link TimeIndex}),
+ * начало и конец содержимого в кэше, а для больших файлов - индекс триграмм ({@link TrigramIndex}).
+ * После каждого поиска в {@link #indexTaskScheduler} дочитываются новые и изменившиеся файлы, известные кэшу,
+ * между поисками - файлы, изменение которых заметил {@link IndexWatcher}.
+ * Уже прочитанные не перечитываются, а у дописанных читается только дописанное.
+ * Пока идёт поиск, чтение прерывается и продолжится после него.
+ * Кодировка и формат даты - как у поиска с шаблонами, под includes которых подходит файл ({@link #findPatterns(String, Path)})
+ */
+@Slf4j
+@Service
+public class TrigramIndexer
+{
+	/** Файлы меньше этого размера читаются быстрее индекса триграмм */
+	private static final long MIN_SIZE = 4 * 1024 * 1024;
+	/** Сколько байт от начала строки декодировать для разбора даты */
+	private static final int DATE_PREFIX_LENGTH = 64;
+
+	@Autowired
+	private LocationDao locationDao;
+	@Autowired
+	private CacheManager cacheManager;
+	@Autowired
+	private LogPatternDao patternDao;
+	@Autowired
+	private JobResultModel jobResultModel;
+	@Autowired
+	@Qualifier("indexTaskScheduler")
+	private TaskScheduler indexTaskScheduler;
+
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	@PostConstruct
+	public void init()
+	{
+		jobResultModel.addPropertyChangeListener("jobState", (event) -> {
+			if (event.getNewValue() == JobResultModel.JobState.STOPPED)
+				schedule();
+		});
+	}
+
+	/**
+	 * Запускает проход по файлам, если он ещё не запланирован
+	 */
+	public void schedule()
+	{
+		if (scheduled.compareAndSet(false, true))
+			indexTaskScheduler.schedule(this::indexAll, new Date());
+	}
+
+	private void indexAll()
+	{
+		scheduled.set(false);
+		try
+		{
+			for (Location location : locationDao.getAll())
+			{
+				if (!Boolean.TRUE.equals(location.getIndexed()) || location.getType() != LocationType.LOCAL)
+					continue;
+				for (CacheFileInfo fileInfo : cacheManager.getFiles(location.getCode()))
+				{
+					if (!update(location.getCode(), fileInfo.getPath()))
+					{
+						log.info("Indexing is postponed until the search ends");
+						return;
+					}
+				}
+			}
+		}
+		finally
+		{
+			cacheManager.saveCaches();
+		}
+	}
+
+	public boolean isSearchRunning()
+	{
+		return jobResultModel.getJobState() != JobResultModel.JobState.STOPPED;
+	}
+
+	/**
+	 * Дочитывает локальный файл, если он изменился. Кэш не сохраняется
+	 * @return false, если прервано поиском
+	 */
+	public boolean update(String locationCode, String filePath)
+	{
+		if (isSearchRunning())
+			return false;
+		if (CompressionUtils.hasCompressedExtension(filePath) || FilenameUtils.isExtension(filePath.toLowerCase(), "zip"))
+			return true;
+		Path file = Paths.get(filePath);
+		List<LogPattern> patterns = findPatterns(locationCode, file);
+		if (patterns.isEmpty())
+			return true; // поиск этот файл не читает
+		Charset charset = selectCharset(patterns);
+		if (charset != null && !SearchUtils.isByteSearchable(charset))
+			return true; // такой файл поиск читает без индексов
+		try
+		{
+			BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+			if (!attrs.isRegularFile())
+				return true;
+			CacheFileInfo fileInfo = cacheManager.updateFromAttributes(locationCode, filePath, attrs);
+			Date lastModified = fileInfo.getLastModified();
+			long size = attrs.size();
+			boolean trigrams = size >= MIN_SIZE;
+			if (isCurrent(fileInfo, size, lastModified, trigrams))
+				return true;
+			long started = System.currentTimeMillis();
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+			{
+				if (CompressionUtils.isCompressed(channel))
+					return true;
+				TimestampParser dateParser = charset != null ? selectDateParser(channel, charset, patterns) : null;
+				if (dateParser == null && !trigrams)
+					return true;
+				TimeIndex previous = fileInfo.getTimeIndex();
+				if (previous != null && !previous.isValidFor(channel, lastModified))
+				{
+					cacheManager.resetContent(locationCode, filePath);
+					previous = null;
+				}
+				TrigramIndex.Builder builder = trigrams ? createBuilder(locationCode, filePath, channel, lastModified) : null;
+				long offset = 0;
+				if (builder != null)
+					offset = builder.getResumeOffset();
+				else if (previous != null)
+					offset = previous.getOffsets()[previous.getOffsets().length - 1];
+				Summary summary = new Summary();
+				if (!read(channel, offset, size, charset != null ? charset : StandardCharsets.UTF_8, dateParser, builder, summary))
+					return false;
+				long tail = FilePrefix.tailOf(channel, size);
+				if (builder != null)
+					cacheManager.saveTrigramIndex(locationCode, builder.build(filePath, size, lastModified, tail));
+				if (!summary.timeIndex.isEmpty())
+					cacheManager.updateTimeIndex(locationCode, filePath, summary.timeIndex.getOffsets(), summary.timeIndex.getTimes(), size, tail, previous != null);
+				if (summary.lastTime != TimestampFormat.NO_DATE)
+					cacheManager.updateFromContent(locationCode, filePath, offset == 0 ? new Date(summary.firstTime) : null, new Date(summary.lastTime));
+				log.info("Indexed {} {} from {} to {} in {} ms", locationCode, filePath, offset, size, System.currentTimeMillis() - started);
+			}
+		}
+		catch (NoSuchFileException ex)
+		{
+			log.debug("{} {} no longer exists", locationCode, filePath);
+		}
+		catch (IOException ex)
+		{
+			log.warn("Unable to index {} {}: {}", locationCode, filePath, ex.toString());
+		}
+		return true;
+	}
+
+	/**
+	 * Шаблоны, с которыми поиск отбирает файл места поиска
+	 */
+	public List<LogPattern> findPatterns(String locationCode, Path file)
+	{
+		Location location = locationDao.getByCode(locationCode);
+		if (location == null || location.getPath() == null)
+			return Collections.emptyList();
+		Path basedir = Paths.get(location.getPath()).toAbsolutePath().normalize();
+		Path path = file.toAbsolutePath().normalize();
+		if (!path.startsWith(basedir))
+			return Collections.emptyList();
+		String relativePath = basedir.relativize(path).toString();
+		return patternDao.getAll().stream()
+				.filter(pattern -> pattern.isIncluded(relativePath))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * @return кодировка поиска с этими шаблонами или null, если у шаблонов она разная
+	 */
+	private static Charset selectCharset(List<LogPattern> patterns)
+	{
+		Set<String> encodings = patterns.stream()
+				.map(pattern -> StringUtils.defaultIfEmpty(pattern.getEncoding(), "UTF-8"))
+				.collect(Collectors.toSet());
+		String encoding = encodings.iterator().next();
+		return encodings.size() == 1 && Charset.isSupported(encoding) ? Charset.forName(encoding) : null;
+	}
+
+	/**
+	 * @return индексы и сведения о содержимом уже построены для этой версии файла
+	 */
+	private boolean isCurrent(CacheFileInfo fileInfo, long size, Date lastModified, boolean trigrams)
+	{
+		if (trigrams && (size != fileInfo.getIndexedSize() || !lastModified.equals(fileInfo.getIndexedLastModified())))
+			return false;
+		TimeIndex timeIndex = fileInfo.getTimeIndex();
+		return timeIndex != null && timeIndex.isValidFor(size, lastModified) && fileInfo.getContentEnd() != null;
+	}
+
+	/**
+	 * Индекс дописанного файла продолжается с прежнего, индекс усечённого или заменённого строится заново
+	 */
+	private TrigramIndex.Builder createBuilder(String locationCode, String filePath, FileChannel channel, Date lastModified) throws IOException
+	{
+		TrigramIndex previous = cacheManager.getTrigramIndex(locationCode, filePath);
+		if (previous == null)
+			return new TrigramIndex.Builder();
+		if (previous.isValidFor(channel, lastModified))
+			return new TrigramIndex.Builder(previous);
+		cacheManager.resetContent(locationCode, filePath);
+		return new TrigramIndex.Builder();
+	}
+
+	/**
+	 * Формат даты, как при поиске ({@link org.logscanner.jobs.FileContentProcessor#beforeStep}): из шаблона,
+	 * а если в шаблоне его нет - по первой строке файла
+	 * @return null, если формат не определён или у шаблонов он разный: индекс времени не строится
+	 */
+	private TimestampParser selectDateParser(FileChannel channel, Charset charset, List<LogPattern> patterns) throws IOException
+	{
+		Set<String> datePatterns = patterns.stream()
+				.map(pattern -> StringUtils.defaultString(pattern.getDatePattern()))
+				.collect(Collectors.toSet());
+		if (datePatterns.size() != 1)
+			return null;
+		String datePattern = datePatterns.iterator().next();
+		if (StringUtils.isNotEmpty(datePattern))
+			return TimestampFormat.compile(datePattern, charset).newParser();
+		channel.position(0);
+		LogLineReader reader = new ByteLineReader(new CloseShieldInputStream(Channels.newInputStream(channel)), charset);
+		try
+		{
+			if (!reader.nextLine())
+				return null;
+			datePattern = DateFormatSelector.selectFormat(reader.getLinePrefix(DATE_PREFIX_LENGTH));
+			return StringUtils.isNotEmpty(datePattern) ? TimestampFormat.compile(datePattern, charset).newParser() : null;
+		}
+		finally
+		{
+			reader.release();
+		}
+	}
+
+	/**
+	 * Читает файл с offset (начала строки) до size. Строки с датой начинают записи, как при поиске
+	 * @param builder null, если индекс триграмм не нужен
+	 * @return false, если прервано поиском
+	 */
+	private boolean read(FileChannel channel, long offset, long size, Charset charset, TimestampParser dateParser, TrigramIndex.Builder builder,
+			Summary summary) throws IOException
+	{
+		channel.position(offset);
+		InputStream inputStream = new BoundedInputStream(new CloseShieldInputStream(Channels.newInputStream(channel)), size - offset);
+		LogLineReader reader = new ByteLineReader(inputStream, charset);
+		try
+		{
+			while (reader.nextLine())
+			{
+				if (isSearchRunning())
+					return false;
+				long lineOffset = offset + reader.getLineOffset();
+				long time = dateParser != null ? reader.parseTimestamp(dateParser) : TimestampFormat.NO_DATE;
+				if (time != TimestampFormat.NO_DATE)
+				{
+					summary.timeIndex.add(lineOffset, time);
+					if (summary.firstTime == TimestampFormat.NO_DATE)
+						summary.firstTime = time;
+					summary.lastTime = time;
+				}
+				if (builder != null)
+				{
+					builder.startLine(lineOffset, dateParser == null || time != TimestampFormat.NO_DATE);
+					reader.accept(builder);
+				}
+			}
+			if (builder != null)
+				builder.finish();
+			return true;
+		}
+		finally
+		{
+			reader.release();
+		}
+	}
+
+	/**
+	 * Даты, прочитанные в файле
+	 */
+	private static class Summary
+	{
+		final TimeIndex.Builder timeIndex = new TimeIndex.Builder();
+		long firstTime = TimestampFormat.NO_DATE;
+		long lastTime = TimestampFormat.NO_DATE;
+	}
+}
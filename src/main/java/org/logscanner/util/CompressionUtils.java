@@ -0,0 +1,105 @@
+package org.logscanner.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+
+/**
+ * Сжатые одиночные файлы (gzip, bzip2, xz, zstd) и zip-архивы. Формат определяется по сигнатуре:
+ * ротированные логи часто сжимают, не меняя имени.
+ */
+public class CompressionUtils
+{
+	/** Сколько байт из начала файла нужно для определения формата */
+	public static final int SIGNATURE_LENGTH = 6;
+	/** Результат {@link #detect(byte[], int)} для zip-архива */
+	public static final String ZIP = ArchiveStreamFactory.ZIP;
+
+	private static final String[] COMPRESSED_EXTENSIONS = { "gz", "gzip", "bz2", "xz", "zst", "zip" };
+
+	/**
+	 * Имя файла говорит, что он сжат или это архив
+	 */
+	public static boolean hasCompressedExtension(String fileName)
+	{
+		return FilenameUtils.isExtension(fileName.toLowerCase(), COMPRESSED_EXTENSIONS);
+	}
+
+	/**
+	 * @return формат из {@link CompressorStreamFactory}, {@link #ZIP} или null, если содержимое не сжато
+	 */
+	public static String detect(byte[] signature, int length)
+	{
+		if (ZipArchiveInputStream.matches(signature, length))
+			return ZIP;
+		if (GzipCompressorInputStream.matches(signature, length))
+			return CompressorStreamFactory.GZIP;
+		if (BZip2CompressorInputStream.matches(signature, length))
+			return CompressorStreamFactory.BZIP2;
+		if (XZCompressorInputStream.matches(signature, length))
+			return CompressorStreamFactory.XZ;
+		if (ZstdUtils.matches(signature, length))
+			return CompressorStreamFactory.ZSTANDARD;
+		return null;
+	}
+
+	/**
+	 * Читает сигнатуру и возвращает её в поток
+	 * @return формат из {@link CompressorStreamFactory}, {@link #ZIP} или null, если содержимое не сжато
+	 */
+	public static String detect(PushbackInputStream inputStream) throws IOException
+	{
+		byte[] signature = new byte[SIGNATURE_LENGTH];
+		int length = 0;
+		int n;
+		while (length < signature.length && (n = inputStream.read(signature, length, signature.length - length)) > 0)
+			length += n;
+		if (length > 0)
+			inputStream.unread(signature, 0, length);
+		return detect(signature, length);
+	}
+
+	/**
+	 * Сжат ли файл или является zip-архивом. Смещение в таком файле не соответствует смещению в содержимом
+	 */
+	public static boolean isCompressed(SeekableByteChannel channel) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(SIGNATURE_LENGTH);
+		channel.position(0);
+		while (buffer.hasRemaining() && channel.read(buffer) > 0)
+			;
+		return detect(buffer.array(), buffer.position()) != null;
+	}
+
+	/**
+	 * Распаковывающий поток. Его закрытие не закрывает inputStream.
+	 * Склеенные gzip/bzip2 (logrotate, cat a.gz b.gz) читаются целиком
+	 * @param compressor формат из {@link #detect(PushbackInputStream)}
+	 */
+	public static InputStream createDecompressor(String compressor, InputStream inputStream) throws IOException
+	{
+		if (CompressorStreamFactory.ZSTANDARD.equals(compressor) && !ZstdUtils.isZstdCompressionAvailable())
+			throw new IOException("zstd native library is not available");
+		try
+		{
+			return new CompressorStreamFactory(true).createCompressorInputStream(compressor, new CloseShieldInputStream(inputStream));
+		}
+		catch (CompressorException ex)
+		{
+			throw new IOException(ex.getMessage(), ex);
+		}
+	}
+}
@@ -0,0 +1,464 @@
+package org.logscanner.util;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Раскладка строки лога по шаблону в стиле logback/log4j:
+ * {@code %d{yyyy-MM-dd HH:mm:ss,SSS} [%-5level] [%thread] %logger - %msg%n}.
+ * <p>
+ * Границы полей ищутся лениво - только для запрошенного поля и только до него: конец поля - следующее
+ * вхождение литерала шаблона. Если все элементы перед полем имеют постоянную ширину (литералы, дата из числовых полей,
+ * уровень шириной от 5), начало поля - постоянное смещение от начала строки и предыдущие поля не просматриваются.
+ * <p>
+ * Поддерживаются %d (%date), %p (%le, %level), %t (%thread), %c (%lo, %logger), %m (%msg, %message), %n
+ * и модификаторы ширины. Остальные конверсии - поля, по которым отбирать нельзя.
+ * <p>
+ * Экземпляр неизменяемый и потокобезопасный.
+ */
+public class LogLayout
+{
+	public enum Field
+	{
+		DATE, LEVEL, THREAD, LOGGER, MESSAGE, OTHER
+	}
+
+	/** Результат {@link #locate}, если строка не подходит под шаблон */
+	public static final long NOT_FOUND = -1;
+
+	private static final String DEFAULT_DATE_PATTERN = "yyyy-MM-dd HH:mm:ss,SSS";
+	/** Самое длинное название уровня: ERROR, DEBUG, TRACE, FATAL */
+	private static final int MAX_LEVEL_LENGTH = 5;
+
+	private final String layout;
+	private final Element[] elements;
+	/** Field.ordinal() -> номер элемента или -1 */
+	private final int[] fieldIndex;
+
+	private LogLayout(String layout, List<Element> elements)
+	{
+		this.layout = layout;
+		this.elements = elements.toArray(new Element[elements.size()]);
+		this.fieldIndex = new int[Field.values().length];
+		Arrays.fill(fieldIndex, -1);
+		int fixedBytes = 0;
+		int fixedChars = 0;
+		boolean fixed = true;
+		for (int i = 0; i < this.elements.length; i++)
+		{
+			Element element = this.elements[i];
+			if (element.field != null && fieldIndex[element.field.ordinal()] < 0)
+				fieldIndex[element.field.ordinal()] = i;
+			element.fixedBytes = fixed ? fixedBytes : -1;
+			element.fixedChars = fixed ? fixedChars : -1;
+			if (element.field == null)
+			{
+				fixedBytes += element.bytes.length;
+				fixedChars += element.text.length();
+			}
+			else if (element.width >= 0)
+			{
+				fixedBytes += element.width;
+				fixedChars += element.width;
+			}
+			else
+				fixed = false;
+			// разделитель может встречаться внутри даты: "yyyy-MM-dd HH:mm:ss" и " "
+			if (element.field == Field.DATE && i + 1 < this.elements.length && this.elements[i + 1].field == null)
+				element.skip = StringUtils.countMatches(element.text, this.elements[i + 1].text);
+		}
+	}
+
+	/**
+	 * @throws IllegalArgumentException если шаблон некорректен
+	 */
+	public static LogLayout compile(String layout, Charset charset)
+	{
+		List<Element> elements = new ArrayList<>();
+		StringBuilder literal = new StringBuilder();
+		int n = layout.length();
+		int i = 0;
+		while (i < n)
+		{
+			char c = layout.charAt(i++);
+			if (c == '\\' && i < n)
+			{
+				literal.append(layout.charAt(i++));
+				continue;
+			}
+			if (c != '%')
+			{
+				literal.append(c);
+				continue;
+			}
+			if (i < n && layout.charAt(i) == '%')
+			{
+				literal.append('%');
+				i++;
+				continue;
+			}
+			int start = i - 1;
+			// модификатор ширины: [-]min[.[-]max]
+			if (i < n && layout.charAt(i) == '-')
+				i++;
+			int digits = i;
+			while (i < n && Character.isDigit(layout.charAt(i)))
+				i++;
+			int min = i > digits ? Integer.parseInt(layout.substring(digits, i)) : -1;
+			int max = -1;
+			if (i < n && layout.charAt(i) == '.')
+			{
+				i++;
+				if (i < n && layout.charAt(i) == '-')
+					i++;
+				digits = i;
+				while (i < n && Character.isDigit(layout.charAt(i)))
+					i++;
+				max = i > digits ? Integer.parseInt(layout.substring(digits, i)) : -1;
+			}
+			int wordStart = i;
+			while (i < n && Character.isLetter(layout.charAt(i)))
+				i++;
+			String word = layout.substring(wordStart, i);
+			if (word.isEmpty())
+				throw new IllegalArgumentException("Invalid conversion at index " + start + " in layout '" + layout + "'");
+			String option = null;
+			if (i < n && layout.charAt(i) == '{')
+			{
+				int close = layout.indexOf('}', i);
+				if (close < 0)
+					throw new IllegalArgumentException("Unclosed option at index " + i + " in layout '" + layout + "'");
+				option = layout.substring(i + 1, close);
+				i = close + 1;
+			}
+			if ("n".equals(word))
+				continue;
+			if (literal.length() > 0)
+			{
+				elements.add(new Element(literal.toString(), charset));
+				literal.setLength(0);
+			}
+			elements.add(createField(word, option, min, max));
+		}
+		if (literal.length() > 0)
+			elements.add(new Element(literal.toString(), charset));
+		return new LogLayout(layout, elements);
+	}
+
+	private static Element createField(String word, String option, int min, int max)
+	{
+		Field field;
+		switch (word)
+		{
+			case "d":
+			case "date":
+				field = Field.DATE;
+				break;
+			case "p":
+			case "le":
+			case "level":
+				field = Field.LEVEL;
+				break;
+			case "t":
+			case "thread":
+				field = Field.THREAD;
+				break;
+			case "c":
+			case "lo":
+			case "logger":
+				field = Field.LOGGER;
+				break;
+			case "m":
+			case "msg":
+			case "message":
+				field = Field.MESSAGE;
+				break;
+			default:
+				field = Field.OTHER;
+		}
+		Element result = new Element(field);
+		if (field == Field.DATE)
+		{
+			result.text = datePattern(option);
+			int width = dateWidth(result.text);
+			if (width >= 0 && min <= width)
+				result.width = width;
+		}
+		else if (field == Field.LEVEL && min >= MAX_LEVEL_LENGTH && (max < 0 || max >= min))
+			result.width = min;
+		else if (field != Field.MESSAGE && min >= 0 && min == max)
+			result.width = min;
+		return result;
+	}
+
+	private static String datePattern(String option)
+	{
+		if (StringUtils.isEmpty(option) || "ISO8601".equals(option))
+			return DEFAULT_DATE_PATTERN;
+		if ("ABSOLUTE".equals(option))
+			return "HH:mm:ss,SSS";
+		if ("DATE".equals(option))
+			return "dd MMM yyyy HH:mm:ss,SSS";
+		return option;
+	}
+
+	/**
+	 * @return ширина даты, если шаблон только из чисел постоянной ширины, иначе -1
+	 */
+	private static int dateWidth(String pattern)
+	{
+		int i = 0;
+		while (i < pattern.length())
+		{
+			char c = pattern.charAt(i);
+			if (c == '\'')
+				return -1;
+			int run = 1;
+			while (i + run < pattern.length() && pattern.charAt(i + run) == c)
+				run++;
+			if (Character.isLetter(c))
+			{
+				boolean fixed;
+				switch (c)
+				{
+					case 'y':
+						fixed = run == 2 || run == 4;
+						break;
+					case 'M':
+					case 'd':
+					case 'H':
+					case 'k':
+					case 'm':
+					case 's':
+						fixed = run == 2;
+						break;
+					case 'S':
+						fixed = run == 3;
+						break;
+					default:
+						fixed = false;
+				}
+				if (!fixed)
+					return -1;
+			}
+			i += run;
+		}
+		return pattern.length();
+	}
+
+	public boolean hasField(Field field)
+	{
+		return fieldIndex[field.ordinal()] >= 0;
+	}
+
+	/**
+	 * @return шаблон даты, если строка начинается с даты, иначе null
+	 */
+	public String getDatePattern()
+	{
+		return elements.length > 0 && elements[0].field == Field.DATE ? elements[0].text : null;
+	}
+
+	/**
+	 * Границы значения поля без выравнивающих пробелов
+	 * @param from начало строки
+	 * @param to конец строки
+	 * @return {@link #start(long)} и {@link #end(long)} или {@link #NOT_FOUND}
+	 */
+	public long locate(Field field, byte[] buf, int from, int to)
+	{
+		int index = fieldIndex[field.ordinal()];
+		if (index < 0)
+			return NOT_FOUND;
+		int i = 0;
+		int pos = from;
+		if (elements[index].fixedBytes >= 0)
+		{
+			// предыдущие поля не просматриваем, но литерал перед полем проверяем
+			i = index > 0 && elements[index - 1].field == null ? index - 1 : index;
+			pos = from + elements[i].fixedBytes;
+		}
+		for (; ; i++)
+		{
+			Element element = elements[i];
+			if (element.field == null)
+			{
+				if (!startsWith(buf, pos, to, element.bytes))
+					return NOT_FOUND;
+				pos += element.bytes.length;
+				continue;
+			}
+			int end;
+			if (element.width >= 0)
+				end = pos + element.width <= to ? pos + element.width : -1;
+			else if (element.field == Field.MESSAGE || i + 1 == elements.length)
+				end = to;
+			else if (elements[i + 1].field != null)
+				end = -1; // два поля без разделителя
+			else
+				end = indexOf(buf, pos, to, elements[i + 1].bytes, element.skip);
+			if (end < 0)
+				return NOT_FOUND;
+			if (i == index)
+			{
+				while (pos < end && buf[pos] == ' ')
+					pos++;
+				while (end > pos && buf[end - 1] == ' ')
+					end--;
+				return location(pos, end);
+			}
+			pos = end;
+		}
+	}
+
+	/**
+	 * @see #locate(Field, byte[], int, int)
+	 */
+	public long locate(Field field, CharSequence line)
+	{
+		int index = fieldIndex[field.ordinal()];
+		if (index < 0)
+			return NOT_FOUND;
+		int to = line.length();
+		int i = 0;
+		int pos = 0;
+		if (elements[index].fixedChars >= 0)
+		{
+			i = index > 0 && elements[index - 1].field == null ? index - 1 : index;
+			pos = elements[i].fixedChars;
+		}
+		for (; ; i++)
+		{
+			Element element = elements[i];
+			if (element.field == null)
+			{
+				if (!startsWith(line, pos, element.text))
+					return NOT_FOUND;
+				pos += element.text.length();
+				continue;
+			}
+			int end;
+			if (element.width >= 0)
+				end = pos + element.width <= to ? pos + element.width : -1;
+			else if (element.field == Field.MESSAGE || i + 1 == elements.length)
+				end = to;
+			else if (elements[i + 1].field != null)
+				end = -1;
+			else
+				end = indexOf(line, pos, elements[i + 1].text, element.skip);
+			if (end < 0)
+				return NOT_FOUND;
+			if (i == index)
+			{
+				while (pos < end && line.charAt(pos) == ' ')
+					pos++;
+				while (end > pos && line.charAt(end - 1) == ' ')
+					end--;
+				return location(pos, end);
+			}
+			pos = end;
+		}
+	}
+
+	public static int start(long location)
+	{
+		return (int)(location >>> 32);
+	}
+
+	public static int end(long location)
+	{
+		return (int)location;
+	}
+
+	private static long location(int start, int end)
+	{
+		return (long)start << 32 | end;
+	}
+
+	private static boolean startsWith(byte[] buf, int pos, int to, byte[] prefix)
+	{
+		if (to - pos < prefix.length)
+			return false;
+		for (int i = 0; i < prefix.length; i++)
+			if (buf[pos + i] != prefix[i])
+				return false;
+		return true;
+	}
+
+	private static boolean startsWith(CharSequence line, int pos, String prefix)
+	{
+		if (line.length() - pos < prefix.length())
+			return false;
+		for (int i = 0; i < prefix.length(); i++)
+			if (line.charAt(pos + i) != prefix.charAt(i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * @param skip сколько вхождений пропустить
+	 */
+	private static int indexOf(byte[] buf, int from, int to, byte[] pattern, int skip)
+	{
+		int limit = to - pattern.length;
+		for (int i = from; i <= limit; i++)
+		{
+			if (startsWith(buf, i, to, pattern))
+			{
+				if (skip-- == 0)
+					return i;
+				i += pattern.length - 1;
+			}
+		}
+		return -1;
+	}
+
+	private static int indexOf(CharSequence line, int from, String pattern, int skip)
+	{
+		int i = StringUtils.indexOf(line, pattern, from);
+		while (i >= 0 && skip-- > 0)
+			i = StringUtils.indexOf(line, pattern, i + pattern.length());
+		return i;
+	}
+
+	@Override
+	public String toString()
+	{
+		return layout;
+	}
+
+	/**
+	 * Литерал или поле
+	 */
+	private static class Element
+	{
+		/** null для литерала */
+		final Field field;
+		/** литерал или шаблон даты */
+		String text;
+		byte[] bytes;
+		/** постоянная ширина поля или -1 */
+		int width = -1;
+		/** сколько вхождений следующего литерала может быть внутри поля */
+		int skip;
+		/** постоянное смещение от начала строки или -1 */
+		int fixedBytes;
+		int fixedChars;
+
+		Element(String literal, Charset charset)
+		{
+			this.field = null;
+			this.text = literal;
+			this.bytes = literal.getBytes(charset);
+		}
+
+		Element(Field field)
+		{
+			this.field = field;
+		}
+	}
+}
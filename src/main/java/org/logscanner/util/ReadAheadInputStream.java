@@ -0,0 +1,214 @@
+package org.logscanner.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Поток, который заранее читает источник в фоновой задаче, чтобы, например, распаковка
+ * шла параллельно с разбором строк. Первые syncLength байт читаются в вызывающем потоке -
+ * для небольших файлов фоновая задача не запускается.
+ * <p>
+ * Блоки передаются через очередь и переиспользуются. {@link #close()} дожидается остановки фоновой задачи
+ * и закрывает источник.
+ */
+public class ReadAheadInputStream extends InputStream
+{
+	private static final ByteBuffer EOF = ByteBuffer.allocate(0);
+	private static final long PUT_TIMEOUT_MS = 100;
+
+	private final InputStream source;
+	private final Executor executor;
+	private final int blockSize;
+	private final BlockingQueue<ByteBuffer> filled;
+	private final BlockingQueue<byte[]> free;
+	private final CountDownLatch stopped = new CountDownLatch(1);
+
+	private long syncRemaining;
+	private boolean started;
+	private ByteBuffer current;
+	private volatile boolean closed;
+	private volatile IOException failure;
+
+	/**
+	 * @param syncLength сколько байт читать без фоновой задачи
+	 * @param blocks сколько блоков может быть прочитано заранее
+	 */
+	public ReadAheadInputStream(InputStream source, Executor executor, long syncLength, int blockSize, int blocks)
+	{
+		this.source = source;
+		this.executor = executor;
+		this.syncRemaining = syncLength;
+		this.blockSize = blockSize;
+		this.filled = new ArrayBlockingQueue<>(blocks);
+		this.free = new ArrayBlockingQueue<>(blocks + 1);
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		byte[] b = new byte[1];
+		int n = read(b, 0, 1);
+		return n > 0 ? b[0] & 0xff : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		if (closed)
+			throw new IOException("Stream closed");
+		if (len == 0)
+			return 0;
+		if (!started)
+		{
+			if (syncRemaining > 0)
+			{
+				int n = source.read(b, off, (int)Math.min(len, syncRemaining));
+				if (n > 0)
+					syncRemaining -= n;
+				return n;
+			}
+			start();
+			if (!started)
+				return source.read(b, off, len);
+		}
+		if (current == EOF)
+			return -1;
+		if (current == null || !current.hasRemaining())
+		{
+			if (current != null)
+				free.offer(current.array());
+			current = take();
+			if (current == EOF)
+			{
+				if (failure != null)
+					throw new IOException(failure.getMessage(), failure);
+				return -1;
+			}
+		}
+		int n = Math.min(len, current.remaining());
+		current.get(b, off, n);
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException
+	{
+		if (!started)
+			return (int)Math.min(source.available(), syncRemaining);
+		return current != null ? current.remaining() : 0;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (closed)
+			return;
+		closed = true;
+		filled.clear();
+		try
+		{
+			if (started)
+				stopped.await();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			source.close();
+		}
+	}
+
+	private void start()
+	{
+		started = true;
+		try
+		{
+			executor.execute(this::produce);
+		}
+		catch (RejectedExecutionException ex)
+		{
+			// читаем дальше сами
+			started = false;
+			syncRemaining = Long.MAX_VALUE;
+		}
+	}
+
+	private ByteBuffer take() throws IOException
+	{
+		try
+		{
+			return filled.take();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	private void produce()
+	{
+		try
+		{
+			while (!closed)
+			{
+				byte[] block = free.poll();
+				if (block == null)
+					block = new byte[blockSize];
+				int n = IOUtils.read(source, block);
+				if (n > 0)
+					put(ByteBuffer.wrap(block, 0, n));
+				if (n < blockSize)
+					break;
+			}
+			put(EOF);
+		}
+		catch (IOException ex)
+		{
+			fail(ex);
+		}
+		catch (RuntimeException ex)
+		{
+			fail(new IOException(ex.getMessage(), ex));
+		}
+		catch (InterruptedException ex)
+		{
+			fail(new InterruptedIOException());
+		}
+		finally
+		{
+			stopped.countDown();
+		}
+	}
+
+	/**
+	 * Ждёт места в очереди, пока читающий не закрыл поток
+	 */
+	private void put(ByteBuffer block) throws InterruptedException
+	{
+		while (!closed && !filled.offer(block, PUT_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+			;
+	}
+
+	/**
+	 * Прочитанное заранее уже не нужно: читающий получит ошибку
+	 */
+	private void fail(IOException ex)
+	{
+		failure = ex;
+		filled.clear();
+		filled.offer(EOF);
+	}
+}
@@ -0,0 +1,289 @@
+package org.logscanner.util;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.apache.commons.lang3.time.FastDateFormat;
+
+/**
+ * Разбор даты в начале строки лога без создания объектов и без исключений.
+ * <p>
+ * Шаблон {@link java.text.SimpleDateFormat} компилируется в список полей; числовые поля читаются прямо
+ * из символов или байт строки в миллисекунды эпохи. Семантика та же, что у {@link FastDateFormat}:
+ * число фиксированной ширины, если за ним сразу идёт другое число, иначе - все цифры подряд;
+ * двузначный год относительно текущего века; выход полей за границы переносится (lenient).
+ * Даты считаются по пролептическому григорианскому календарю, так что для дат раньше 1900 года результат
+ * может отличаться от {@link java.util.GregorianCalendar}.
+ * Строка, не подходящая под шаблон, отбрасывается на первом несовпадающем символе.
+ * <p>
+ * Поддерживаются y, M, MM, d, H, k, m, s, S и литералы. Для остальных шаблонов (названия месяцев, часовые пояса...)
+ * используется {@link FastDateFormat}.
+ * <p>
+ * Экземпляр неизменяемый и потокобезопасный.
+ */
+public class TimestampFormat
+{
+	/** Результат разбора, если в строке нет даты */
+	public static final long NO_DATE = Long.MIN_VALUE;
+
+	/** Сколько символов отдавать {@link FastDateFormat}, если шаблон не компилируется */
+	static final int FALLBACK_PREFIX_LENGTH = 64;
+	static final int MAX_DIGITS = 9;
+
+	static final int LITERAL = 0;
+	static final int YEAR = 1;
+	static final int SHORT_YEAR = 2;
+	static final int MONTH = 3;
+	static final int DAY = 4;
+	static final int HOUR = 5;
+	static final int HOUR_1_24 = 6;
+	static final int MINUTE = 7;
+	static final int SECOND = 8;
+	static final int MILLISECOND = 9;
+
+	private final String pattern;
+	final Charset charset;
+	private final TimeZone timeZone;
+	/** null, если шаблон не компилируется */
+	final Field[] fields;
+	final int minLength;
+	/**
+	 * Сколько первых полей образуют префикс с точностью до секунды, который {@link TimestampParser} запоминает.
+	 * 0 - если после секунд есть поля кроме долей секунды и литералов
+	 */
+	final int secondPrefixFields;
+	final FastDateFormat fallback;
+	private final int century;
+	private final int centuryStartYear;
+
+	private TimestampFormat(String pattern, Charset charset, Field[] fields)
+	{
+		this.pattern = pattern;
+		this.charset = charset;
+		this.timeZone = TimeZone.getDefault();
+		this.fields = fields;
+		this.fallback = fields == null ? FastDateFormat.getInstance(pattern, timeZone) : null;
+		int length = 0;
+		if (fields != null)
+			for (Field field : fields)
+				length += field.kind == LITERAL ? field.chars.length : 1;
+		this.minLength = length;
+		this.secondPrefixFields = secondPrefixFields(fields);
+		// как в FastDateParser: век, начинающийся 80 лет назад
+		Calendar calendar = Calendar.getInstance(timeZone);
+		int year = calendar.get(Calendar.YEAR) - 80;
+		this.century = year / 100 * 100;
+		this.centuryStartYear = year - century;
+	}
+
+	/**
+	 * @param charset кодировка строк для {@link #parse(byte[], int, int)}
+	 */
+	public static TimestampFormat compile(String pattern, Charset charset)
+	{
+		return new TimestampFormat(pattern, charset, compileFields(pattern, charset));
+	}
+
+	public String getPattern()
+	{
+		return pattern;
+	}
+
+	public TimeZone getTimeZone()
+	{
+		return timeZone;
+	}
+
+	/**
+	 * Шаблон разобран в поля, а не отдан {@link FastDateFormat}
+	 */
+	public boolean isCompiled()
+	{
+		return fields != null;
+	}
+
+	/**
+	 * Разбор без кэша, для одиночных строк. При чтении файла используйте {@link #newParser()}
+	 * @return миллисекунды эпохи или {@link #NO_DATE}
+	 */
+	public long parse(CharSequence s, int from, int to)
+	{
+		return newParser().parse(s, from, to);
+	}
+
+	/**
+	 * Разбор без кэша, для одиночных строк. При чтении файла используйте {@link #newParser()}
+	 * @return миллисекунды эпохи или {@link #NO_DATE}
+	 */
+	public long parse(byte[] buf, int from, int to)
+	{
+		return newParser().parse(buf, from, to);
+	}
+
+	/**
+	 * Разборщик для последовательных строк одного файла. Не потокобезопасен
+	 */
+	public TimestampParser newParser()
+	{
+		return new TimestampParser(this);
+	}
+
+	int adjustYear(int twoDigitYear)
+	{
+		int trial = century + twoDigitYear;
+		return twoDigitYear >= centuryStartYear ? trial : trial + 100;
+	}
+
+	long toEpochMillis(int year, int month, int day, int hour, int minute, int second, int millis)
+	{
+		long local = epochDay(year, month, day) * 86_400_000L
+						+ hour * 3_600_000L + minute * 60_000L + second * 1000L + millis;
+		return local - timeZone.getOffset(local - timeZone.getRawOffset());
+	}
+
+	/**
+	 * Номер дня от 1970-01-01 по григорианскому календарю. Месяц с нуля, может выходить за 0..11, день - за 1..31
+	 */
+	static long epochDay(int year, int month, int day)
+	{
+		long y = year + Math.floorDiv(month, 12);
+		int m = Math.floorMod(month, 12) + 1;
+		if (m <= 2)
+			y--;
+		long era = Math.floorDiv(y, 400);
+		long yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (m + (m > 2 ? -3 : 9)) + 2) / 5;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146_097 + dayOfEra - 719_468 + day - 1;
+	}
+
+	private static int secondPrefixFields(Field[] fields)
+	{
+		if (fields == null)
+			return 0;
+		int result = 0;
+		for (int i = 0; i < fields.length; i++)
+		{
+			int kind = fields[i].kind;
+			if (kind == SECOND)
+				result = i + 1;
+			else if (result > 0 && kind != LITERAL && kind != MILLISECOND)
+				return 0;
+		}
+		return result;
+	}
+
+	/**
+	 * @return null если в шаблоне есть неподдерживаемые поля
+	 */
+	private static Field[] compileFields(String pattern, Charset charset)
+	{
+		List<Field> result = new ArrayList<>();
+		StringBuilder literal = new StringBuilder();
+		int i = 0;
+		while (i < pattern.length())
+		{
+			char c = pattern.charAt(i);
+			if (c == '\'')
+			{
+				// 'текст', '' - сама кавычка
+				int end = i + 1;
+				if (end < pattern.length() && pattern.charAt(end) == '\'')
+				{
+					literal.append('\'');
+					i += 2;
+					continue;
+				}
+				while (end < pattern.length())
+				{
+					if (pattern.charAt(end) == '\'')
+					{
+						if (end + 1 < pattern.length() && pattern.charAt(end + 1) == '\'')
+						{
+							literal.append('\'');
+							end += 2;
+							continue;
+						}
+						break;
+					}
+					literal.append(pattern.charAt(end++));
+				}
+				i = end + 1;
+				continue;
+			}
+			if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z'))
+			{
+				literal.append(c);
+				i++;
+				continue;
+			}
+			int width = 1;
+			while (i + width < pattern.length() && pattern.charAt(i + width) == c)
+				width++;
+			i += width;
+			int kind;
+			switch (c)
+			{
+				case 'y': kind = width > 2 ? YEAR : SHORT_YEAR; break;
+				case 'M': kind = width > 2 ? -1 : MONTH; break;
+				case 'd': kind = DAY; break;
+				case 'H': kind = HOUR; break;
+				case 'k': kind = HOUR_1_24; break;
+				case 'm': kind = MINUTE; break;
+				case 's': kind = SECOND; break;
+				case 'S': kind = MILLISECOND; break;
+				default: kind = -1;
+			}
+			if (kind < 0)
+				return null;
+			if (literal.length() > 0)
+			{
+				result.add(new Field(literal.toString(), charset));
+				literal.setLength(0);
+			}
+			result.add(new Field(kind, width));
+		}
+		if (literal.length() > 0)
+			result.add(new Field(literal.toString(), charset));
+		if (result.isEmpty())
+			return null;
+		// число фиксированной ширины, только если за ним сразу следует другое число
+		for (int k = 0; k + 1 < result.size(); k++)
+			result.get(k).fixed = result.get(k).kind != LITERAL && result.get(k + 1).kind != LITERAL;
+		return result.toArray(new Field[result.size()]);
+	}
+
+	@Override
+	public String toString()
+	{
+		return pattern;
+	}
+
+	static class Field
+	{
+		final int kind;
+		final int width;
+		final char[] chars;
+		final byte[] bytes;
+		boolean fixed;
+
+		Field(int kind, int width)
+		{
+			this.kind = kind;
+			this.width = width;
+			this.chars = null;
+			this.bytes = null;
+		}
+
+		Field(String literal, Charset charset)
+		{
+			this.kind = LITERAL;
+			this.width = 0;
+			this.chars = literal.toCharArray();
+			this.bytes = literal.getBytes(charset);
+		}
+	}
+}
@@ -0,0 +1,333 @@
+package org.logscanner.util;
+
+import java.text.ParsePosition;
+import java.util.Date;
+
+import org.logscanner.util.TimestampFormat.Field;
+
+/**
+ * Разбор дат последовательных строк одного файла по {@link TimestampFormat}.
+ * <p>
+ * Запоминает байты (символы) начала последней строки до секунд включительно и их значение.
+ * Если следующая строка начинается так же, разбираются только доли секунды - в нагруженном логе
+ * это почти все строки.
+ * <p>
+ * Не потокобезопасен: один экземпляр на файл или поток.
+ */
+public class TimestampParser
+{
+	/** Сколько байт (символов) начала строки до секунд включительно можно запомнить. Обычная дата вдвое короче */
+	private static final int MAX_PREFIX_LENGTH = 64;
+
+	private final TimestampFormat format;
+	private final Field[] fields;
+	private final int prefixFields;
+	private final ByteSource byteSource;
+	private final CharSource charSource = new CharSource();
+
+	private int year, month, day, hour, minute, second, millis;
+
+	/** Значения полей запомненного префикса */
+	private int prefixYear, prefixMonth, prefixDay, prefixHour, prefixMinute, prefixSecond;
+	/** Время начала запомненной секунды */
+	private long prefixTime;
+	/** Цифра ли идёт сразу после префикса: от этого зависит, где закончится поле секунд */
+	private boolean prefixBeforeDigit;
+	/** Строки какого вида запомнен префикс, null - не запомнен */
+	private Source prefixSource;
+	private int prefixLength;
+
+	TimestampParser(TimestampFormat format)
+	{
+		this.format = format;
+		this.fields = format.fields;
+		this.prefixFields = format.secondPrefixFields;
+		this.byteSource = new ByteSource(format);
+	}
+
+	public TimestampFormat getFormat()
+	{
+		return format;
+	}
+
+	/**
+	 * @return миллисекунды эпохи или {@link TimestampFormat#NO_DATE}
+	 */
+	public long parse(byte[] buf, int from, int to)
+	{
+		byteSource.buf = buf;
+		long result = parse(byteSource, from, to);
+		byteSource.buf = null;
+		return result;
+	}
+
+	/**
+	 * @return миллисекунды эпохи или {@link TimestampFormat#NO_DATE}
+	 */
+	public long parse(CharSequence s, int from, int to)
+	{
+		charSource.s = s;
+		long result = parse(charSource, from, to);
+		charSource.s = null;
+		return result;
+	}
+
+	private long parse(Source source, int from, int to)
+	{
+		if (fields == null)
+		{
+			Date date = format.fallback.parse(
+							source.toString(from, Math.min(to, from + TimestampFormat.FALLBACK_PREFIX_LENGTH)), 
+							new ParsePosition(0)
+						);
+			return date != null ? date.getTime() : TimestampFormat.NO_DATE;
+		}
+		if (to - from < format.minLength)
+			return TimestampFormat.NO_DATE;
+
+		int pos = from;
+		int index = 0;
+		boolean cached = prefixSource == source 
+							&& to - from > prefixLength
+							&& isDigit(source.at(from + prefixLength)) == prefixBeforeDigit
+							&& source.isPrefix(from, prefixLength);
+		if (cached)
+		{
+			pos += prefixLength;
+			index = prefixFields;
+			millis = 0;
+		}
+		else
+			reset();
+		int prefixEnd = -1;
+		for (; index < fields.length; index++)
+		{
+			Field field = fields[index];
+			if (field.kind == TimestampFormat.LITERAL)
+			{
+				pos = source.skipLiteral(field, pos, to);
+				if (pos < 0)
+					return TimestampFormat.NO_DATE;
+			}
+			else
+			{
+				int end;
+				if (field.fixed)
+					end = Math.min(to, pos + field.width);
+				else
+				{
+					while (pos < to && source.isBlank(pos))
+						pos++;
+					end = Math.min(to, pos + TimestampFormat.MAX_DIGITS);
+				}
+				int start = pos;
+				int value = 0;
+				while (pos < end)
+				{
+					int c = source.at(pos);
+					if (c < '0' || c > '9')
+						break;
+					value = value * 10 + (c - '0');
+					pos++;
+				}
+				if (pos == start || (!field.fixed && pos < to && pos == end && isDigit(source.at(pos))))
+					return TimestampFormat.NO_DATE;
+				set(field.kind, value);
+			}
+			if (index == prefixFields - 1)
+				prefixEnd = pos;
+		}
+
+		if (cached)
+			return timeInPrefix();
+		long result = format.toEpochMillis(year, month, day, hour, minute, second, millis);
+		if (prefixEnd > 0 && prefixEnd - from <= MAX_PREFIX_LENGTH)
+		{
+			prefixLength = prefixEnd - from;
+			source.savePrefix(from, prefixLength);
+			prefixSource = source;
+			rememberPrefix(result, prefixEnd < to && isDigit(source.at(prefixEnd)));
+		}
+		return result;
+	}
+	private void reset()
+	{
+		year = 1970;
+		month = 0;
+		day = 1;
+		hour = 0;
+		minute = 0;
+		second = 0;
+		millis = 0;
+	}
+
+	private void set(int kind, int value)
+	{
+		switch (kind)
+		{
+			case TimestampFormat.YEAR: year = value; break;
+			case TimestampFormat.SHORT_YEAR: year = value < 100 ? format.adjustYear(value) : value; break;
+			case TimestampFormat.MONTH: month = value - 1; break;
+			case TimestampFormat.DAY: day = value; break;
+			case TimestampFormat.HOUR: hour = value; break;
+			case TimestampFormat.HOUR_1_24: hour = value == 24 ? 0 : value; break;
+			case TimestampFormat.MINUTE: minute = value; break;
+			case TimestampFormat.SECOND: second = value; break;
+			case TimestampFormat.MILLISECOND: millis = value; break;
+		}
+	}
+
+	private void rememberPrefix(long time, boolean beforeDigit)
+	{
+		prefixYear = year;
+		prefixMonth = month;
+		prefixDay = day;
+		prefixHour = hour;
+		prefixMinute = minute;
+		prefixSecond = second;
+		// переходы часовых поясов - на границе секунды, так что внутри секунды смещение одно
+		prefixTime = millis >= 0 && millis < 1000 ? time - millis 
+						: format.toEpochMillis(year, month, day, hour, minute, second, 0);
+		prefixBeforeDigit = beforeDigit;
+	}
+
+	private long timeInPrefix()
+	{
+		if (millis < 1000)
+			return prefixTime + millis;
+		// доли секунды в микросекундах и т.п. - переносятся за пределы секунды
+		return format.toEpochMillis(prefixYear, prefixMonth, prefixDay, prefixHour, prefixMinute, prefixSecond, millis);
+	}
+
+	private static boolean isDigit(int c)
+	{
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * Байты или символы разбираемой строки. Разбор полей и кэш префикса от них не зависят
+	 */
+	private interface Source
+	{
+		public int at(int pos);
+		/** Пробельный символ перед полем переменной ширины */
+		public boolean isBlank(int pos);
+		/**
+		 * @return позиция после литерала или -1, если его нет на позиции pos
+		 */
+		public int skipLiteral(Field literal, int pos, int to);
+		public String toString(int from, int to);
+		public void savePrefix(int from, int length);
+		/** Начинается ли строка с запомненного префикса */
+		public boolean isPrefix(int from, int length);
+	}
+
+	private static class ByteSource implements Source
+	{
+		private final TimestampFormat format;
+		private final byte[] prefix = new byte[MAX_PREFIX_LENGTH];
+		private byte[] buf;
+
+		ByteSource(TimestampFormat format)
+		{
+			this.format = format;
+		}
+
+		@Override
+		public int at(int pos)
+		{
+			return buf[pos];
+		}
+
+		@Override
+		public boolean isBlank(int pos)
+		{
+			return buf[pos] == ' ' || buf[pos] == '\t';
+		}
+
+		@Override
+		public int skipLiteral(Field literal, int pos, int to)
+		{
+			byte[] bytes = literal.bytes;
+			if (to - pos < bytes.length)
+				return -1;
+			for (int i = 0; i < bytes.length; i++)
+				if (buf[pos + i] != bytes[i])
+					return -1;
+			return pos + bytes.length;
+		}
+
+		@Override
+		public String toString(int from, int to)
+		{
+			return new String(buf, from, to - from, format.charset);
+		}
+
+		@Override
+		public void savePrefix(int from, int length)
+		{
+			System.arraycopy(buf, from, prefix, 0, length);
+		}
+
+		@Override
+		public boolean isPrefix(int from, int length)
+		{
+			for (int i = length - 1; i >= 0; i--) // секунды меняются чаще года
+				if (buf[from + i] != prefix[i])
+					return false;
+			return true;
+		}
+	}
+
+	private static class CharSource implements Source
+	{
+		private final char[] prefix = new char[MAX_PREFIX_LENGTH];
+		private CharSequence s;
+
+		@Override
+		public int at(int pos)
+		{
+			return s.charAt(pos);
+		}
+
+		@Override
+		public boolean isBlank(int pos)
+		{
+			return Character.isWhitespace(s.charAt(pos));
+		}
+
+		@Override
+		public int skipLiteral(Field literal, int pos, int to)
+		{
+			char[] chars = literal.chars;
+			if (to - pos < chars.length)
+				return -1;
+			for (int i = 0; i < chars.length; i++)
+				if (s.charAt(pos + i) != chars[i])
+					return -1;
+			return pos + chars.length;
+		}
+
+		@Override
+		public String toString(int from, int to)
+		{
+			return s.subSequence(from, to).toString();
+		}
+
+		@Override
+		public void savePrefix(int from, int length)
+		{
+			for (int i = 0; i < length; i++)
+				prefix[i] = s.charAt(from + i);
+		}
+
+		@Override
+		public boolean isPrefix(int from, int length)
+		{
+			for (int i = length - 1; i >= 0; i--)
+				if (s.charAt(from + i) != prefix[i])
+					return false;
+			return true;
+		}
+	}
+}
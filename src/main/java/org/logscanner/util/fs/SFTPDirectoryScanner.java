@@ -26,6 +26,17 @@ public class SFTPDirectoryScanner extends LocalDirectoryScanner {
 	
 	@Override
 	protected void init() {
+		getFileSystem();
+		if (basedirStr != null)
+			basedir = fs.getPath(basedirStr);
+	}
+
+	/**
+	 * Файловая система сервера. Открытая раньше используется повторно, без новой сессии
+	 */
+	public FileSystem getFileSystem() {
+		if (fs != null)
+			return fs;
 		try {
 //			URI uri = URI.create("sftp://" + (username != null ? (username + "@") : "")  + host + ":" + port);
 			URI uri = URI.create("sftp://" + host + ":" + port);
@@ -44,8 +55,7 @@ public class SFTPDirectoryScanner extends LocalDirectoryScanner {
 		} catch (Exception ex) {
 			throw new BuildException(ex);
 		}
-		if (basedirStr != null)
-			basedir = fs.getPath(basedirStr);
+		return fs;
 	}
 
 	public void setHost(String host) {
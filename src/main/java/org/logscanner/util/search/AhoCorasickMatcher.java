@@ -0,0 +1,326 @@
+package org.logscanner.util.search;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Поиск нескольких подстрок за один проход по строке (автомат Ахо-Корасик).
+ * <p>
+ * Автомат строится сразу как ДКА: переходы для всех состояний и классов символов посчитаны заранее,
+ * так что на каждый байт приходится одно обращение к таблице. Символы, которых нет ни в одном образце,
+ * сводятся в один класс, поэтому таблица небольшая.
+ * Для кодировок, в которых нельзя искать по байтам, автомат строится по символам.
+ * <p>
+ * Без учёта регистра образцы сворачиваются ({@link CaseFolding}), а варианты символа получают тот же класс,
+ * что и свёрнутый: для ASCII, однобайтовых кодировок и поиска по символам это ничего не стоит при поиске.
+ * Двухбайтовые символы UTF-8 (кириллица) сворачиваются по ходу просмотра.
+ */
+public class AhoCorasickMatcher implements LineMatcher
+{
+	private final List<String> terms;
+	private final boolean bytes;
+	/** символ (байт или char) -> класс */
+	private final int[] classes;
+	private final int classCount;
+	/** state * classCount + class -> state */
+	private final int[] delta;
+	/** номера образцов, заканчивающихся в состоянии (с учётом суффиксных ссылок) */
+	private final int[][] output;
+	/** то же битовой маской, если образцов не больше 64 */
+	private final long[] outputMask;
+	private final long allMask;
+	/** свёртка двухбайтовых символов UTF-8 или null */
+	private final char[] utf8Fold;
+
+	public AhoCorasickMatcher(List<String> terms, Charset charset)
+	{
+		this(terms, charset, false);
+	}
+
+	public AhoCorasickMatcher(List<String> terms, Charset charset, boolean ignoreCase)
+	{
+		this.terms = Collections.unmodifiableList(new ArrayList<>(terms));
+		this.bytes = SearchUtils.isByteSearchable(charset);
+		int[] byteFold = ignoreCase && bytes ? CaseFolding.byteTable(charset) : null;
+		this.utf8Fold = ignoreCase && bytes && StandardCharsets.UTF_8.equals(charset) ? CaseFolding.utf8Table() : null;
+
+		int[][] patterns = new int[terms.size()][];
+		for (int i = 0; i < patterns.length; i++)
+		{
+			patterns[i] = bytes ? toSymbols(terms.get(i).getBytes(charset)) : terms.get(i).chars().toArray();
+			if (ignoreCase)
+			{
+				for (int k = 0; k < patterns[i].length; k++)
+					patterns[i][k] = bytes ? byteFold[patterns[i][k]] : CaseFolding.fold((char)patterns[i][k]);
+				if (utf8Fold != null)
+					patterns[i] = CaseFolding.foldUtf8(patterns[i]);
+			}
+		}
+
+		classes = new int[bytes ? 256 : Character.MAX_VALUE + 1];
+		int count = 1;
+		for (int[] pattern : patterns)
+			for (int symbol : pattern)
+				if (classes[symbol] == 0)
+					classes[symbol] = count++;
+		classCount = count;
+		if (ignoreCase)
+			for (int symbol = 0; symbol < classes.length; symbol++)
+				if (classes[symbol] == 0)
+					classes[symbol] = classes[bytes ? byteFold[symbol] : CaseFolding.fold((char)symbol)];
+
+		int maxStates = 1;
+		for (int[] pattern : patterns)
+			maxStates += pattern.length;
+
+		// бор
+		int[] trie = new int[maxStates * classCount];
+		Arrays.fill(trie, -1);
+		List<List<Integer>> ends = new ArrayList<>();
+		ends.add(new ArrayList<>());
+		int states = 1;
+		for (int i = 0; i < patterns.length; i++)
+		{
+			int state = 0;
+			for (int symbol : patterns[i])
+			{
+				int index = state * classCount + classes[symbol];
+				if (trie[index] < 0)
+				{
+					trie[index] = states++;
+					ends.add(new ArrayList<>());
+				}
+				state = trie[index];
+			}
+			ends.get(state).add(i);
+		}
+
+		// суффиксные ссылки и переходы ДКА
+		delta = new int[states * classCount];
+		output = new int[states][];
+		int[] fail = new int[states];
+		Deque<Integer> queue = new ArrayDeque<>();
+		for (int c = 0; c < classCount; c++)
+		{
+			int next = trie[c];
+			if (next > 0)
+			{
+				delta[c] = next;
+				fail[next] = 0;
+				queue.add(next);
+			}
+			else
+				delta[c] = 0;
+		}
+		output[0] = toArray(ends.get(0));
+		while (!queue.isEmpty())
+		{
+			int state = queue.poll();
+			List<Integer> out = new ArrayList<>(ends.get(state));
+			if (output[fail[state]] != null)
+				for (int i : output[fail[state]])
+					out.add(i);
+			output[state] = toArray(out);
+			for (int c = 0; c < classCount; c++)
+			{
+				int next = trie[state * classCount + c];
+				if (next > 0)
+				{
+					fail[next] = delta[fail[state] * classCount + c];
+					delta[state * classCount + c] = next;
+					queue.add(next);
+				}
+				else
+					delta[state * classCount + c] = delta[fail[state] * classCount + c];
+			}
+		}
+
+		if (patterns.length <= Long.SIZE)
+		{
+			outputMask = new long[states];
+			for (int state = 0; state < states; state++)
+				if (output[state] != null)
+					for (int i : output[state])
+						outputMask[state] |= 1L << i;
+			allMask = patterns.length == Long.SIZE ? -1L : (1L << patterns.length) - 1;
+		}
+		else
+		{
+			outputMask = null;
+			allMask = 0;
+		}
+	}
+
+	private static int[] toSymbols(byte[] bytes)
+	{
+		int[] result = new int[bytes.length];
+		for (int i = 0; i < bytes.length; i++)
+			result[i] = bytes[i] & 0xff;
+		return result;
+	}
+
+	private static int[] toArray(List<Integer> list)
+	{
+		if (list.isEmpty())
+			return null;
+		int[] result = new int[list.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = list.get(i);
+		return result;
+	}
+
+	public List<String> getTerms()
+	{
+		return terms;
+	}
+
+	@Override
+	public boolean matches(byte[] buf, int from, int to)
+	{
+		if (output[0] != null)
+			return true;
+		int state = 0;
+		for (int i = from; i < to; i++)
+		{
+			int b = buf[i] & 0xff;
+			if (utf8Fold != null && CaseFolding.isTwoByteLead(b) && i + 1 < to && CaseFolding.isContinuation(buf[i + 1] & 0xff))
+			{
+				// образец не может закончиться на первом байте символа
+				char c = utf8Fold[(b & 0x1f) << 6 | buf[i + 1] & 0x3f];
+				state = delta[state * classCount + classes[0xc0 | c >> 6]];
+				b = 0x80 | c & 0x3f;
+				i++;
+			}
+			state = delta[state * classCount + classes[b]];
+			if (output[state] != null)
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean matches(CharSequence line)
+	{
+		if (output[0] != null)
+			return true;
+		if (bytes)
+			throw new IllegalStateException("Matcher is compiled for bytes");
+		int state = 0;
+		for (int i = 0, n = line.length(); i < n; i++)
+		{
+			state = delta[state * classCount + classes[line.charAt(i)]];
+			if (output[state] != null)
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public List<String> getMatchedTerms(byte[] buf, int from, int to)
+	{
+		boolean[] found = new boolean[terms.size()];
+		collect(output[0], found);
+		int state = 0;
+		for (int i = from; i < to; i++)
+		{
+			int b = buf[i] & 0xff;
+			if (utf8Fold != null && CaseFolding.isTwoByteLead(b) && i + 1 < to && CaseFolding.isContinuation(buf[i + 1] & 0xff))
+			{
+				// образец не может закончиться на первом байте символа
+				char c = utf8Fold[(b & 0x1f) << 6 | buf[i + 1] & 0x3f];
+				state = delta[state * classCount + classes[0xc0 | c >> 6]];
+				b = 0x80 | c & 0x3f;
+				i++;
+			}
+			state = delta[state * classCount + classes[b]];
+			collect(output[state], found);
+		}
+		return toTerms(found);
+	}
+
+	@Override
+	public List<String> getMatchedTerms(CharSequence line)
+	{
+		if (bytes)
+			throw new IllegalStateException("Matcher is compiled for bytes");
+		boolean[] found = new boolean[terms.size()];
+		collect(output[0], found);
+		int state = 0;
+		for (int i = 0, n = line.length(); i < n; i++)
+		{
+			state = delta[state * classCount + classes[line.charAt(i)]];
+			collect(output[state], found);
+		}
+		return toTerms(found);
+	}
+
+	/**
+	 * Какие образцы есть в строке, за один проход. Только если образцов не больше 64
+	 * @return бит i установлен, если найден образец i
+	 */
+	public long findAll(byte[] buf, int from, int to)
+	{
+		long found = outputMask[0];
+		int state = 0;
+		for (int i = from; i < to && found != allMask; i++)
+		{
+			int b = buf[i] & 0xff;
+			if (utf8Fold != null && CaseFolding.isTwoByteLead(b) && i + 1 < to && CaseFolding.isContinuation(buf[i + 1] & 0xff))
+			{
+				// образец не может закончиться на первом байте символа
+				char c = utf8Fold[(b & 0x1f) << 6 | buf[i + 1] & 0x3f];
+				state = delta[state * classCount + classes[0xc0 | c >> 6]];
+				b = 0x80 | c & 0x3f;
+				i++;
+			}
+			state = delta[state * classCount + classes[b]];
+			found |= outputMask[state];
+		}
+		return found;
+	}
+
+	/**
+	 * @see #findAll(byte[], int, int)
+	 */
+	public long findAll(CharSequence line)
+	{
+		if (bytes)
+			throw new IllegalStateException("Matcher is compiled for bytes");
+		long found = outputMask[0];
+		int state = 0;
+		for (int i = 0, n = line.length(); i < n && found != allMask; i++)
+		{
+			state = delta[state * classCount + classes[line.charAt(i)]];
+			found |= outputMask[state];
+		}
+		return found;
+	}
+
+	private static void collect(int[] out, boolean[] found)
+	{
+		if (out != null)
+			for (int i : out)
+				found[i] = true;
+	}
+
+	private List<String> toTerms(boolean[] found)
+	{
+		List<String> result = new ArrayList<>();
+		for (int i = 0; i < found.length; i++)
+			if (found[i])
+				result.add(terms.get(i));
+		return result;
+	}
+
+	@Override
+	public String toString()
+	{
+		return terms.toString();
+	}
+}
@@ -0,0 +1,94 @@
+package org.logscanner.util.search;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Свёртка регистра для поиска без учёта регистра: символ заменяется на {@code toLowerCase(toUpperCase(c))},
+ * так что совпадают 'Ё' и 'ё', 'Σ', 'σ' и 'ς'. Строки лога не преобразуются: свёртку один раз применяют к образцу,
+ * а при поиске - к каждому байту или символу через таблицу.
+ * <p>
+ * При поиске по байтам свёртка не меняет длину символа в кодировке. Для однобайтовых кодировок это таблица
+ * на 256 байт. В UTF-8 ASCII сворачивается той же таблицей, двухбайтовые символы (латиница с диакритикой,
+ * греческий, кириллица) - таблицей {@link #utf8Table()} по коду символа, остальные не сворачиваются.
+ */
+class CaseFolding
+{
+	/** Символы с кодом меньше этого занимают в UTF-8 не больше двух байт */
+	static final int UTF8_TWO_BYTES_LIMIT = 0x800;
+
+	private static final char[] UTF8_TABLE = new char[UTF8_TWO_BYTES_LIMIT];
+	static
+	{
+		for (char c = 0; c < UTF8_TWO_BYTES_LIMIT; c++)
+		{
+			char folded = fold(c);
+			UTF8_TABLE[c] = (c < 0x80) == (folded < 0x80) && folded < UTF8_TWO_BYTES_LIMIT ? folded : c;
+		}
+	}
+
+	static char fold(char c)
+	{
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+	/**
+	 * Для двухбайтовых символов UTF-8: код символа -> код свёрнутого символа той же длины
+	 */
+	static char[] utf8Table()
+	{
+		return UTF8_TABLE;
+	}
+
+	/**
+	 * Байт -> свёрнутый байт. Для UTF-8 - только ASCII, остальные байты не меняются
+	 */
+	static int[] byteTable(Charset charset)
+	{
+		boolean utf8 = StandardCharsets.UTF_8.equals(charset);
+		int[] result = new int[256];
+		for (int b = 0; b < 256; b++)
+		{
+			result[b] = b;
+			if (utf8 && b >= 0x80)
+				continue;
+			String s = new String(new byte[] { (byte)b }, charset);
+			if (s.length() != 1 || s.charAt(0) == '\uFFFD')
+				continue;
+			byte[] folded = String.valueOf(fold(s.charAt(0))).getBytes(charset);
+			if (folded.length == 1 && new String(folded, charset).charAt(0) == fold(s.charAt(0)))
+				result[b] = folded[0] & 0xff;
+		}
+		return result;
+	}
+
+	/**
+	 * Сворачивает двухбайтовые символы образца, закодированного в UTF-8, так же, как они сворачиваются при поиске
+	 */
+	static int[] foldUtf8(int[] symbols)
+	{
+		int[] result = symbols.clone();
+		for (int i = 0; i < result.length; i++)
+		{
+			int b = result[i];
+			if (isTwoByteLead(b) && i + 1 < result.length && isContinuation(result[i + 1]))
+			{
+				char c = UTF8_TABLE[(b & 0x1f) << 6 | result[i + 1] & 0x3f];
+				result[i] = 0xc0 | c >> 6;
+				result[i + 1] = 0x80 | c & 0x3f;
+				i++;
+			}
+		}
+		return result;
+	}
+
+	static boolean isTwoByteLead(int b)
+	{
+		return b >= 0xc2 && b < 0xe0;
+	}
+
+	static boolean isContinuation(int b)
+	{
+		return (b & 0xc0) == 0x80;
+	}
+}
@@ -0,0 +1,172 @@
+package org.logscanner.util.search;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.logscanner.util.LogLayout;
+import org.logscanner.util.LogLayout.Field;
+
+/**
+ * Отбор строк по полям {@link LogLayout}: уровню, логгеру, потоку.
+ * Сначала проверяется уровень - сравнение нескольких байт, обычно по постоянному смещению от начала строки,
+ * потом подстроки в границах логгера и потока. Строки, не подходящие под шаблон, не отбираются.
+ */
+public class LayoutFilter implements LineMatcher
+{
+	/** Уровни от подробных к важным */
+	public static final List<String> LEVELS = Arrays.asList("TRACE", "DEBUG", "INFO", "WARN", "ERROR", "FATAL");
+
+	private final LogLayout layout;
+	private final List<String> levels;
+	/** null - любой уровень */
+	private final byte[][] levelBytes;
+	private final SubstringMatcher logger;
+	private final SubstringMatcher thread;
+
+	/**
+	 * @param level см. {@link #parseLevels(String)}, пустой - любой
+	 * @param logger часть имени логгера, пустая - любой
+	 * @param thread часть имени потока, пустая - любой
+	 * @throws IllegalArgumentException если уровень неизвестен или в шаблоне нет нужного поля
+	 */
+	public LayoutFilter(LogLayout layout, String level, String logger, String thread, Charset charset)
+	{
+		this.layout = layout;
+		this.levels = StringUtils.isNotBlank(level) ? parseLevels(level) : null;
+		this.levelBytes = levels != null ? new byte[levels.size()][] : null;
+		if (levels != null)
+		{
+			checkField(Field.LEVEL);
+			for (int i = 0; i < levelBytes.length; i++)
+				levelBytes[i] = levels.get(i).getBytes(charset);
+		}
+		this.logger = createMatcher(Field.LOGGER, logger, charset);
+		this.thread = createMatcher(Field.THREAD, thread, charset);
+	}
+
+	private SubstringMatcher createMatcher(Field field, String value, Charset charset)
+	{
+		if (StringUtils.isBlank(value))
+			return null;
+		checkField(field);
+		return new SubstringMatcher(value.trim(), charset);
+	}
+
+	private void checkField(Field field)
+	{
+		if (!layout.hasField(field))
+			throw new IllegalArgumentException("Layout '" + layout + "' has no " + field.name().toLowerCase() + " field");
+	}
+
+	/**
+	 * Уровни через ',': {@code ERROR} - только этот, {@code WARN+} - этот и важнее
+	 * @throws IllegalArgumentException если уровень неизвестен
+	 */
+	public static List<String> parseLevels(String spec)
+	{
+		List<String> result = new ArrayList<>();
+		for (String s : StringUtils.split(spec, ", "))
+		{
+			boolean andAbove = s.endsWith("+");
+			String name = StringUtils.removeEnd(s, "+").toUpperCase();
+			int index = LEVELS.indexOf(name);
+			if (index < 0)
+				throw new IllegalArgumentException("Unknown level " + s);
+			for (String level : andAbove ? LEVELS.subList(index, LEVELS.size()) : LEVELS.subList(index, index + 1))
+				if (!result.contains(level))
+					result.add(level);
+		}
+		return result;
+	}
+
+	@Override
+	public boolean matches(byte[] buf, int from, int to)
+	{
+		if (levelBytes != null)
+		{
+			long location = layout.locate(Field.LEVEL, buf, from, to);
+			if (location == LogLayout.NOT_FOUND || !isLevel(buf, LogLayout.start(location), LogLayout.end(location)))
+				return false;
+		}
+		return matches(Field.LOGGER, logger, buf, from, to) && matches(Field.THREAD, thread, buf, from, to);
+	}
+
+	private boolean isLevel(byte[] buf, int from, int to)
+	{
+		for (byte[] level : levelBytes)
+		{
+			if (to - from != level.length)
+				continue;
+			int i = 0;
+			while (i < level.length && buf[from + i] == level[i])
+				i++;
+			if (i == level.length)
+				return true;
+		}
+		return false;
+	}
+
+	private boolean matches(Field field, SubstringMatcher matcher, byte[] buf, int from, int to)
+	{
+		if (matcher == null)
+			return true;
+		long location = layout.locate(field, buf, from, to);
+		return location != LogLayout.NOT_FOUND && matcher.matches(buf, LogLayout.start(location), LogLayout.end(location));
+	}
+
+	@Override
+	public boolean matches(CharSequence line)
+	{
+		if (levels != null)
+		{
+			long location = layout.locate(Field.LEVEL, line);
+			if (location == LogLayout.NOT_FOUND || !isLevel(line, LogLayout.start(location), LogLayout.end(location)))
+				return false;
+		}
+		return matches(Field.LOGGER, logger, line) && matches(Field.THREAD, thread, line);
+	}
+
+	private boolean isLevel(CharSequence line, int from, int to)
+	{
+		for (String level : levels)
+		{
+			if (to - from != level.length())
+				continue;
+			int i = 0;
+			while (i < level.length() && line.charAt(from + i) == level.charAt(i))
+				i++;
+			if (i == level.length())
+				return true;
+		}
+		return false;
+	}
+
+	private boolean matches(Field field, SubstringMatcher matcher, CharSequence line)
+	{
+		if (matcher == null)
+			return true;
+		long location = layout.locate(field, line);
+		return location != LogLayout.NOT_FOUND && matcher.matches(line.subSequence(LogLayout.start(location), LogLayout.end(location)));
+	}
+
+	public boolean isEmpty()
+	{
+		return levels == null && logger == null && thread == null;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		if (levels != null)
+			sb.append("level ").append(levels);
+		if (logger != null)
+			sb.append(sb.length() > 0 ? ", " : "").append("logger '").append(logger).append('\'');
+		if (thread != null)
+			sb.append(sb.length() > 0 ? ", " : "").append("thread '").append(thread).append('\'');
+		return sb.toString();
+	}
+}
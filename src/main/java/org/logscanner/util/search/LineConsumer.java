@@ -0,0 +1,15 @@
+package org.logscanner.util.search;
+
+/**
+ * Получает байты строк лога при просмотре, например, для построения индексов по словам.
+ * Вызывается через {@link org.logscanner.jobs.LogLineReader#accept(LineConsumer)}
+ */
+public interface LineConsumer
+{
+	/**
+	 * @param buf буфер
+	 * @param from начало строки (включительно)
+	 * @param to конец строки (не включая перевод строки)
+	 */
+	public void accept(byte[] buf, int from, int to);
+}
@@ -0,0 +1,35 @@
+package org.logscanner.util.search;
+
+import java.util.List;
+
+/**
+ * Условие отбора строк лога.
+ * <p>
+ * Байтовый вариант работает с кодировкой, под которую матчер был скомпилирован,
+ * и вызывается только для кодировок, прошедших {@link SearchUtils#isByteSearchable(java.nio.charset.Charset)}.
+ */
+public interface LineMatcher
+{
+	/**
+	 * @param buf буфер
+	 * @param from начало строки (включительно)
+	 * @param to конец строки (не включая перевод строки)
+	 */
+	public boolean matches(byte[] buf, int from, int to);
+
+	public boolean matches(CharSequence line);
+
+	/**
+	 * Какие из искомых строк есть в строке лога. Вызывается только для уже отобранных строк.
+	 * @return null если матчер не различает искомые строки
+	 */
+	public default List<String> getMatchedTerms(byte[] buf, int from, int to)
+	{
+		return null;
+	}
+
+	public default List<String> getMatchedTerms(CharSequence line)
+	{
+		return null;
+	}
+}
@@ -0,0 +1,428 @@
+package org.logscanner.util.search;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Логическое выражение над подстроками: {@code ERROR AND (timeout OR refused) AND NOT healthcheck}.
+ * <p>
+ * Операторы AND, OR, NOT пишутся заглавными, AND можно опускать. Подстроки с пробелами, скобками
+ * или совпадающие с операторами берутся в кавычки, кавычка внутри - {@code \"}.
+ * <p>
+ * Все подстроки ищутся одним проходом {@link AhoCorasickMatcher}, выражение вычисляется по битовой маске найденного.
+ * Перед этим самая длинная из обязательных подстрок ищется {@link SubstringMatcher}: большинство строк
+ * отбрасываются быстрым поиском с пропусками, не доходя до автомата.
+ */
+public class QueryMatcher implements LineMatcher
+{
+	private static final int MAX_LITERALS = Long.SIZE;
+
+	private final String query;
+	private final List<String> literals;
+	private final Node root;
+	private final AhoCorasickMatcher scanner;
+	/** обязательная подстрока, без которой выражение ложно */
+	private final SubstringMatcher prefilter;
+	/** подстроки не под NOT - их показываем как найденные */
+	private final long positiveMask;
+
+	private QueryMatcher(String query, List<String> literals, Node root, Charset charset, boolean ignoreCase)
+	{
+		this.query = query;
+		this.literals = Collections.unmodifiableList(literals);
+		this.root = root;
+		this.scanner = new AhoCorasickMatcher(literals, charset, ignoreCase);
+		String required = null;
+		for (int i : bits(root.required()))
+			if (required == null || literals.get(i).length() > required.length())
+				required = literals.get(i);
+		// без учёта регистра быстрый поиск с пропусками неприменим, автомат и так смотрит каждый байт один раз
+		this.prefilter = required != null && !ignoreCase ? new SubstringMatcher(required, charset) : null;
+		this.positiveMask = root.positive();
+	}
+
+	/**
+	 * @throws QuerySyntaxException если выражение некорректно
+	 */
+	public static QueryMatcher compile(String query, Charset charset)
+	{
+		return compile(query, charset, false);
+	}
+
+	/**
+	 * @param ignoreCase сравнивать подстроки без учёта регистра
+	 * @throws QuerySyntaxException если выражение некорректно
+	 */
+	public static QueryMatcher compile(String query, Charset charset, boolean ignoreCase)
+	{
+		Parser parser = new Parser(query);
+		Node root = parser.parse();
+		return new QueryMatcher(query, parser.literals, root, charset, ignoreCase);
+	}
+
+	public List<String> getLiterals()
+	{
+		return literals;
+	}
+
+	@Override
+	public boolean matches(byte[] buf, int from, int to)
+	{
+		if (prefilter != null && !prefilter.matches(buf, from, to))
+			return false;
+		return root.eval(scanner.findAll(buf, from, to));
+	}
+
+	@Override
+	public boolean matches(CharSequence line)
+	{
+		if (prefilter != null && !prefilter.matches(line))
+			return false;
+		return root.eval(scanner.findAll(line));
+	}
+
+	@Override
+	public List<String> getMatchedTerms(byte[] buf, int from, int to)
+	{
+		return toTerms(scanner.findAll(buf, from, to) & positiveMask);
+	}
+
+	@Override
+	public List<String> getMatchedTerms(CharSequence line)
+	{
+		return toTerms(scanner.findAll(line) & positiveMask);
+	}
+
+	private List<String> toTerms(long mask)
+	{
+		List<String> result = new ArrayList<>();
+		for (int i : bits(mask))
+			result.add(literals.get(i));
+		return result;
+	}
+
+	private static List<Integer> bits(long mask)
+	{
+		List<Integer> result = new ArrayList<>();
+		for (int i = 0; i < MAX_LITERALS; i++)
+			if ((mask & (1L << i)) != 0)
+				result.add(i);
+		return result;
+	}
+
+	@Override
+	public String toString()
+	{
+		return query;
+	}
+
+	private static abstract class Node
+	{
+		abstract boolean eval(long found);
+
+		/** подстроки, которые обязательно есть в строке, если выражение истинно */
+		abstract long required();
+
+		/** подстроки не под отрицанием */
+		abstract long positive();
+
+		/** число узлов - для порядка вычисления */
+		abstract int cost();
+	}
+
+	private static class Literal extends Node
+	{
+		private final long bit;
+
+		Literal(int index)
+		{
+			this.bit = 1L << index;
+		}
+
+		@Override
+		boolean eval(long found)
+		{
+			return (found & bit) != 0;
+		}
+
+		@Override
+		long required()
+		{
+			return bit;
+		}
+
+		@Override
+		long positive()
+		{
+			return bit;
+		}
+
+		@Override
+		int cost()
+		{
+			return 1;
+		}
+	}
+
+	private static class Not extends Node
+	{
+		private final Node operand;
+
+		Not(Node operand)
+		{
+			this.operand = operand;
+		}
+
+		@Override
+		boolean eval(long found)
+		{
+			return !operand.eval(found);
+		}
+
+		@Override
+		long required()
+		{
+			return 0;
+		}
+
+		@Override
+		long positive()
+		{
+			return 0;
+		}
+
+		@Override
+		int cost()
+		{
+			return operand.cost() + 1;
+		}
+	}
+
+	/**
+	 * AND и OR. Дешёвые операнды вычисляются первыми
+	 */
+	private static class Junction extends Node
+	{
+		private final boolean and;
+		private final Node[] operands;
+
+		Junction(boolean and, List<Node> operands)
+		{
+			this.and = and;
+			this.operands = operands.toArray(new Node[operands.size()]);
+		}
+
+		@Override
+		boolean eval(long found)
+		{
+			for (Node operand : operands)
+				if (operand.eval(found) != and)
+					return !and;
+			return and;
+		}
+
+		@Override
+		long required()
+		{
+			long result = and ? 0 : -1L;
+			for (Node operand : operands)
+				result = and ? result | operand.required() : result & operand.required();
+			return result;
+		}
+
+		@Override
+		long positive()
+		{
+			long result = 0;
+			for (Node operand : operands)
+				result |= operand.positive();
+			return result;
+		}
+
+		@Override
+		int cost()
+		{
+			int result = 1;
+			for (Node operand : operands)
+				result += operand.cost();
+			return result;
+		}
+	}
+
+	/**
+	 * Рекурсивный спуск:
+	 * <pre>
+	 * or    := and (OR and)*
+	 * and   := unary (AND? unary)*
+	 * unary := NOT unary | '(' or ')' | term
+	 * </pre>
+	 */
+	private static class Parser
+	{
+		private final String query;
+		private final List<String> literals = new ArrayList<>();
+		private int pos;
+
+		Parser(String query)
+		{
+			this.query = query;
+		}
+
+		Node parse()
+		{
+			Node result = parseOr();
+			skipSpaces();
+			if (pos < query.length())
+				throw new QuerySyntaxException(query.charAt(pos) == ')' ? "Unmatched closing ')'" : "Unexpected text", pos);
+			return result;
+		}
+
+		private Node parseOr()
+		{
+			List<Node> operands = new ArrayList<>();
+			operands.add(parseAnd());
+			while (keyword("OR"))
+				operands.add(parseAnd());
+			return junction(false, operands);
+		}
+
+		private Node parseAnd()
+		{
+			List<Node> operands = new ArrayList<>();
+			operands.add(parseUnary());
+			while (true)
+			{
+				if (keyword("AND"))
+					operands.add(parseUnary());
+				else if (startsOperand())
+					operands.add(parseUnary());
+				else
+					break;
+			}
+			return junction(true, operands);
+		}
+
+		private Node parseUnary()
+		{
+			if (keyword("NOT"))
+				return new Not(parseUnary());
+			skipSpaces();
+			if (pos >= query.length())
+				throw new QuerySyntaxException("Unexpected end of query", pos);
+			char c = query.charAt(pos);
+			if (c == '(')
+			{
+				pos++;
+				Node result = parseOr();
+				skipSpaces();
+				if (pos >= query.length() || query.charAt(pos) != ')')
+					throw new QuerySyntaxException("Missing closing ')'", pos);
+				pos++;
+				return result;
+			}
+			if (c == ')')
+				throw new QuerySyntaxException("Unexpected ')'", pos);
+			if (c == '"')
+				return literal(quoted());
+			String term = word();
+			if (isKeyword(term))
+				throw new QuerySyntaxException("Operator " + term + " without operand", pos - term.length());
+			return literal(term);
+		}
+
+		private Node literal(String term)
+		{
+			int index = literals.indexOf(term);
+			if (index < 0)
+			{
+				if (literals.size() == MAX_LITERALS)
+					throw new QuerySyntaxException("Too many terms, maximum is " + MAX_LITERALS, pos);
+				index = literals.size();
+				literals.add(term);
+			}
+			return new Literal(index);
+		}
+
+		private static Node junction(boolean and, List<Node> operands)
+		{
+			if (operands.size() == 1)
+				return operands.get(0);
+			operands.sort(Comparator.comparingInt(Node::cost));
+			return new Junction(and, operands);
+		}
+
+		private String quoted()
+		{
+			int start = pos++;
+			StringBuilder sb = new StringBuilder();
+			while (pos < query.length())
+			{
+				char c = query.charAt(pos++);
+				if (c == '"')
+				{
+					if (sb.length() == 0)
+						throw new QuerySyntaxException("Empty quoted term", start);
+					return sb.toString();
+				}
+				if (c == '\\' && pos < query.length())
+					c = query.charAt(pos++);
+				sb.append(c);
+			}
+			throw new QuerySyntaxException("Missing closing quote", start);
+		}
+
+		private String word()
+		{
+			int start = pos;
+			while (pos < query.length() && !isDelimiter(query.charAt(pos)))
+				pos++;
+			return query.substring(start, pos);
+		}
+
+		private boolean startsOperand()
+		{
+			skipSpaces();
+			if (pos >= query.length())
+				return false;
+			char c = query.charAt(pos);
+			return c != ')' && !lookingAt("OR");
+		}
+
+		/**
+		 * Пропускает оператор, если он следующий
+		 */
+		private boolean keyword(String keyword)
+		{
+			skipSpaces();
+			if (!lookingAt(keyword))
+				return false;
+			pos += keyword.length();
+			return true;
+		}
+
+		private boolean lookingAt(String keyword)
+		{
+			int end = pos + keyword.length();
+			return query.startsWith(keyword, pos) && (end == query.length() || isDelimiter(query.charAt(end)));
+		}
+
+		private void skipSpaces()
+		{
+			while (pos < query.length() && Character.isWhitespace(query.charAt(pos)))
+				pos++;
+		}
+
+		private static boolean isDelimiter(char c)
+		{
+			return Character.isWhitespace(c) || c == '(' || c == ')' || c == '"';
+		}
+
+		private static boolean isKeyword(String word)
+		{
+			return "AND".equals(word) || "OR".equals(word) || "NOT".equals(word);
+		}
+	}
+}
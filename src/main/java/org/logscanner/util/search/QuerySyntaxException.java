@@ -0,0 +1,32 @@
+package org.logscanner.util.search;
+
+/**
+ * Ошибка в логическом выражении для {@link QueryMatcher}
+ */
+public class QuerySyntaxException extends IllegalArgumentException
+{
+	private static final long serialVersionUID = 1L;
+
+	private final String description;
+	private final int index;
+
+	public QuerySyntaxException(String description, int index)
+	{
+		super(description + " near index " + index);
+		this.description = description;
+		this.index = index;
+	}
+
+	public String getDescription()
+	{
+		return description;
+	}
+
+	/**
+	 * @return позиция в выражении, где обнаружена ошибка
+	 */
+	public int getIndex()
+	{
+		return index;
+	}
+}
@@ -0,0 +1,375 @@
+package org.logscanner.util.search;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Поиск по регулярному выражению с предварительным отбором по литералу.
+ * <p>
+ * Из выражения достаётся подстрока, без которой совпадение невозможно (для альтернативы верхнего уровня -
+ * по одной на каждую ветку). Строки сначала проверяются быстрым поиском этой подстроки,
+ * регулярное выражение выполняется только для прошедших строк.
+ * Pattern потокобезопасен, Matcher переиспользуется в пределах потока.
+ */
+public class RegexMatcher implements LineMatcher
+{
+	private final Pattern pattern;
+	private final Charset charset;
+	private final LineMatcher prefilter;
+	private final ThreadLocal<Matcher> matchers;
+
+	public RegexMatcher(Pattern pattern, Charset charset)
+	{
+		this.pattern = pattern;
+		this.charset = charset;
+		this.matchers = ThreadLocal.withInitial(() -> pattern.matcher(""));
+		List<String> literals = pattern.flags() == 0 ? extractLiterals(pattern.pattern()) : null;
+		if (literals == null)
+			prefilter = null;
+		else if (literals.size() == 1)
+			prefilter = new SubstringMatcher(literals.get(0), charset);
+		else
+			prefilter = new AhoCorasickMatcher(literals, charset);
+	}
+
+	public LineMatcher getPrefilter()
+	{
+		return prefilter;
+	}
+
+	@Override
+	public boolean matches(byte[] buf, int from, int to)
+	{
+		if (prefilter != null && !prefilter.matches(buf, from, to))
+			return false;
+		return find(new String(buf, from, to - from, charset));
+	}
+
+	@Override
+	public boolean matches(CharSequence line)
+	{
+		if (prefilter != null && !prefilter.matches(line))
+			return false;
+		return find(line);
+	}
+
+	private boolean find(CharSequence line)
+	{
+		Matcher matcher = matchers.get();
+		try
+		{
+			return matcher.reset(line).find();
+		}
+		finally
+		{
+			matcher.reset("");
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return pattern.pattern() + (prefilter != null ? " (prefilter " + prefilter + ")" : "");
+	}
+
+	/**
+	 * Подстроки, одна из которых обязательно входит в любое совпадение:
+	 * самый длинный литерал каждой ветки альтернативы верхнего уровня.
+	 * Разбор консервативный: группы, классы символов и необязательные элементы просто разрывают литерал.
+	 * @return null если такой набор выделить не удалось
+	 */
+	public static List<String> extractLiterals(String regex)
+	{
+		List<String> result = new ArrayList<>();
+		StringBuilder best = new StringBuilder();
+		StringBuilder current = new StringBuilder();
+		int i = 0;
+		int n = regex.length();
+		while (i <= n)
+		{
+			if (i == n || regex.charAt(i) == '|')
+			{
+				keepLongest(best, current);
+				if (best.length() == 0)
+					return null;
+				result.add(best.toString());
+				best.setLength(0);
+				current.setLength(0);
+				i++;
+				continue;
+			}
+
+			char c = regex.charAt(i);
+			int atomEnd;
+			int literal = -1; // символ, если атом - литерал
+			if (c == '\\')
+			{
+				if (i + 1 >= n)
+					return null;
+				char e = regex.charAt(i + 1);
+				if (e == 'Q')
+				{
+					int end = regex.indexOf("\\E", i + 2);
+					String quoted = end < 0 ? regex.substring(i + 2) : regex.substring(i + 2, end);
+					atomEnd = end < 0 ? n : end + 2;
+					if (isOptionalQuantifier(regex, atomEnd) || quoted.isEmpty())
+					{
+						keepLongest(best, current);
+						i = skipQuantifier(regex, atomEnd);
+						continue;
+					}
+					// квантификатор относится только к последнему символу
+					current.append(quoted, 0, quoted.length() - 1);
+					literal = quoted.charAt(quoted.length() - 1);
+				}
+				else
+				{
+					atomEnd = escapeEnd(regex, i);
+					if (atomEnd < 0)
+						return null;
+					if (e == 't')
+						literal = '\t';
+					else if (!Character.isLetterOrDigit(e))
+						literal = e;
+				}
+			}
+			else if (c == '[')
+			{
+				atomEnd = skipClass(regex, i);
+				if (atomEnd < 0)
+					return null;
+			}
+			else if (c == '(')
+			{
+				if (regex.startsWith("(?", i) && !regex.startsWith("(?:", i) && !regex.startsWith("(?<", i)
+						&& !regex.startsWith("(?=", i) && !regex.startsWith("(?!", i) && !regex.startsWith("(?>", i))
+					return null; // флаги (?i), (?x) ... меняют смысл литералов
+				atomEnd = skipGroup(regex, i);
+				if (atomEnd < 0)
+					return null;
+			}
+			else if (c == '.' || c == '^' || c == '$')
+			{
+				atomEnd = i + 1;
+			}
+			else if (c == ')' || c == '*' || c == '+' || c == '?' || c == '{')
+			{
+				return null;
+			}
+			else
+			{
+				atomEnd = i + 1;
+				literal = c;
+			}
+
+			if (literal < 0)
+			{
+				keepLongest(best, current);
+				i = skipQuantifier(regex, atomEnd);
+			}
+			else if (isOptionalQuantifier(regex, atomEnd))
+			{
+				keepLongest(best, current);
+				i = skipQuantifier(regex, atomEnd);
+			}
+			else if (hasQuantifier(regex, atomEnd))
+			{
+				// x+ или x{2,}: символ обязателен, но дальше литерал не продолжается
+				current.append((char)literal);
+				keepLongest(best, current);
+				i = skipQuantifier(regex, atomEnd);
+			}
+			else
+			{
+				current.append((char)literal);
+				i = atomEnd;
+			}
+		}
+		return result;
+	}
+
+	private static void keepLongest(StringBuilder best, StringBuilder current)
+	{
+		if (current.length() > best.length())
+		{
+			best.setLength(0);
+			best.append(current);
+		}
+		current.setLength(0);
+	}
+
+	/**
+	 * Конец экранирования, начинающегося в start. {@code \x41}, {@code \0101}, {@code \cJ}, {@code \k<name>}, {@code \p{L}} -
+	 * один атом, а не символ и продолжающий литерал текст
+	 * @return позиция после экранирования или -1, если его длину не определить (ссылка на группу, незнакомое)
+	 */
+	private static int escapeEnd(String regex, int start)
+	{
+		char e = regex.charAt(start + 1);
+		int i = start + 2;
+		switch (e)
+		{
+			case 'x':
+				if (regex.startsWith("{", i))
+					return closingEnd(regex, i, '}');
+				return i + 2 <= regex.length() ? i + 2 : -1;
+			case 'u':
+				return i + 4 <= regex.length() ? i + 4 : -1;
+			case '0':
+				// 0n, 0nn, 0mnn (m <= 3)
+				int maxDigits = i < regex.length() && regex.charAt(i) <= '3' ? 3 : 2;
+				int end = i;
+				while (end < regex.length() && end - i < maxDigits && regex.charAt(end) >= '0' && regex.charAt(end) <= '7')
+					end++;
+				return end > i ? end : -1;
+			case 'c':
+				return i < regex.length() ? i + 1 : -1;
+			case 'k':
+				return regex.startsWith("<", i) ? closingEnd(regex, i, '>') : -1;
+			case 'p':
+			case 'P':
+			case 'N':
+				if (regex.startsWith("{", i))
+					return closingEnd(regex, i, '}');
+				return e != 'N' && i < regex.length() ? i + 1 : -1;
+			default:
+				if (!Character.isLetterOrDigit(e) || "tnrfaedDsSwWhHvVbBAGZzR".indexOf(e) >= 0)
+					return i;
+				return -1;
+		}
+	}
+
+	/**
+	 * @return позиция после первого символа close, начиная с from, или -1
+	 */
+	private static int closingEnd(String regex, int from, char close)
+	{
+		int end = regex.indexOf(close, from);
+		return end < 0 ? -1 : end + 1;
+	}
+
+	private static boolean hasQuantifier(String regex, int pos)
+	{
+		if (pos >= regex.length())
+			return false;
+		char c = regex.charAt(pos);
+		return c == '*' || c == '+' || c == '?' || c == '{';
+	}
+
+	private static boolean isOptionalQuantifier(String regex, int pos)
+	{
+		if (pos >= regex.length())
+			return false;
+		char c = regex.charAt(pos);
+		if (c == '*' || c == '?')
+			return true;
+		if (c == '{')
+		{
+			int i = pos + 1;
+			while (i < regex.length() && regex.charAt(i) == '0')
+				i++;
+			return i > pos + 1 && i < regex.length() && (regex.charAt(i) == ',' || regex.charAt(i) == '}');
+		}
+		return false;
+	}
+
+	private static int skipQuantifier(String regex, int pos)
+	{
+		if (!hasQuantifier(regex, pos))
+			return pos;
+		int i = pos;
+		if (regex.charAt(i) == '{')
+			i = regex.indexOf('}', i) + 1;
+		else
+			i++;
+		if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+'))
+			i++; // ленивый или сверхжадный
+		return i;
+	}
+
+	/**
+	 * @return позиция после закрывающей ']' или -1
+	 */
+	private static int skipClass(String regex, int start)
+	{
+		int depth = 0;
+		int i = start;
+		while (i < regex.length())
+		{
+			char c = regex.charAt(i);
+			if (regex.startsWith("\\Q", i))
+			{
+				int end = regex.indexOf("\\E", i + 2);
+				i = end < 0 ? regex.length() : end + 2;
+			}
+			else if (c == '\\')
+				i += 2;
+			else if (c == '[')
+			{
+				depth++;
+				i++;
+				if (i < regex.length() && regex.charAt(i) == '^')
+					i++;
+				if (i < regex.length() && regex.charAt(i) == ']')
+					i++; // ']' сразу после '[' - обычный символ
+			}
+			else if (c == ']')
+			{
+				depth--;
+				i++;
+				if (depth == 0)
+					return i;
+			}
+			else
+				i++;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return позиция после закрывающей ')' или -1
+	 */
+	private static int skipGroup(String regex, int start)
+	{
+		int depth = 0;
+		int i = start;
+		while (i < regex.length())
+		{
+			char c = regex.charAt(i);
+			if (c == '\\')
+			{
+				if (regex.startsWith("\\Q", i))
+				{
+					int end = regex.indexOf("\\E", i + 2);
+					i = end < 0 ? regex.length() : end + 2;
+				}
+				else
+					i += 2;
+			}
+			else if (c == '[')
+			{
+				i = skipClass(regex, i);
+				if (i < 0)
+					return -1;
+			}
+			else if (c == '(')
+			{
+				depth++;
+				i++;
+			}
+			else if (c == ')')
+			{
+				depth--;
+				i++;
+				if (depth == 0)
+					return i;
+			}
+			else
+				i++;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,116 @@
+package org.logscanner.util.search;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.logscanner.data.SearchMode;
+
+/**
+ * Вспомогательные методы для поиска по содержимому логов
+ */
+public class SearchUtils
+{
+	private static final String ASCII_PROBE;
+	static
+	{
+		StringBuilder sb = new StringBuilder("\t\n\r");
+		for (char c = 0x20; c < 0x7f; c++)
+			sb.append(c);
+		ASCII_PROBE = sb.toString();
+	}
+
+	/**
+	 * Отбирает все строки - когда строки отбираются только по полям ({@link LayoutFilter})
+	 */
+	public static final LineMatcher ALL = new LineMatcher()
+	{
+		@Override
+		public boolean matches(byte[] buf, int from, int to)
+		{
+			return true;
+		}
+
+		@Override
+		public boolean matches(CharSequence line)
+		{
+			return true;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "*";
+		}
+	};
+
+	/**
+	 * Можно ли искать подстроку прямо в байтах, не декодируя строки.
+	 * Верно для UTF-8 (самосинхронизирующаяся кодировка) и однобайтовых кодировок,
+	 * совпадающих с ASCII в первой половине таблицы (windows-1251, KOI8-R, ISO-8859-*).
+	 * Для UTF-16, Shift_JIS и т.п. нужно декодировать.
+	 */
+	public static boolean isByteSearchable(Charset charset)
+	{
+		if (StandardCharsets.UTF_8.equals(charset) || StandardCharsets.US_ASCII.equals(charset))
+			return true;
+		if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1.0f)
+			return false;
+		return Arrays.equals(ASCII_PROBE.getBytes(charset), ASCII_PROBE.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * @return null если искать нечего
+	 * @throws java.util.regex.PatternSyntaxException для {@link SearchMode#REGEX} с некорректным выражением
+	 * @throws QuerySyntaxException для {@link SearchMode#QUERY} с некорректным выражением
+	 */
+	public static LineMatcher createMatcher(SearchMode mode, String searchString, Charset charset)
+	{
+		return createMatcher(mode, searchString, charset, false);
+	}
+
+	/**
+	 * @param ignoreCase искать без учёта регистра. Строки лога при этом не преобразуются,
+	 * подстроки ищутся {@link AhoCorasickMatcher} со свёрткой регистра
+	 */
+	public static LineMatcher createMatcher(SearchMode mode, String searchString, Charset charset, boolean ignoreCase)
+	{
+		if (StringUtils.isEmpty(searchString))
+			return null;
+		switch (mode)
+		{
+			case TERMS:
+				List<String> terms = splitTerms(searchString);
+				return terms.isEmpty() ? null : new AhoCorasickMatcher(terms, charset, ignoreCase);
+			case REGEX:
+				return new RegexMatcher(Pattern.compile(searchString, ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0), charset);
+			case QUERY:
+				return QueryMatcher.compile(searchString, charset, ignoreCase);
+			case TEXT:
+			default:
+				return ignoreCase 
+						? new AhoCorasickMatcher(Collections.singletonList(searchString), charset, true) 
+						: new SubstringMatcher(searchString, charset);
+		}
+	}
+
+	/**
+	 * Строки поиска через ';' или перевод строки. Пустые и повторяющиеся пропускаются.
+	 */
+	public static List<String> splitTerms(String searchString)
+	{
+		List<String> result = new ArrayList<>();
+		for (String s : StringUtils.split(searchString, ";\r\n"))
+		{
+			s = StringUtils.trim(s);
+			if (StringUtils.isNotEmpty(s) && !result.contains(s))
+				result.add(s);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,119 @@
+package org.logscanner.util.search;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Поиск подстроки по алгоритму Бойера-Мура-Хорспула.
+ * Образец кодируется один раз в кодировке логов, поиск идёт прямо по байтам буфера.
+ * Для декодированных строк - тот же алгоритм по символам, без копирования строки в {@link String}.
+ */
+public class SubstringMatcher implements LineMatcher
+{
+	private final String needle;
+	private final byte[] pattern;
+	private final int[] shift;
+	/** сдвиги для поиска по символам, по младшему байту символа */
+	private final int[] charShift;
+
+	public SubstringMatcher(String needle, Charset charset)
+	{
+		this.needle = needle;
+		this.pattern = needle.getBytes(charset);
+		this.shift = createShiftTable(pattern);
+		this.charShift = new int[256];
+		int last = needle.length() - 1;
+		Arrays.fill(charShift, needle.length());
+		for (int i = 0; i < last; i++)
+			charShift[needle.charAt(i) & 0xff] = last - i;
+	}
+
+	private static int[] createShiftTable(byte[] pattern)
+	{
+		int[] result = new int[256];
+		int last = pattern.length - 1;
+		Arrays.fill(result, pattern.length);
+		for (int i = 0; i < last; i++)
+			result[pattern[i] & 0xff] = last - i;
+		return result;
+	}
+
+	public String getNeedle()
+	{
+		return needle;
+	}
+
+	/**
+	 * @return позиция первого вхождения в диапазоне [from, to) или -1
+	 */
+	public int indexOf(byte[] buf, int from, int to)
+	{
+		final int m = pattern.length;
+		if (m == 0)
+			return from;
+		final int last = m - 1;
+		final byte lastByte = pattern[last];
+		final int limit = to - m;
+		int i = from;
+		while (i <= limit)
+		{
+			byte b = buf[i + last];
+			if (b == lastByte)
+			{
+				int j = last - 1;
+				while (j >= 0 && buf[i + j] == pattern[j])
+					j--;
+				if (j < 0)
+					return i;
+			}
+			i += shift[b & 0xff];
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean matches(byte[] buf, int from, int to)
+	{
+		return indexOf(buf, from, to) >= 0;
+	}
+
+	/**
+	 * @return позиция первого вхождения в строку или -1
+	 */
+	public int indexOf(CharSequence line)
+	{
+		final int m = needle.length();
+		if (m == 0)
+			return 0;
+		final int last = m - 1;
+		final char lastChar = needle.charAt(last);
+		final int limit = line.length() - m;
+		int i = 0;
+		while (i <= limit)
+		{
+			char c = line.charAt(i + last);
+			if (c == lastChar)
+			{
+				int j = last - 1;
+				while (j >= 0 && line.charAt(i + j) == needle.charAt(j))
+					j--;
+				if (j < 0)
+					return i;
+			}
+			i += charShift[c & 0xff];
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean matches(CharSequence line)
+	{
+		return indexOf(line) >= 0;
+	}
+
+	@Override
+	public String toString()
+	{
+		return needle;
+	}
+}
@@ -0,0 +1,139 @@
+package org.logscanner.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class BlockFiltersTest
+{
+	private static final long BLOCK = BlockFilters.BLOCK_SIZE;
+	private static final Charset UTF8 = StandardCharsets.UTF_8;
+
+	@Test
+	public void testTermTokens()
+	{
+		assertThat(BlockFilters.termTokens(" Connection refused:", UTF8)).hasSize(2);
+		assertThat(BlockFilters.termTokens("refused Connection refused.", UTF8)).hasSize(2);
+		assertThat(BlockFilters.termTokens("[Ошибка]", UTF8)).hasSize(1);
+		// слова в начале и в конце строки могут быть частями слов файла
+		assertThat(BlockFilters.termTokens("Connection refused", UTF8)).isNull();
+		assertThat(BlockFilters.termTokens("Ошибка", UTF8)).isNull();
+		assertThat(BlockFilters.termTokens(" -> ", UTF8)).isNull();
+	}
+
+	@Test
+	public void testPartialWords()
+	{
+		BlockFilters.Builder builder = new BlockFilters.Builder();
+		line(builder, 0, true, "2019-01-01 start");
+		line(builder, BLOCK, true, "2019-01-01 java.lang.NullPointerException: null");
+		builder.finish();
+		BlockFilters filters = builder.build("app.log", 2 * BLOCK, new Date(1000), 0);
+
+		for (String term : new String[] { "Exception", "PointerException", "lang.NullPointer" })
+		{
+			assertThat(BlockFilters.termTokens(term, UTF8)).isNull();
+			assertThat(filters.findRanges(terms(term), 0, 2 * BLOCK)).containsExactly(new long[] { 0, 2 * BLOCK });
+		}
+		assertThat(filters.findRanges(terms(".NullPointerException:"), 0, 2 * BLOCK)).containsExactly(new long[] { BLOCK, 2 * BLOCK });
+		assertThat(filters.findRanges(terms(".PointerException:"), 0, 2 * BLOCK)).isEmpty();
+	}
+
+	@Test
+	public void testFindRanges()
+	{
+		BlockFilters.Builder builder = new BlockFilters.Builder();
+		line(builder, 0, true, "2019-01-01 start");
+		line(builder, 100, true, "2019-01-01 java.lang.NullPointerException: null");
+		line(builder, BLOCK + 10, true, "2019-01-01 Connection refused: connect");
+		line(builder, BLOCK + 200, false, "\tat org.logscanner.Main.run");
+		line(builder, 2 * BLOCK + 5, false, "\tat org.logscanner.Other.run");
+		line(builder, 3 * BLOCK, true, "2019-01-02 done.");
+		builder.finish();
+		BlockFilters filters = builder.build("app.log", 4 * BLOCK, new Date(1000), 0);
+		assertThat(filters.getBlockCount()).isEqualTo(4);
+
+		assertThat(filters.findRanges(terms(".NullPointerException:"), 0, 4 * BLOCK)).containsExactly(new long[] { 0, BLOCK + 10 });
+		assertThat(filters.findRanges(terms(" Connection refused:"), 0, 4 * BLOCK)).containsExactly(new long[] { BLOCK + 10, 2 * BLOCK + 5 });
+		// продолжение записи читается с её первой строки
+		assertThat(filters.findRanges(terms("logscanner.Other.run"), 0, 4 * BLOCK)).containsExactly(new long[] { BLOCK + 10, 3 * BLOCK });
+		assertThat(filters.findRanges(terms(" done."), 3 * BLOCK, 4 * BLOCK)).containsExactly(new long[] { 3 * BLOCK, 4 * BLOCK });
+		assertThat(filters.findRanges(terms(" absent "), 0, 4 * BLOCK)).isEmpty();
+		// одна из строк
+		assertThat(filters.findRanges(terms(" absent ", " done."), 0, 4 * BLOCK)).containsExactly(new long[] { 3 * BLOCK, 4 * BLOCK });
+		// дописанное после построения читается всегда
+		assertThat(filters.findRanges(terms(" absent "), 0, 5 * BLOCK)).containsExactly(new long[] { 4 * BLOCK, 5 * BLOCK });
+	}
+
+	@Test
+	public void testStoppedAndJoined()
+	{
+		BlockFilters.Builder first = new BlockFilters.Builder();
+		line(first, 0, true, "1 alpha 1");
+		line(first, BLOCK + 1, true, "2 beta 2");
+		first.finish();
+		BlockFilters.Builder second = new BlockFilters.Builder();
+		line(second, 2 * BLOCK, false, "3 gamma 3");
+		line(second, 3 * BLOCK, true, "4 delta 4");
+		second.stop();
+		assertThat(first.addAll(second)).isTrue();
+
+		BlockFilters filters = first.build("app.log", 10 * BLOCK, new Date(1000), 0);
+		assertThat(filters.getBlockCount()).isEqualTo(3);
+		assertThat(filters.findRanges(terms(" gamma "), 0, 10 * BLOCK)).containsExactly(new long[] { BLOCK + 1, 10 * BLOCK });
+		assertThat(filters.findRanges(terms(" alpha "), 0, 10 * BLOCK)).containsExactly(new long[] { 0, BLOCK + 1 }, new long[] { 3 * BLOCK, 10 * BLOCK });
+
+		BlockFilters.Builder overlapping = new BlockFilters.Builder();
+		line(overlapping, 2 * BLOCK + 10, true, "5 epsilon 5");
+		overlapping.finish();
+		BlockFilters.Builder joined = new BlockFilters.Builder();
+		line(joined, 0, true, "1 alpha 1");
+		line(joined, 2 * BLOCK + 1, true, "2 beta 2");
+		joined.finish();
+		assertThat(joined.addAll(overlapping)).isFalse();
+		assertThat(joined.build("app.log", 10 * BLOCK, null, 0).findRanges(terms(" absent "), 0, 10 * BLOCK))
+				.containsExactly(new long[] { 2 * BLOCK + 1, 10 * BLOCK });
+	}
+
+	@Test
+	public void testWriteRead() throws IOException
+	{
+		BlockFilters.Builder builder = new BlockFilters.Builder();
+		for (long offset = 0; offset < 3 * BLOCK; offset += BLOCK / 4)
+			line(builder, offset, true, "line " + offset + ";");
+		builder.finish();
+		BlockFilters filters = builder.build("/logs/app.log", 3 * BLOCK, new Date(1000), 0);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		filters.write(new DataOutputStream(bytes));
+		BlockFilters read = BlockFilters.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertThat(read.getPath()).isEqualTo("/logs/app.log");
+		assertThat(read.isValidFor(3 * BLOCK, new Date(1000))).isTrue();
+		assertThat(read.isValidFor(3 * BLOCK, new Date(2000))).isFalse();
+		assertThat(read.findRanges(terms(" " + BLOCK / 4 * 5 + ";"), 0, 3 * BLOCK)).containsExactly(new long[] { BLOCK, 2 * BLOCK });
+	}
+
+	private static void line(BlockFilters.Builder builder, long offset, boolean record, String text)
+	{
+		byte[] bytes = text.getBytes(UTF8);
+		builder.startLine(offset, record);
+		builder.accept(bytes, 0, bytes.length);
+	}
+
+	private static List<long[]> terms(String... terms)
+	{
+		return Arrays.stream(terms).map(term -> BlockFilters.termTokens(term, UTF8)).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,49 @@
+package org.logscanner.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+public class TimeIndexTest
+{
+	private static final long STEP = TimeIndex.STEP;
+
+	@Test
+	public void testBuilder()
+	{
+		TimeIndex.Builder builder = new TimeIndex.Builder();
+		for (long offset = 0; offset < 10 * STEP; offset += STEP / 4)
+			builder.add(offset, offset / 1000);
+		assertThat(builder.getOffsets()).containsExactly(0, STEP, 2 * STEP, 3 * STEP, 4 * STEP, 5 * STEP, 6 * STEP, 7 * STEP, 8 * STEP, 9 * STEP);
+		assertThat(builder.getTimes()[3]).isEqualTo(3 * STEP / 1000);
+	}
+
+	@Test
+	public void testFindOffset()
+	{
+		TimeIndex index = new TimeIndex(100 * STEP, new Date(1000), 0, new long[] { 0, STEP, 2 * STEP, 3 * STEP }, new long[] { 10, 20, 20, 30 });
+		assertThat(index.findOffset(5)).isEqualTo(0);
+		assertThat(index.findOffset(10)).isEqualTo(0);
+		assertThat(index.findOffset(11)).isEqualTo(0);
+		// строки с датой 20 могут быть и до второй точки
+		assertThat(index.findOffset(20)).isEqualTo(0);
+		assertThat(index.findOffset(21)).isEqualTo(2 * STEP);
+		assertThat(index.findOffset(100)).isEqualTo(3 * STEP);
+
+		assertThat(index.isValidFor(100 * STEP, new Date(1000))).isTrue();
+		assertThat(index.isValidFor(100 * STEP + 1, new Date(1000))).isFalse();
+		assertThat(index.isValidFor(100 * STEP, new Date(2000))).isFalse();
+	}
+
+	@Test
+	public void testMerge()
+	{
+		TimeIndex index = new TimeIndex(100 * STEP, new Date(1000), 0, new long[] { 0, 5 * STEP }, new long[] { 0, 50 });
+		TimeIndex merged = index.merge(new long[] { 2 * STEP, 5 * STEP + 10, 8 * STEP }, new long[] { 20, 51, 80 });
+		assertThat(merged.getOffsets()).containsExactly(0, 2 * STEP, 5 * STEP, 8 * STEP);
+		assertThat(merged.getTimes()).containsExactly(0, 20, 50, 80);
+		assertThat(merged.isValidFor(100 * STEP, new Date(1000))).isTrue();
+	}
+}
@@ -0,0 +1,108 @@
+package org.logscanner.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TrigramIndexTest
+{
+	private static final long BLOCK = BlockFilters.BLOCK_SIZE;
+	private static final Charset UTF8 = StandardCharsets.UTF_8;
+
+	@Test
+	public void testTermTrigrams()
+	{
+		assertThat(TrigramIndex.termTrigrams("ab", UTF8, false)).isNull();
+		assertThat(TrigramIndex.termTrigrams("abcabc", UTF8, false)).hasSize(3);
+		assertThat(TrigramIndex.termTrigrams("ABC", UTF8, false)).isEqualTo(TrigramIndex.termTrigrams("abc", UTF8, false));
+		assertThat(TrigramIndex.termTrigrams("Ошибка", UTF8, false)).isNotNull();
+		// регистр букв не из ASCII в индексе не свёрнут
+		assertThat(TrigramIndex.termTrigrams("Ошибка", UTF8, true)).isNull();
+		assertThat(TrigramIndex.termTrigrams("id=Ошибка", UTF8, true)).hasSize(1);
+	}
+
+	@Test
+	public void testFindRanges() throws IOException
+	{
+		TrigramIndex.Builder builder = new TrigramIndex.Builder();
+		line(builder, 0, true, "2019-01-01 start");
+		line(builder, 100, true, "2019-01-01 java.lang.NullPointerException");
+		line(builder, BLOCK + 10, true, "2019-01-01 Connection refused");
+		line(builder, BLOCK + 200, false, "\tat org.logscanner.Main");
+		line(builder, 2 * BLOCK + 5, false, "\tat org.logscanner.Other");
+		line(builder, 3 * BLOCK, true, "2019-01-02 done");
+		builder.finish();
+		TrigramIndex index = read(builder.build("/logs/app.log", 4 * BLOCK, new Date(1000), 0));
+		assertThat(index.getPath()).isEqualTo("/logs/app.log");
+		assertThat(index.getBlockCount()).isEqualTo(4);
+		assertThat(index.isValidFor(4 * BLOCK, new Date(1000))).isTrue();
+		assertThat(index.isValidFor(4 * BLOCK, new Date(2000))).isFalse();
+
+		// подстрока внутри слова
+		assertThat(index.findRanges(terms("PointerExc"), 0, 4 * BLOCK)).containsExactly(new long[] { 0, BLOCK + 10 });
+		assertThat(index.findRanges(terms("CONNECTION"), 0, 4 * BLOCK)).containsExactly(new long[] { BLOCK + 10, 2 * BLOCK + 5 });
+		// продолжение записи читается с её первой строки
+		assertThat(index.findRanges(terms("Other"), 0, 4 * BLOCK)).containsExactly(new long[] { BLOCK + 10, 3 * BLOCK });
+		assertThat(index.findRanges(terms("logscanner"), 0, 4 * BLOCK)).containsExactly(new long[] { BLOCK + 10, 3 * BLOCK });
+		assertThat(index.findRanges(terms("2019-01-0"), 2 * BLOCK + 5, 4 * BLOCK)).containsExactly(new long[] { 3 * BLOCK, 4 * BLOCK });
+		// слова есть, но в разных блоках
+		assertThat(index.findRanges(terms("done refused"), 0, 4 * BLOCK)).isEmpty();
+		// дописанное после построения читается всегда
+		assertThat(index.findRanges(terms("absent"), 0, 5 * BLOCK)).containsExactly(new long[] { 4 * BLOCK, 5 * BLOCK });
+	}
+
+	@Test
+	public void testResume() throws IOException
+	{
+		TrigramIndex.Builder builder = new TrigramIndex.Builder();
+		line(builder, 0, true, "2019-01-01 start");
+		line(builder, BLOCK + 10, true, "2019-01-01 Connection refused");
+		line(builder, BLOCK + 200, false, "\tat org.logscanner.Main");
+		builder.finish();
+		TrigramIndex index = read(builder.build("/logs/app.log", BLOCK + 300, new Date(1000), 0));
+
+		// последний блок мог быть дописан: читается заново, запись продолжается
+		TrigramIndex.Builder resumed = new TrigramIndex.Builder(index);
+		assertThat(resumed.getResumeOffset()).isEqualTo(BLOCK + 10);
+		line(resumed, BLOCK + 10, true, "2019-01-01 Connection refused");
+		line(resumed, BLOCK + 200, false, "\tat org.logscanner.Main");
+		line(resumed, BLOCK + 400, false, "\tat org.logscanner.Appended");
+		line(resumed, 2 * BLOCK + 5, false, "\tat org.logscanner.Other");
+		resumed.finish();
+		TrigramIndex extended = read(resumed.build("/logs/app.log", 3 * BLOCK, new Date(2000), 0));
+		assertThat(extended.getBlockCount()).isEqualTo(3);
+		assertThat(extended.findRanges(terms("start"), 0, 3 * BLOCK)).containsExactly(new long[] { 0, BLOCK + 10 });
+		assertThat(extended.findRanges(terms("Appended"), 0, 3 * BLOCK)).containsExactly(new long[] { BLOCK + 10, 2 * BLOCK + 5 });
+		assertThat(extended.findRanges(terms("Other"), 0, 3 * BLOCK)).containsExactly(new long[] { BLOCK + 10, 3 * BLOCK });
+	}
+
+	private static TrigramIndex read(TrigramIndex index) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		index.write(new DataOutputStream(bytes));
+		return TrigramIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+
+	private static void line(TrigramIndex.Builder builder, long offset, boolean record, String text)
+	{
+		byte[] bytes = text.getBytes(UTF8);
+		builder.startLine(offset, record);
+		builder.accept(bytes, 0, bytes.length);
+	}
+
+	private static List<int[]> terms(String term)
+	{
+		return Collections.singletonList(TrigramIndex.termTrigrams(term, UTF8, false));
+	}
+}
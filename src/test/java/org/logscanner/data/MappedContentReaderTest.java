@@ -0,0 +1,58 @@
+package org.logscanner.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedContentReaderTest
+{
+	private static final Path MAPS = Paths.get("/proc/self/maps");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testUnmapOnClose() throws IOException
+	{
+		assumeTrue(Files.isReadable(MAPS));
+		assertThat(MappedContentReader.isUnmapSupported()).isTrue();
+		Path file = folder.newFile("app.log").toPath();
+		Files.write(file, "2019-01-01 line\n".getBytes(StandardCharsets.UTF_8));
+
+		MappedContentReader reader = new MappedContentReader(file, Files.size(file));
+		try (InputStream input = reader.getInputStream())
+		{
+			assertThat(IOUtils.toString(input, StandardCharsets.UTF_8)).isEqualTo("2019-01-01 line\n");
+		}
+		assertThat(isMapped(file)).isTrue();
+		reader.close();
+		assertThat(isMapped(file)).isFalse();
+		// повторное закрытие ничего не делает
+		reader.close();
+
+		// после закрытия файл отображается заново
+		try (InputStream input = reader.getInputStream(11))
+		{
+			assertThat(IOUtils.toString(input, StandardCharsets.UTF_8)).isEqualTo("line\n");
+		}
+		reader.close();
+		assertThat(isMapped(file)).isFalse();
+	}
+
+	private static boolean isMapped(Path file) throws IOException
+	{
+		String suffix = " " + file.toRealPath();
+		return Files.readAllLines(MAPS).stream().anyMatch(line -> line.endsWith(suffix));
+	}
+}
@@ -0,0 +1,87 @@
+package org.logscanner.data;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class SpoolContentReaderTest
+{
+	@Test
+	public void testSpoolToFile() throws IOException
+	{
+		// больше MEMORY_THRESHOLD: копия пишется во временный файл
+		byte[] content = content(3 * 1024 * 1024);
+		TrackedInputStream source = new TrackedInputStream(content);
+		SpoolContentReader reader = new SpoolContentReader();
+		InputStream inputStream = reader.tee(source);
+		// поиск прочитал часть файла, остаток дочитывается для записи результата
+		IOUtils.readFully(inputStream, new byte[1000]);
+		reader.drain(inputStream);
+		assertThat(source.closed).isTrue();
+
+		File file = spoolFile(reader);
+		assertThat(file).exists();
+		assertThat(file.length()).isEqualTo(content.length);
+		for (int i = 0; i < 2; i++)
+			try (InputStream copy = reader.getInputStream())
+			{
+				assertThat(IOUtils.toByteArray(copy)).isEqualTo(content);
+			}
+
+		reader.close();
+		assertThat(file).doesNotExist();
+	}
+
+	@Test
+	public void testSpoolInMemory() throws IOException
+	{
+		byte[] content = content(1000);
+		SpoolContentReader reader = new SpoolContentReader();
+		reader.drain(reader.tee(new ByteArrayInputStream(content)));
+		assertThat(spoolFile(reader)).isNull();
+		try (InputStream copy = reader.getInputStream())
+		{
+			assertThat(IOUtils.toByteArray(copy)).isEqualTo(content);
+		}
+		reader.close();
+	}
+
+	private static File spoolFile(SpoolContentReader reader)
+	{
+		DeferredFileOutputStream spool = (DeferredFileOutputStream)ReflectionTestUtils.getField(reader, "spool");
+		return spool.isInMemory() ? null : spool.getFile();
+	}
+
+	private static byte[] content(int size)
+	{
+		byte[] result = new byte[size];
+		new Random(size).nextBytes(result);
+		return result;
+	}
+
+	private static class TrackedInputStream extends ByteArrayInputStream
+	{
+		private boolean closed;
+
+		public TrackedInputStream(byte[] buf)
+		{
+			super(buf);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			closed = true;
+			super.close();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package org.logscanner.jobs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ByteLineReaderTest
+{
+	@Test
+	public void testLines() throws IOException
+	{
+		ByteLineReader reader = new ByteLineReader(new ByteArrayInputStream("a\r\nbb\n\nccc".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8, 2);
+		List<String> lines = new ArrayList<>();
+		while (reader.nextLine())
+			lines.add(reader.getLine());
+		assertThat(lines).containsExactly("a", "bb", "", "ccc");
+	}
+
+	@Test
+	public void testLineOffset() throws IOException
+	{
+		String content = "a\r\nbb\n\nccc";
+		ByteLineReader reader = new ByteLineReader(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8, 2);
+		List<Long> offsets = new ArrayList<>();
+		while (reader.nextLine())
+			offsets.add(reader.getLineOffset());
+		assertThat(offsets).containsExactly(0L, 3L, 6L, 7L);
+	}
+
+	@Test
+	public void testAccept() throws IOException
+	{
+		ByteLineReader reader = new ByteLineReader(new ByteArrayInputStream("a\r\nbb\n\nccc".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8, 2);
+		List<String> lines = new ArrayList<>();
+		while (reader.nextLine())
+			assertThat(reader.accept((buf, from, to) -> lines.add(new String(buf, from, to - from, StandardCharsets.UTF_8)))).isTrue();
+		assertThat(lines).containsExactly("a", "bb", "", "ccc");
+	}
+
+	@Test
+	public void testPreviousLines() throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++)
+			sb.append("line ").append(i).append('\n');
+		// маленький буфер: предыдущие строки переживают сдвиг и рост буфера
+		ByteLineReader reader = new ByteLineReader(new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8, 16);
+		reader.setHistorySize(3);
+		int i = 0;
+		while (reader.nextLine())
+		{
+			assertThat(reader.getLine()).isEqualTo("line " + i);
+			List<String> expected = new ArrayList<>();
+			for (int k = Math.max(0, i - 3); k < i; k++)
+				expected.add("line " + k);
+			assertThat(reader.getPreviousLines()).isEqualTo(expected);
+			i++;
+		}
+		assertThat(i).isEqualTo(1000);
+	}
+
+	@Test
+	public void testRecord() throws IOException
+	{
+		StringBuilder sb = new StringBuilder("2019-08-01 first\r\n");
+		sb.append("2019-08-01 Exception\r\n");
+		for (int i = 0; i < 100_000; i++)
+			sb.append("\tat Trace.method(Trace.java:").append(i).append(")\r\n");
+		sb.append("2019-08-01 last\r\n");
+		ByteLineReader reader = new ByteLineReader(new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8, 64);
+		reader.setHistorySize(2);
+		List<String> records = new ArrayList<>();
+		while (reader.nextLine())
+		{
+			if (reader.getLine().startsWith("2019"))
+			{
+				if (records.size() > 0 || reader.getLine().endsWith("Exception"))
+					records.add(reader.getRecord());
+				reader.startRecord();
+			}
+			else
+			{
+				reader.extendRecord();
+				if (reader.getLine().endsWith(":0)"))
+					assertThat(reader.getPreviousLines()).containsExactly("2019-08-01 first");
+			}
+		}
+		records.add(reader.getRecord());
+		assertThat(records).hasSize(3);
+		assertThat(records.get(0)).isEqualTo("2019-08-01 first");
+		// длинная запись обрезана по границе строки, память не растёт вместе со стеком
+		String trace = records.get(1);
+		assertThat(trace).startsWith("2019-08-01 Exception\n\tat Trace.method(Trace.java:0)\n");
+		assertThat(trace.length()).isBetween(200 * 1024, 256 * 1024);
+		assertThat(trace).doesNotContain("\r").endsWith(")");
+		assertThat(records.get(2)).isEqualTo("2019-08-01 last");
+	}
+}
@@ -0,0 +1,92 @@
+package org.logscanner.jobs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.logscanner.util.search.SubstringMatcher;
+
+public class CharLineReaderTest
+{
+	@Test
+	public void testLines() throws IOException
+	{
+		// суррогатные пары и кириллица на границах маленького буфера
+		String text = "a\r\nбб\n\n😀x😀\nccc";
+		for (Charset charset : new Charset[] { StandardCharsets.UTF_16, StandardCharsets.UTF_16LE, StandardCharsets.UTF_8 })
+		{
+			for (int bufferSize : new int[] { 1, 3, 16, 1024 })
+			{
+				CharLineReader reader = new CharLineReader(new ByteArrayInputStream(text.getBytes(charset)), charset, bufferSize);
+				List<String> lines = new ArrayList<>();
+				while (reader.nextLine())
+					lines.add(reader.getLine());
+				reader.release();
+				assertThat(lines).as(charset + " " + bufferSize).containsExactly("a", "бб", "", "😀x😀", "ccc");
+			}
+		}
+	}
+
+	@Test
+	public void testReuse() throws IOException
+	{
+		Charset charset = StandardCharsets.UTF_16;
+		SubstringMatcher matcher = new SubstringMatcher("Ошибка", charset);
+		for (int n = 0; n < 3; n++)
+		{
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 10_000; i++)
+				sb.append("2019-08-01 00:00:00,000 [INFO ] line ").append(i).append(i == n * 100 ? " Ошибка" : "").append('\n');
+			CharLineReader reader = new CharLineReader(new ByteArrayInputStream(sb.toString().getBytes(charset)), charset);
+			reader.setHistorySize(1);
+			int count = 0;
+			List<String> found = new ArrayList<>();
+			while (reader.nextLine())
+			{
+				if (reader.matches(matcher))
+				{
+					found.add(reader.getLine());
+					assertThat(reader.getPreviousLines()).hasSize(n == 0 ? 0 : 1);
+				}
+				count++;
+			}
+			reader.release();
+			assertThat(count).isEqualTo(10_000);
+			assertThat(found).containsExactly("2019-08-01 00:00:00,000 [INFO ] line " + n * 100 + " Ошибка");
+		}
+	}
+
+	@Test
+	public void testRecord() throws IOException
+	{
+		StringBuilder sb = new StringBuilder("2019-08-01 Exception\r\n");
+		for (int i = 0; i < 100_000; i++)
+			sb.append("\tat Trace.method(Trace.java:").append(i).append(")\r\n");
+		sb.append("2019-08-01 last\r\n");
+		CharLineReader reader = new CharLineReader(new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_16)), StandardCharsets.UTF_16, 64);
+		List<String> records = new ArrayList<>();
+		while (reader.nextLine())
+		{
+			if (reader.getLine().startsWith("2019"))
+			{
+				if (reader.getLine().endsWith("last"))
+					records.add(reader.getRecord());
+				reader.startRecord();
+			}
+			else
+				reader.extendRecord();
+		}
+		records.add(reader.getRecord());
+		assertThat(records).hasSize(2);
+		assertThat(records.get(0)).startsWith("2019-08-01 Exception\n\tat Trace.method(Trace.java:0)\n");
+		assertThat(records.get(0).length()).isBetween(200 * 1024, 256 * 1024);
+		assertThat(records.get(0)).doesNotContain("\r").endsWith(")");
+		assertThat(records.get(1)).isEqualTo("2019-08-01 last");
+	}
+}
@@ -0,0 +1,64 @@
+package org.logscanner.jobs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+
+import org.apache.commons.lang3.time.FastDateFormat;
+import org.junit.Test;
+import org.logscanner.util.TimestampFormat;
+
+public class DateOffsetLocatorTest
+{
+	private static final FastDateFormat FORMAT = FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss,SSS");
+	private static final TimestampFormat PARSER = TimestampFormat.compile(FORMAT.getPattern(), StandardCharsets.UTF_8);
+
+	@Test
+	public void testLocate() throws Exception
+	{
+		Path file = Files.createTempFile("locator", ".log");
+		try
+		{
+			long base = FORMAT.parse("2019-08-01 00:00:00,000").getTime();
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 100_000; i++)
+			{
+				sb.append(FORMAT.format(base + i * 1000L)).append(" [INFO ] line ").append(i).append('\n');
+				if (i % 7 == 0)
+					sb.append("\tat some.stack.Trace(Trace.java:").append(i).append(")\n");
+			}
+			byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+			Files.write(file, content);
+
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+			{
+				DateOffsetLocator locator = new DateOffsetLocator(channel, content.length, PARSER);
+				for (int target : new int[] { 0, 1, 5000, 77_777, 99_999, 150_000 })
+				{
+					Date dateFrom = new Date(base + target * 1000L);
+					long offset = locator.locate(dateFrom.getTime());
+					assertThat(offset == 0 || content[(int)offset - 1] == '\n').isTrue();
+					String rest = new String(content, (int)offset, content.length - (int)offset, StandardCharsets.UTF_8);
+					if (offset > 0)
+						assertThat(PARSER.parse(rest, 0, rest.length())).isLessThan(dateFrom.getTime());
+					if (target < 100_000)
+					{
+						String line = FORMAT.format(dateFrom) + " [INFO ] line " + target + "\n";
+						assertThat(rest).contains(line);
+						// пропущено почти всё до нужной строки
+						assertThat(sb.indexOf(line) - offset).isLessThan(128 * 1024);
+					}
+				}
+			}
+		}
+		finally
+		{
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,549 @@
+package org.logscanner.jobs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.commons.lang3.time.FastDateFormat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.logscanner.AppConstants;
+import org.logscanner.cache.BlockFilters;
+import org.logscanner.cache.CacheFileInfo;
+import org.logscanner.data.ContentReader;
+import org.logscanner.data.FileData;
+import org.logscanner.data.LocalFileInfo;
+import org.logscanner.data.LogEvent;
+import org.logscanner.data.LogPattern;
+import org.logscanner.data.ResultMode;
+import org.logscanner.data.SpoolContentReader;
+import org.logscanner.service.AppProperties;
+import org.logscanner.service.CacheManager;
+import org.logscanner.service.FileServiceSelector;
+import org.logscanner.service.JobResultModel;
+import org.logscanner.service.LocalFileService;
+import org.logscanner.service.LogPatternDao;
+import org.logscanner.service.SearchModel;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class FileContentProcessorTest
+{
+	private static final String LOCATION = "test";
+	private static final String PATTERN = "test";
+	private static final FastDateFormat FORMAT = FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss,SSS");
+	private static final long BASE_TIME = 1546300800000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private LogPattern logPattern;
+	private AppProperties appProperties;
+	private JobResultModel resultModel;
+	private CacheManager cacheManager;
+	private ForkJoinPool fileSplitPool;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		logPattern = new LogPattern(PATTERN, PATTERN);
+		logPattern.setEncoding("UTF-8");
+		logPattern.setDatePattern("yyyy-MM-dd HH:mm:ss,SSS");
+
+		appProperties = mock(AppProperties.class);
+		when(appProperties.getDataDir()).thenReturn(folder.newFolder("data").toString());
+		when(appProperties.getMaxResults()).thenReturn(10000);
+		when(appProperties.getMaxArchiveDepth()).thenReturn(3);
+
+		resultModel = new JobResultModel();
+		ReflectionTestUtils.setField(resultModel, "props", appProperties);
+		ReflectionTestUtils.invokeMethod(resultModel, "init");
+
+		cacheManager = newCacheManager();
+		fileSplitPool = new ForkJoinPool(4);
+	}
+
+	@After
+	public void tearDown()
+	{
+		fileSplitPool.shutdownNow();
+	}
+
+	@Test
+	public void testStartsNearDateFrom() throws Exception
+	{
+		// больше SEEK_MIN_SIZE: начало периода ищется делением пополам уже в первом файле шага
+		Path file = folder.getRoot().toPath().resolve("app.log");
+		int lineCount = writeLog(file, 120_000, i -> "line " + i);
+		long fromTime = BASE_TIME + lineCount * 3 / 4 * 100L;
+		FileContentProcessor processor = createProcessor(new JobParametersBuilder()
+				.addString(AppConstants.JOB_SEARCH_STRING, "line " + (lineCount * 3 / 4 + 10))
+				.addDate(AppConstants.JOB_PARAM_FROM, new Date(fromTime))
+				.addDate(AppConstants.JOB_PARAM_TO, new Date(BASE_TIME + lineCount * 100L)));
+
+		assertThat(process(processor, file)).isNotNull();
+		assertThat(texts(resultModel.getEvents())).containsExactly(line(lineCount * 3 / 4 + 10, "line " + (lineCount * 3 / 4 + 10)));
+
+		CacheFileInfo cacheFileInfo = cacheManager.getFileInfo(LOCATION, file.toString(), null);
+		// начало файла не прочитано: даты первой записи нет, индекс времени - с начала периода
+		assertThat(cacheFileInfo.getContentStart()).isNull();
+		long fromOffset = offsetOf(file, line(lineCount * 3 / 4, "line " + lineCount * 3 / 4));
+		assertThat(cacheFileInfo.getTimeIndex().getOffsets()[0]).isBetween(fromOffset - 64 * 1024, fromOffset);
+	}
+
+	@Test
+	public void testRecordsAcrossChunks() throws Exception
+	{
+		// больше SPLIT_MIN_SIZE: файл просматривается по частям, а части начинаются с первой строки блока в 1 МБ.
+		// Стек исключения пересекает начало каждого блока
+		Path file = folder.getRoot().toPath().resolve("app.log");
+		List<String> traces = new ArrayList<>();
+		try (LogWriter writer = new LogWriter(file))
+		{
+			for (long block = 1; block < 70; block++)
+			{
+				while (writer.position < block * BlockFilters.BLOCK_SIZE - 1200)
+					writer.record("request " + writer.index + " ok");
+				traces.add(line(writer.index, stackTrace(block)));
+				writer.record(stackTrace(block));
+			}
+			writer.record("done");
+		}
+		long toTime = BASE_TIME + 10_000_000L * 100L;
+
+		FileContentProcessor processor = createProcessor(new JobParametersBuilder()
+				.addString(AppConstants.JOB_SEARCH_STRING, "ERROR request failed")
+				.addDate(AppConstants.JOB_PARAM_FROM, new Date(BASE_TIME))
+				.addDate(AppConstants.JOB_PARAM_TO, new Date(toTime)));
+		assertThat(process(processor, file)).isNotNull();
+		assertThat(texts(resultModel.getEvents())).containsExactlyElementsOf(traces);
+
+		// совпадение в продолжении за началом части возвращает всю запись, а не её хвост
+		resultModel.clear();
+		processor = createProcessor(new JobParametersBuilder()
+				.addString(AppConstants.JOB_SEARCH_STRING, "Frame39.call")
+				.addDate(AppConstants.JOB_PARAM_FROM, new Date(BASE_TIME))
+				.addDate(AppConstants.JOB_PARAM_TO, new Date(toTime)));
+		assertThat(process(processor, file)).isNotNull();
+		assertThat(texts(resultModel.getEvents())).containsExactlyElementsOf(traces);
+	}
+
+	@Test
+	public void testZipEntriesSelected() throws Exception
+	{
+		// записи архива, изменённые до dateFrom или не подходящие под шаблон имён, не читаются
+		Path file = folder.getRoot().toPath().resolve("logs.zip");
+		try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(file)))
+		{
+			putEntry(zip, "app.log", BASE_TIME + 60_000, logBytes(10, i -> "app " + i));
+			putEntry(zip, "old.log", BASE_TIME - 24 * 3600_000L, logBytes(10, i -> "old " + i));
+			putEntry(zip, "notes.txt", BASE_TIME + 60_000, logBytes(10, i -> "notes " + i));
+		}
+		logPattern.setIncludes(new String[] { "**/*.log", "**/*.zip" });
+		JobParametersBuilder params = new JobParametersBuilder()
+				.addString(AppConstants.JOB_SEARCH_STRING, " 5")
+				.addDate(AppConstants.JOB_PARAM_FROM, new Date(BASE_TIME))
+				.addDate(AppConstants.JOB_PARAM_TO, new Date(BASE_TIME + 3600_000L));
+
+		assertThat(process(createProcessor(params), file)).isNotNull();
+		assertThat(texts(resultModel.getEvents())).containsExactly(line(5, "app 5"));
+		assertThat(resultModel.getEvents()).extracting(LogEvent::getPath).containsExactly(file + "!/app.log");
+
+		// без шаблонов имён отсеиваются только старые записи
+		resultModel.clear();
+		logPattern.setIncludes(null);
+		assertThat(process(createProcessor(params), file)).isNotNull();
+		assertThat(texts(resultModel.getEvents())).containsExactly(line(5, "app 5"), line(5, "notes 5"));
+	}
+
+	@Test
+	public void testNestedArchives() throws Exception
+	{
+		Path file = folder.getRoot().toPath().resolve("outer.zip");
+		ByteArrayOutputStream inner = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(inner))
+		{
+			putEntry(zip, "app.log", BASE_TIME + 60_000, logBytes(10, i -> "inner " + i));
+		}
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(compressed))
+		{
+			gzip.write(logBytes(10, i -> "gzip " + i));
+		}
+		try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(file)))
+		{
+			putEntry(zip, "app.log", BASE_TIME + 60_000, logBytes(10, i -> "outer " + i));
+			putEntry(zip, "inner.zip", BASE_TIME + 60_000, inner.toByteArray());
+			putEntry(zip, "app.log.gz", BASE_TIME + 60_000, compressed.toByteArray());
+		}
+		JobParametersBuilder params = new JobParametersBuilder()
+				.addString(AppConstants.JOB_SEARCH_STRING, " 5")
+				.addDate(AppConstants.JOB_PARAM_FROM, new Date(BASE_TIME))
+				.addDate(AppConstants.JOB_PARAM_TO, new Date(BASE_TIME + 3600_000L));
+
+		assertThat(process(createProcessor(params), file)).isNotNull();
+		assertThat(texts(resultModel.getEvents())).containsExactly(line(5, "outer 5"), line(5, "inner 5"), line(5, "gzip 5"));
+		assertThat(resultModel.getEvents()).extracting(LogEvent::getPath)
+				.containsExactly(file + "!/app.log", file + "!/inner.zip!/app.log", file + "!/app.log.gz");
+
+		// глубже maxArchiveDepth записи пропускаются
+		resultModel.clear();
+		when(appProperties.getMaxArchiveDepth()).thenReturn(1);
+		assertThat(process(createProcessor(params), file)).isNotNull();
+		assertThat(texts(resultModel.getEvents())).containsExactly(line(5, "outer 5"));
+	}
+
+	@Test
+	public void testContextLines() throws Exception
+	{
+		Path file = folder.getRoot().toPath().resolve("app.log");
+		writeLog(file, 10, i -> "line " + i);
+		FileContentProcessor processor = createProcessor(new JobParametersBuilder()
+				.addString(AppConstants.JOB_SEARCH_STRING, "line 5")
+				.addLong(AppConstants.JOB_PARAM_LINES_BEFORE, 2L)
+				.addLong(AppConstants.JOB_PARAM_LINES_AFTER, 1L)
+				.addDate(AppConstants.JOB_PARAM_FROM, new Date(BASE_TIME))
+				.addDate(AppConstants.JOB_PARAM_TO, new Date(BASE_TIME + 3600_000L)));
+
+		assertThat(process(processor, file)).isNotNull();
+		assertThat(resultModel.getEvents()).hasSize(1);
+		LogEvent event = resultModel.getEvents().iterator().next();
+		assertThat(event.getText()).isEqualTo(line(5, "line 5"));
+		assertThat(event.getLinesBefore()).containsExactly(line(3, "line 3"), line(4, "line 4"));
+		assertThat(event.getLinesAfter()).containsExactly(line(6, "line 6"));
+	}
+
+	@Test
+	public void testRecords() throws Exception
+	{
+		Path file = folder.getRoot().toPath().resolve("app.log");
+		try (InputStream fixture = getClass().getResourceAsStream("FileContentProcessorTest.log"))
+		{
+			Files.copy(fixture, file);
+		}
+		List<String> records = new ArrayList<>();
+		for (String record : new String(Files.readAllBytes(file), StandardCharsets.UTF_8).split("\n(?=2019)"))
+			records.add(record.trim());
+		JobParametersBuilder params = new JobParametersBuilder()
+				.addString(AppConstants.JOB_SEARCH_STRING, "ConnectException")
+				.addDate(AppConstants.JOB_PARAM_FROM, new Date(BASE_TIME))
+				.addDate(AppConstants.JOB_PARAM_TO, new Date(BASE_TIME + 3600_000L));
+
+		// совпадение в продолжении возвращает всю запись
+		assertThat(process(createProcessor(params), file)).isNotNull();
+		assertThat(texts(resultModel.getEvents())).containsExactly(records.get(2));
+
+		// запись с несколькими совпадениями - одно событие
+		resultModel.clear();
+		params.addString(AppConstants.JOB_SEARCH_STRING, "db.example.org:5432");
+		assertThat(process(createProcessor(params), file)).isNotNull();
+		assertThat(texts(resultModel.getEvents())).containsExactly(records.get(1), records.get(4));
+
+		resultModel.clear();
+		params.addString(AppConstants.JOB_SEARCH_STRING, "Connection refused");
+		assertThat(process(createProcessor(params), file)).isNotNull();
+		assertThat(texts(resultModel.getEvents())).containsExactly(records.get(2));
+	}
+
+	@Test
+	public void testCountAndFiles() throws Exception
+	{
+		Path file = folder.getRoot().toPath().resolve("app.log");
+		writeLog(file, 10, i -> i % 3 == 1 ? "hit " + i : "line " + i);
+		JobParametersBuilder params = new JobParametersBuilder()
+				.addString(AppConstants.JOB_SEARCH_STRING, "hit")
+				.addString(AppConstants.JOB_PARAM_RESULT_MODE, ResultMode.COUNT.name())
+				.addDate(AppConstants.JOB_PARAM_FROM, new Date(BASE_TIME))
+				.addDate(AppConstants.JOB_PARAM_TO, new Date(BASE_TIME + 3600_000L));
+
+		// одна строка на файл с числом совпадений
+		assertThat(process(createProcessor(params), file)).isNotNull();
+		assertThat(texts(resultModel.getEvents())).containsExactly("3");
+		assertThat(resultModel.getEvents()).extracting(LogEvent::getPath).containsExactly(file.toString());
+		assertThat(resultModel.getMatchCounts()).containsExactly(entry(LOCATION, 3L));
+		assertThat(cacheManager.getFileInfo(LOCATION, file.toString(), null).getContentEnd()).isEqualTo(new Date(BASE_TIME + 900));
+
+		// файл отбирается по первому совпадению, дальше не читается
+		resultModel.clear();
+		cacheManager = newCacheManager();
+		params.addString(AppConstants.JOB_PARAM_RESULT_MODE, ResultMode.FILES.name());
+		assertThat(process(createProcessor(params), file)).isNotNull();
+		assertThat(texts(resultModel.getEvents())).containsExactly("");
+		assertThat(resultModel.getEvents()).extracting(LogEvent::getPath).containsExactly(file.toString());
+		// отобранные файлы - не совпадения: в итог по месту поиска не входят
+		assertThat(resultModel.getMatchCounts()).isEmpty();
+		assertThat(cacheManager.getFileInfo(LOCATION, file.toString(), null).getContentEnd()).isNull();
+
+		resultModel.clear();
+		params.addString(AppConstants.JOB_SEARCH_STRING, "absent");
+		assertThat(process(createProcessor(params), file)).isNull();
+		assertThat(resultModel.getEvents()).isEmpty();
+	}
+
+	@Test
+	public void testNewestSkipsOlderFiles() throws Exception
+	{
+		Path newer = folder.getRoot().toPath().resolve("app.log");
+		Path older = folder.getRoot().toPath().resolve("app.1.log");
+		writeLog(older, 10, i -> "hit " + i);
+		try (LogWriter writer = new LogWriter(newer))
+		{
+			writer.index = 1000;
+			for (int i = 0; i < 10; i++)
+				writer.record("hit " + i);
+		}
+		JobParametersBuilder params = new JobParametersBuilder()
+				.addString(AppConstants.JOB_SEARCH_STRING, "hit")
+				.addDate(AppConstants.JOB_PARAM_FROM, new Date(BASE_TIME))
+				.addDate(AppConstants.JOB_PARAM_TO, new Date(BASE_TIME + 3600_000L));
+		// прежний поиск запомнил в кэше, чем кончается старый файл
+		assertThat(process(createProcessor(params), older)).isNotNull();
+		assertThat(cacheManager.getFileInfo(LOCATION, older.toString(), null).getContentEnd()).isEqualTo(new Date(BASE_TIME + 900));
+
+		// старый файл подменён записями новее найденных, но по кэшу он старше их и не читается
+		FileTime lastModified = Files.getLastModifiedTime(older);
+		try (LogWriter writer = new LogWriter(older))
+		{
+			writer.index = 2000;
+			for (int i = 0; i < 10; i++)
+				writer.record("hit " + i);
+		}
+		Files.setLastModifiedTime(older, lastModified);
+
+		resultModel.clear();
+		params.addString(AppConstants.JOB_PARAM_RESULT_MODE, ResultMode.NEWEST.name()).addLong(AppConstants.JOB_PARAM_NEWEST_COUNT, 3L);
+		FileContentProcessor processor = createProcessor(params);
+		assertThat(process(processor, newer)).isNotNull();
+		assertThat(process(processor, older)).isNull();
+		// найденное попадает в результат после шага, от новых к старым
+		assertThat(resultModel.getEvents()).isEmpty();
+		processor.afterStep(MetaDataInstanceFactory.createStepExecution());
+		assertThat(texts(resultModel.getEvents())).containsExactly(line(1009, "hit 9"), line(1008, "hit 8"), line(1007, "hit 7"));
+	}
+
+	@Test
+	public void testSpoolRemoteContent() throws Exception
+	{
+		// удалённый файл больше порога памяти спула: при сохранении результата он читается один раз,
+		// копия сохраняется во временный файл и удаляется при закрытии
+		Path file = folder.getRoot().toPath().resolve("app.log");
+		writeLog(file, 60_000, i -> "line " + i);
+		int[] opened = new int[1];
+		ContentReader remoteReader = new ContentReader()
+		{
+			@Override
+			public InputStream getInputStream() throws IOException
+			{
+				opened[0]++;
+				return Files.newInputStream(file);
+			}
+
+			@Override
+			public void close()
+			{
+			}
+		};
+		FileContentProcessor processor = createProcessor(new JobParametersBuilder()
+				.addString(AppConstants.JOB_SEARCH_STRING, "line 100")
+				.addLong(AppConstants.JOB_PARAM_SAVE_TO_ARCHIVE, (long)SearchModel.SAVE_TYPE_FILE)
+				.addDate(AppConstants.JOB_PARAM_FROM, new Date(BASE_TIME))
+				.addDate(AppConstants.JOB_PARAM_TO, new Date(BASE_TIME + 3600_000L)));
+		FileServiceSelector fileServiceSelector = (FileServiceSelector)ReflectionTestUtils.getField(processor, "fileServiceSelector");
+		LocalFileService localFileService = spy((LocalFileService)ReflectionTestUtils.getField(fileServiceSelector, "local"));
+		doReturn(remoteReader).when(localFileService).readContent(any(), any());
+		ReflectionTestUtils.setField(fileServiceSelector, "local", localFileService);
+
+		cacheManager.updateFromAttributes(LOCATION, file.toString(), Files.readAttributes(file, BasicFileAttributes.class));
+		FileData fileData = processor.process(new LocalFileInfo(LOCATION, file));
+		assertThat(fileData).isNotNull();
+		assertThat(texts(resultModel.getEvents())).contains(line(100, "line 100"));
+		ContentReader spool = fileData.getContentReader();
+		assertThat(spool).isInstanceOf(SpoolContentReader.class);
+		try (InputStream inputStream = spool.getInputStream())
+		{
+			assertThat(IOUtils.toByteArray(inputStream)).isEqualTo(Files.readAllBytes(file));
+		}
+		assertThat(opened[0]).isEqualTo(1);
+
+		File spoolFile = ((DeferredFileOutputStream)ReflectionTestUtils.getField(spool, "spool")).getFile();
+		assertThat(spoolFile).exists();
+		spool.close();
+		assertThat(spoolFile).doesNotExist();
+	}
+
+	private static String stackTrace(long block)
+	{
+		StringBuilder result = new StringBuilder("ERROR request failed in block " + block);
+		for (int i = 0; i < 40; i++)
+			result.append("\n\tat org.example.Frame").append(i).append(".call(Frame.java:").append(block).append(')');
+		return result.toString();
+	}
+
+	private CacheManager newCacheManager()
+	{
+		CacheManager result = new CacheManager();
+		ReflectionTestUtils.setField(result, "props", appProperties);
+		ReflectionTestUtils.setField(result, "mapper", new ObjectMapper());
+		ReflectionTestUtils.setField(result, "jobResultModel", resultModel);
+		return result;
+	}
+
+	private FileContentProcessor createProcessor(JobParametersBuilder params)
+	{
+		LogPatternDao patternDao = mock(LogPatternDao.class);
+		when(patternDao.getByCode(PATTERN)).thenReturn(logPattern);
+		LocalFileService localFileService = new LocalFileService();
+		ReflectionTestUtils.setField(localFileService, "cacheManager", cacheManager);
+		FileServiceSelector fileServiceSelector = new FileServiceSelector();
+		ReflectionTestUtils.setField(fileServiceSelector, "local", localFileService);
+
+		FileContentProcessor result = new FileContentProcessor();
+		ReflectionTestUtils.setField(result, "resultModel", resultModel);
+		ReflectionTestUtils.setField(result, "patternDao", patternDao);
+		ReflectionTestUtils.setField(result, "fileServiceSelector", fileServiceSelector);
+		ReflectionTestUtils.setField(result, "cacheManager", cacheManager);
+		ReflectionTestUtils.setField(result, "appProperties", appProperties);
+		ReflectionTestUtils.setField(result, "fileSplitPool", fileSplitPool);
+		ReflectionTestUtils.setField(result, "decompressTaskExecutor", new SimpleAsyncTaskExecutor());
+
+		params.addString(AppConstants.JOB_PARAM_PATTERN_CODE, PATTERN);
+		StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution(params.toJobParameters());
+		stepExecution.getJobExecution().getExecutionContext().putString(AppConstants.PROP_COMMON_PATH, folder.getRoot().toString());
+		result.beforeStep(stepExecution);
+		return result;
+	}
+
+	/**
+	 * Файл, как его отобрал шаг просмотра каталогов: с атрибутами в кэше
+	 */
+	private FileData process(FileContentProcessor processor, Path file) throws Exception
+	{
+		cacheManager.updateFromAttributes(LOCATION, file.toString(), Files.readAttributes(file, BasicFileAttributes.class));
+		FileData result = processor.process(new LocalFileInfo(LOCATION, file));
+		if (result != null)
+			result.getContentReader().close();
+		return result;
+	}
+
+	/**
+	 * Лог из записей через 100 мс, начиная с {@link #BASE_TIME}
+	 * @return число записей
+	 */
+	private static int writeLog(Path file, int count, RecordText text) throws IOException
+	{
+		try (LogWriter writer = new LogWriter(file))
+		{
+			for (int i = 0; i < count; i++)
+				writer.record(text.get(i));
+		}
+		return count;
+	}
+
+	/**
+	 * Содержимое лога из {@link #writeLog(Path, int, RecordText)}
+	 */
+	private byte[] logBytes(int count, RecordText text) throws IOException
+	{
+		Path file = folder.newFile().toPath();
+		writeLog(file, count, text);
+		return Files.readAllBytes(file);
+	}
+
+	private static void putEntry(ZipOutputStream zip, String name, long time, byte[] content) throws IOException
+	{
+		ZipEntry entry = new ZipEntry(name);
+		entry.setTime(time);
+		zip.putNextEntry(entry);
+		zip.write(content);
+		zip.closeEntry();
+	}
+
+	private static String line(int index, String text)
+	{
+		return FORMAT.format(BASE_TIME + index * 100L) + " [INFO ] " + text;
+	}
+
+	private static long offsetOf(Path file, String line) throws IOException
+	{
+		String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+		int index = content.indexOf(line + "\n");
+		assertThat(index).isNotNegative();
+		return content.substring(0, index).getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	private static List<String> texts(Iterable<LogEvent> events)
+	{
+		List<String> result = new ArrayList<>();
+		events.forEach(event -> result.add(event.getText()));
+		return result;
+	}
+
+	private interface RecordText
+	{
+		String get(int index);
+	}
+
+	/**
+	 * Пишет записи лога ({@link #line(int, String)}) и считает байты (только ASCII)
+	 */
+	private static class LogWriter implements Closeable
+	{
+		private final BufferedWriter writer;
+		long position;
+		int index;
+
+		LogWriter(Path file) throws IOException
+		{
+			writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * @param text текст записи, строки продолжения - через '\n'
+		 */
+		void record(String text) throws IOException
+		{
+			String record = line(index++, text) + "\n";
+			writer.write(record);
+			position += record.length();
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			writer.close();
+		}
+	}
+}
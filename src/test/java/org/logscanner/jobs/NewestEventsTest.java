@@ -0,0 +1,68 @@
+package org.logscanner.jobs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.logscanner.data.LogEvent;
+
+public class NewestEventsTest
+{
+	@Test
+	public void testAddAll()
+	{
+		NewestEvents newest = new NewestEvents(3);
+		newest.addAll(Arrays.asList(event(5L), event(1L), event(null)));
+		assertThat(newest.isTooOld(0)).isFalse();
+		assertThat(times(newest.getNewestFirst())).containsExactly(5L, 1L, null);
+
+		newest.addAll(Arrays.asList(event(3L), event(2L)));
+		assertThat(times(newest.getNewestFirst())).containsExactly(5L, 3L, 2L);
+		assertThat(newest.isTooOld(2)).isTrue();
+		assertThat(newest.isTooOld(3)).isFalse();
+
+		// не новее вершины - не добавляется
+		newest.addAll(Collections.singletonList(event(2L)));
+		assertThat(times(newest.getNewestFirst())).containsExactly(5L, 3L, 2L);
+	}
+
+	@Test
+	public void testRandom()
+	{
+		Random random = new Random(7);
+		NewestEvents newest = new NewestEvents(50);
+		List<Long> all = new ArrayList<>();
+		for (int i = 0; i < 20; i++)
+		{
+			List<LogEvent> events = new ArrayList<>();
+			for (int j = random.nextInt(30); j > 0; j--)
+			{
+				long time = random.nextInt(1000);
+				all.add(time);
+				events.add(event(time));
+			}
+			newest.addAll(events);
+		}
+		all.sort(Collections.reverseOrder());
+		assertThat(times(newest.getNewestFirst())).isEqualTo(all.subList(0, 50));
+	}
+
+	private static LogEvent event(Long time)
+	{
+		return new LogEvent(time != null ? new Date(time) : null, null, null, String.valueOf(time));
+	}
+
+	private static List<Long> times(List<LogEvent> events)
+	{
+		return events.stream()
+				.map(event -> event.getLogTime() != null ? event.getLogTime().getTime() : null)
+				.collect(Collectors.toList());
+	}
+}
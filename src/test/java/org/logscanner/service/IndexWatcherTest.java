@@ -0,0 +1,164 @@
+package org.logscanner.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.logscanner.cache.CacheFileInfo;
+import org.logscanner.data.Location;
+import org.logscanner.data.LocationType;
+import org.logscanner.data.LogPattern;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class IndexWatcherTest
+{
+	private static final String LOCATION = "test";
+	/** IndexWatcher.QUIET_PERIOD */
+	private static final long QUIET_PERIOD = 10_000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private TrigramIndexer trigramIndexer;
+	private CacheManager cacheManager;
+	private IndexWatcher watcher;
+
+	@Before
+	public void setUp()
+	{
+		Location location = new Location(LOCATION, folder.getRoot().toString(), null);
+		location.setIndexed(true);
+		LocationDao locationDao = mock(LocationDao.class);
+		when(locationDao.getAll()).thenReturn(Collections.singletonList(location));
+		trigramIndexer = mock(TrigramIndexer.class);
+		when(trigramIndexer.findPatterns(eq(LOCATION), argThat(path -> path.toString().endsWith(".log"))))
+				.thenReturn(Collections.singletonList(new LogPattern("app", "app")));
+		when(trigramIndexer.update(anyString(), anyString())).thenReturn(true);
+		cacheManager = mock(CacheManager.class);
+
+		watcher = new IndexWatcher();
+		ReflectionTestUtils.setField(watcher, "locationDao", locationDao);
+		ReflectionTestUtils.setField(watcher, "trigramIndexer", trigramIndexer);
+		ReflectionTestUtils.setField(watcher, "cacheManager", cacheManager);
+	}
+
+	@After
+	public void tearDown()
+	{
+		watcher.destroy();
+	}
+
+	@Test
+	public void testQuietPeriod() throws Exception
+	{
+		ReflectionTestUtils.invokeMethod(watcher, "poll");
+		Path file = folder.getRoot().toPath().resolve("app.log");
+		Files.write(file, "2019-01-01 00:00:00,000 [INFO ] started\n".getBytes(StandardCharsets.UTF_8));
+		Files.write(folder.getRoot().toPath().resolve("app.log.lck"), new byte[0]);
+
+		Map<Path, ?> pendingFiles = pendingFiles();
+		for (long started = System.currentTimeMillis(); pendingFiles.isEmpty() && System.currentTimeMillis() - started < 10_000; Thread.sleep(100))
+			ReflectionTestUtils.invokeMethod(watcher, "processEvents");
+		// файл блокировки поиск не отбирает
+		assertThat(pendingFiles.keySet()).containsExactly(file);
+		// файл ещё пишется
+		verify(trigramIndexer, never()).update(anyString(), anyString());
+
+		ReflectionTestUtils.invokeMethod(watcher, "updatePending", System.currentTimeMillis() + QUIET_PERIOD);
+		verify(trigramIndexer).update(LOCATION, file.toString());
+		verify(trigramIndexer, never()).update(eq(LOCATION), argThat(path -> !path.equals(file.toString())));
+		verify(cacheManager).saveCaches();
+		assertThat(pendingFiles).isEmpty();
+	}
+
+	@Test
+	public void testSearchRunning() throws Exception
+	{
+		ReflectionTestUtils.invokeMethod(watcher, "poll");
+		Path file = folder.getRoot().toPath().resolve("app.log");
+		Files.write(file, new byte[] { '\n' });
+		Map<Path, ?> pendingFiles = pendingFiles();
+		for (long started = System.currentTimeMillis(); pendingFiles.isEmpty() && System.currentTimeMillis() - started < 10_000; Thread.sleep(100))
+			ReflectionTestUtils.invokeMethod(watcher, "processEvents");
+
+		// идёт поиск: файл остаётся в очереди до следующего раза
+		when(trigramIndexer.update(anyString(), anyString())).thenReturn(false);
+		ReflectionTestUtils.invokeMethod(watcher, "updatePending", System.currentTimeMillis() + QUIET_PERIOD);
+		assertThat(pendingFiles.keySet()).containsExactly(file);
+		verify(cacheManager, never()).saveCaches();
+	}
+
+	@Test
+	public void testPollAttributes() throws Exception
+	{
+		Location location = new Location(LOCATION, "/logs", null);
+		location.setType(LocationType.SFTP);
+		location.setIndexed(true);
+		CacheFileInfo grown = cacheFileInfo("/logs/app.log", 100);
+		CacheFileInfo rotated = cacheFileInfo("/logs/app.log.1", 100);
+		CacheFileInfo removed = cacheFileInfo("/logs/app.log.2", 100);
+		when(cacheManager.getFiles(LOCATION)).thenReturn(Arrays.asList(grown, rotated, removed));
+		FileSystemService fileSystemService = mock(FileSystemService.class);
+		BasicFileAttributes grownAttrs = attributes(200);
+		BasicFileAttributes rotatedAttrs = attributes(50);
+		when(fileSystemService.readAttributes(location, grown.getPath())).thenReturn(grownAttrs);
+		when(fileSystemService.readAttributes(location, rotated.getPath())).thenReturn(rotatedAttrs);
+		when(fileSystemService.readAttributes(location, removed.getPath())).thenThrow(new NoSuchFileException(removed.getPath()));
+		FileServiceSelector fileServiceSelector = mock(FileServiceSelector.class);
+		when(fileServiceSelector.select(LocationType.SFTP)).thenReturn(fileSystemService);
+		ReflectionTestUtils.setField(watcher, "fileServiceSelector", fileServiceSelector);
+
+		ReflectionTestUtils.invokeMethod(watcher, "pollAttributes", location);
+		// опрашиваются только известные кэшу файлы, каталоги не просматриваются
+		verify(fileSystemService, never()).listFiles(any(), any());
+		verify(fileSystemService, times(3)).readAttributes(eq(location), anyString());
+		verify(cacheManager).updateFromAttributes(LOCATION, grown.getPath(), grownAttrs);
+		verify(cacheManager, never()).resetContent(LOCATION, grown.getPath());
+		// ставший меньше файл заменён
+		verify(cacheManager).resetContent(LOCATION, rotated.getPath());
+		verify(cacheManager).updateFromAttributes(LOCATION, rotated.getPath(), rotatedAttrs);
+		verify(cacheManager, never()).updateFromAttributes(eq(LOCATION), eq(removed.getPath()), any());
+		verify(cacheManager).saveCaches();
+	}
+
+	private static CacheFileInfo cacheFileInfo(String path, long size)
+	{
+		CacheFileInfo result = new CacheFileInfo(path);
+		result.setSize(size);
+		return result;
+	}
+
+	private static BasicFileAttributes attributes(long size)
+	{
+		BasicFileAttributes result = mock(BasicFileAttributes.class);
+		when(result.size()).thenReturn(size);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<Path, ?> pendingFiles()
+	{
+		return (Map<Path, ?>)ReflectionTestUtils.getField(watcher, "pendingFiles");
+	}
+}
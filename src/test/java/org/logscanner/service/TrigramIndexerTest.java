@@ -0,0 +1,163 @@
+package org.logscanner.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.lang3.time.FastDateFormat;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.logscanner.cache.CacheFileInfo;
+import org.logscanner.cache.TrigramIndex;
+import org.logscanner.data.Location;
+import org.logscanner.data.LogPattern;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class TrigramIndexerTest
+{
+	private static final String LOCATION = "test";
+	private static final FastDateFormat FORMAT = FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss,SSS");
+	private static final long BASE_TIME = 1546300800000L;
+	/** Больше TrigramIndexer.MIN_SIZE */
+	private static final int RECORD_COUNT = 120_000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private LogPattern logPattern;
+	private CacheManager cacheManager;
+	private TrigramIndexer indexer;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		logPattern = new LogPattern("app", "app");
+		logPattern.setIncludes(new String[] { "**/*.log" });
+		logPattern.setEncoding("UTF-8");
+
+		AppProperties appProperties = mock(AppProperties.class);
+		when(appProperties.getDataDir()).thenReturn(folder.newFolder("data").toString());
+		when(appProperties.getMaxResults()).thenReturn(10000);
+		JobResultModel resultModel = new JobResultModel();
+		ReflectionTestUtils.setField(resultModel, "props", appProperties);
+		ReflectionTestUtils.invokeMethod(resultModel, "init");
+
+		cacheManager = new CacheManager();
+		ReflectionTestUtils.setField(cacheManager, "props", appProperties);
+		ReflectionTestUtils.setField(cacheManager, "mapper", new ObjectMapper());
+		ReflectionTestUtils.setField(cacheManager, "jobResultModel", resultModel);
+
+		LocationDao locationDao = mock(LocationDao.class);
+		when(locationDao.getByCode(LOCATION)).thenReturn(new Location(LOCATION, folder.getRoot().toString(), null));
+		LogPatternDao patternDao = mock(LogPatternDao.class);
+		when(patternDao.getAll()).thenReturn(Collections.singletonList(logPattern));
+
+		indexer = new TrigramIndexer();
+		ReflectionTestUtils.setField(indexer, "locationDao", locationDao);
+		ReflectionTestUtils.setField(indexer, "cacheManager", cacheManager);
+		ReflectionTestUtils.setField(indexer, "patternDao", patternDao);
+		ReflectionTestUtils.setField(indexer, "jobResultModel", resultModel);
+	}
+
+	@Test
+	public void testPatternDateFormat() throws IOException
+	{
+		Path file = folder.getRoot().toPath().resolve("app.log");
+		writeLog(file, 0, 10, "ok", false);
+
+		// формат даты шаблона не подходит к строкам: дат нет, как и при поиске с этим шаблоном
+		logPattern.setDatePattern("dd.MM.yyyy HH:mm:ss");
+		assertThat(indexer.update(LOCATION, file.toString())).isTrue();
+		CacheFileInfo fileInfo = cacheManager.getFileInfo(LOCATION, file.toString(), null);
+		assertThat(fileInfo.getTimeIndex()).isNull();
+		assertThat(fileInfo.getContentEnd()).isNull();
+
+		// без формата в шаблоне он определяется по первой строке
+		logPattern.setDatePattern(null);
+		assertThat(indexer.update(LOCATION, file.toString())).isTrue();
+		assertThat(fileInfo.getContentStart()).isEqualTo(new Date(BASE_TIME));
+		assertThat(fileInfo.getContentEnd()).isEqualTo(new Date(BASE_TIME + 900));
+
+		// файл, который поиск не отбирает, не читается и в кэш не попадает
+		Path lock = folder.getRoot().toPath().resolve("app.lock");
+		writeLog(lock, 0, 10, "ok", false);
+		assertThat(indexer.update(LOCATION, lock.toString())).isTrue();
+		assertThat(cacheManager.getFileInfo(LOCATION, lock.toString(), null)).isNull();
+	}
+
+	@Test
+	public void testAppendedAndTruncated() throws IOException
+	{
+		logPattern.setDatePattern("yyyy-MM-dd HH:mm:ss,SSS");
+		Path file = folder.getRoot().toPath().resolve("app.log");
+		writeLog(file, 0, RECORD_COUNT, "ok", false);
+		assertThat(indexer.update(LOCATION, file.toString())).isTrue();
+		TrigramIndex index = cacheManager.getTrigramIndex(LOCATION, file.toString());
+		assertThat(index.getSize()).isEqualTo(Files.size(file));
+		assertThat(index.findRanges(terms("appended"), 0, index.getSize())).isEmpty();
+
+		// дописанный файл дочитывается с конца прежнего индекса: изменённое в начале не перечитывается
+		byte[] content = Files.readAllBytes(file);
+		byte[] first = line(0, "ok").getBytes(StandardCharsets.UTF_8);
+		System.arraycopy(line(0, "xy").getBytes(StandardCharsets.UTF_8), 0, content, 0, first.length);
+		Files.write(file, content);
+		writeLog(file, RECORD_COUNT, 1000, "appended", true);
+		long previousSize = index.getSize();
+		assertThat(indexer.update(LOCATION, file.toString())).isTrue();
+		index = cacheManager.getTrigramIndex(LOCATION, file.toString());
+		assertThat(index.getSize()).isEqualTo(Files.size(file));
+		assertThat(index.findRanges(terms("0 xy"), 0, index.getSize())).isEmpty();
+		List<long[]> ranges = index.findRanges(terms("appended"), 0, index.getSize());
+		assertThat(ranges).isNotEmpty();
+		assertThat(ranges.get(0)[1]).isGreaterThan(previousSize);
+		CacheFileInfo fileInfo = cacheManager.getFileInfo(LOCATION, file.toString(), null);
+		assertThat(fileInfo.getContentEnd()).isEqualTo(new Date(BASE_TIME + (RECORD_COUNT + 999) * 100L));
+
+		// усечённый (заменённый) файл индексируется заново
+		writeLog(file, 0, RECORD_COUNT - 1000, "xy", false);
+		assertThat(indexer.update(LOCATION, file.toString())).isTrue();
+		index = cacheManager.getTrigramIndex(LOCATION, file.toString());
+		assertThat(index.getSize()).isEqualTo(Files.size(file));
+		assertThat(index.findRanges(terms("0 xy"), 0, index.getSize())).isNotEmpty();
+		assertThat(index.findRanges(terms("appended"), 0, index.getSize())).isEmpty();
+		assertThat(fileInfo.getContentStart()).isEqualTo(new Date(BASE_TIME));
+		assertThat(fileInfo.getContentEnd()).isEqualTo(new Date(BASE_TIME + (RECORD_COUNT - 1001) * 100L));
+	}
+
+	/**
+	 * Записи через 100 мс, начиная с {@link #BASE_TIME}
+	 */
+	private static void writeLog(Path file, int from, int count, String text, boolean append) throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = from; i < from + count; i++)
+			sb.append(line(i, text)).append('\n');
+		if (append)
+			Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		else
+			Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String line(int index, String text)
+	{
+		return FORMAT.format(BASE_TIME + index * 100L) + " [INFO ] record " + index + " " + text;
+	}
+
+	private static List<int[]> terms(String term)
+	{
+		return Collections.singletonList(TrigramIndex.termTrigrams(term, StandardCharsets.UTF_8, false));
+	}
+}
@@ -0,0 +1,63 @@
+package org.logscanner.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.logscanner.util.LogLayout.Field;
+
+public class LogLayoutTest
+{
+	private static final String LINE = "2019-08-01 10:15:30,123 [WARN ] [main-thread 1] org.logscanner.Test - Something happened";
+
+	@Test
+	public void testLocate() throws Exception
+	{
+		for (Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.UTF_16 })
+		{
+			LogLayout layout = LogLayout.compile("%d{yyyy-MM-dd HH:mm:ss,SSS} [%-5level] [%thread] %logger - %msg%n", charset);
+			assertThat(layout.getDatePattern()).isEqualTo("yyyy-MM-dd HH:mm:ss,SSS");
+			assertThat(field(layout, Field.DATE, LINE, charset)).isEqualTo("2019-08-01 10:15:30,123");
+			assertThat(field(layout, Field.LEVEL, LINE, charset)).isEqualTo("WARN");
+			assertThat(field(layout, Field.THREAD, LINE, charset)).isEqualTo("main-thread 1");
+			assertThat(field(layout, Field.LOGGER, LINE, charset)).isEqualTo("org.logscanner.Test");
+			assertThat(field(layout, Field.MESSAGE, LINE, charset)).isEqualTo("Something happened");
+			assertThat(field(layout, Field.LEVEL, "\tat org.logscanner.Test.main(Test.java:10)", charset)).isNull();
+			assertThat(field(layout, Field.LOGGER, "2019-08-01 10:15:30,123 [WARN ] broken", charset)).isNull();
+		}
+	}
+
+	@Test
+	public void testVariableWidth() throws Exception
+	{
+		Charset charset = StandardCharsets.UTF_8;
+		// дата переменной ширины, разделитель встречается внутри даты
+		LogLayout layout = LogLayout.compile("%date{d.M.yyyy H:mm:ss} %p %t %c: %m", charset);
+		String line = "1.8.2019 9:05:00 ERROR pool-1 Main: Ошибка";
+		assertThat(field(layout, Field.LEVEL, line, charset)).isEqualTo("ERROR");
+		assertThat(field(layout, Field.THREAD, line, charset)).isEqualTo("pool-1");
+		assertThat(field(layout, Field.LOGGER, line, charset)).isEqualTo("Main");
+		assertThat(field(layout, Field.MESSAGE, line, charset)).isEqualTo("Ошибка");
+		assertThat(layout.hasField(Field.LEVEL)).isTrue();
+		assertThat(LogLayout.compile("%-5p %m", charset).hasField(Field.THREAD)).isFalse();
+		assertThat(LogLayout.compile("[%X{rquid}] %m", charset).getDatePattern()).isNull();
+		assertThatThrownBy(() -> LogLayout.compile("%d{yyyy %m", charset)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private static String field(LogLayout layout, Field field, String line, Charset charset)
+	{
+		if (!charset.equals(StandardCharsets.UTF_8))
+		{
+			long location = layout.locate(field, line);
+			return location != LogLayout.NOT_FOUND ? line.substring(LogLayout.start(location), LogLayout.end(location)) : null;
+		}
+		byte[] buf = ("##" + line + "##").getBytes(charset);
+		long location = layout.locate(field, buf, 2, buf.length - 2);
+		return location != LogLayout.NOT_FOUND
+				? new String(buf, LogLayout.start(location), LogLayout.end(location) - LogLayout.start(location), charset)
+				: null;
+	}
+}
@@ -0,0 +1,125 @@
+package org.logscanner.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Test;
+
+public class ReadAheadInputStreamTest
+{
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@After
+	public void tearDown()
+	{
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testReadAhead() throws Exception
+	{
+		byte[] content = new byte[1_000_003];
+		new Random(1).nextBytes(content);
+		for (long syncLength : new long[] { 0, 1000, 5_000_000 })
+		{
+			try (InputStream inputStream = new ReadAheadInputStream(new ByteArrayInputStream(content), executor, syncLength, 4096, 3))
+			{
+				assertThat(IOUtils.toByteArray(inputStream)).isEqualTo(content);
+				assertThat(inputStream.read()).isEqualTo(-1);
+			}
+		}
+	}
+
+	@Test
+	public void testFailure() throws Exception
+	{
+		InputStream failing = new InputStream()
+		{
+			private int count;
+
+			@Override
+			public int read() throws IOException
+			{
+				if (++count > 10_000)
+					throw new IOException("broken");
+				return 'a';
+			}
+		};
+		InputStream inputStream = new ReadAheadInputStream(failing, executor, 100, 1024, 2);
+		assertThatThrownBy(() -> IOUtils.toByteArray(inputStream)).isInstanceOf(IOException.class).hasMessage("broken");
+		inputStream.close();
+	}
+
+	@Test
+	public void testCloseBeforeEnd() throws Exception
+	{
+		InputStream endless = new InputStream()
+		{
+			@Override
+			public int read()
+			{
+				return 'a';
+			}
+		};
+		InputStream inputStream = new ReadAheadInputStream(endless, executor, 0, 1024, 2);
+		assertThat(inputStream.read(new byte[100])).isEqualTo(100);
+		inputStream.close(); // не зависает на заполненной очереди
+	}
+
+	@Test
+	public void testDecompress() throws Exception
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 10_000; i++)
+			sb.append("2019-08-01 00:00:00,000 [INFO ] line ").append(i).append('\n');
+		byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+		checkDecompress(content, content, null);
+		ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(gzip))
+		{
+			out.write(content);
+		}
+		checkDecompress(gzip.toByteArray(), content, CompressorStreamFactory.GZIP);
+		ByteArrayOutputStream bzip2 = new ByteArrayOutputStream();
+		try (BZip2CompressorOutputStream out = new BZip2CompressorOutputStream(bzip2))
+		{
+			out.write(content);
+		}
+		checkDecompress(bzip2.toByteArray(), content, CompressorStreamFactory.BZIP2);
+		ByteArrayOutputStream xz = new ByteArrayOutputStream();
+		try (XZCompressorOutputStream out = new XZCompressorOutputStream(xz))
+		{
+			out.write(content);
+		}
+		checkDecompress(xz.toByteArray(), content, CompressorStreamFactory.XZ);
+	}
+
+	private void checkDecompress(byte[] file, byte[] content, String expectedCompressor) throws Exception
+	{
+		PushbackInputStream inputStream = new PushbackInputStream(new ByteArrayInputStream(file), CompressionUtils.SIGNATURE_LENGTH);
+		String compressor = CompressionUtils.detect(inputStream);
+		assertThat(compressor).isEqualTo(expectedCompressor);
+		InputStream decompressed = compressor != null ? CompressionUtils.createDecompressor(compressor, inputStream) : inputStream;
+		try (InputStream readAhead = new ReadAheadInputStream(decompressed, executor, 1000, 4096, 2))
+		{
+			assertThat(IOUtils.toByteArray(readAhead)).isEqualTo(content);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package org.logscanner.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.text.ParsePosition;
+import java.util.Date;
+import java.util.Random;
+
+import org.apache.commons.lang3.time.FastDateFormat;
+import org.junit.Test;
+
+public class TimestampFormatTest
+{
+	private static final String[] PATTERNS = {
+			"yyyy-MM-dd HH:mm:ss,S",
+			"yyyy-MM-dd HH:mm:ss.SSS",
+			"dd.MM.yy HH:mm:ss",
+			"yyyy-MM-dd'T'HH:mm:ss.SSS",
+			"[yyyyMMdd HHmmss]",
+			"yyyy-MM-dd kk:mm:ss",
+	};
+
+	private static final long MIN_TIME = -2_208_988_800_000L; // 1900-01-01
+
+	@Test
+	public void testSameAsFastDateFormat() throws Exception
+	{
+		Random random = new Random(1);
+		long now = System.currentTimeMillis();
+		for (String pattern : PATTERNS)
+		{
+			FastDateFormat fastDateFormat = FastDateFormat.getInstance(pattern);
+			TimestampFormat format = TimestampFormat.compile(pattern, StandardCharsets.UTF_8);
+			assertThat(format.isCompiled()).isTrue();
+			for (int i = 0; i < 2000; i++)
+			{
+				String line = fastDateFormat.format(now - (long)(random.nextDouble() * 40L * 365 * 86_400_000L)) + " [INFO ] message";
+				check(format, fastDateFormat, line);
+				check(format, fastDateFormat, mutate(random, line));
+			}
+		}
+	}
+
+	@Test
+	public void testPrefixCache() throws Exception
+	{
+		Random random = new Random(2);
+		for (String pattern : PATTERNS)
+		{
+			FastDateFormat fastDateFormat = FastDateFormat.getInstance(pattern);
+			TimestampFormat format = TimestampFormat.compile(pattern, StandardCharsets.UTF_8);
+			TimestampParser byteParser = format.newParser();
+			TimestampParser charParser = format.newParser();
+			long time = 1_565_000_000_000L;
+			for (int i = 0; i < 20_000; i++)
+			{
+				time += random.nextInt(5) == 0 ? random.nextInt(3000) : random.nextInt(20);
+				String line = fastDateFormat.format(time) + (random.nextBoolean() ? "123" : " [INFO ]");
+				if (random.nextInt(10) == 0)
+					line = mutate(random, line);
+				long expected = format.parse(line, 0, line.length());
+				byte[] buf = line.getBytes(StandardCharsets.UTF_8);
+				assertThat(byteParser.parse(buf, 0, buf.length)).as(pattern + " / " + line).isEqualTo(expected);
+				assertThat(charParser.parse(line, 0, line.length())).as(pattern + " / " + line).isEqualTo(expected);
+				// префикс, запомненный по байтам, не сверяется с символами и наоборот
+				TimestampParser mixedParser = i % 2 == 0 ? byteParser : charParser;
+				assertThat(mixedParser.parse(line, 0, line.length())).as(pattern + " / " + line).isEqualTo(expected);
+				assertThat(mixedParser.parse(buf, 0, buf.length)).as(pattern + " / " + line).isEqualTo(expected);
+			}
+		}
+	}
+
+	@Test
+	public void testNotADate() throws Exception
+	{
+		TimestampFormat format = TimestampFormat.compile("yyyy-MM-dd HH:mm:ss,S", StandardCharsets.UTF_8);
+		assertThat(parse(format, "\tat org.logscanner.Main.main(Main.java:42)", StandardCharsets.UTF_8)).isEqualTo(TimestampFormat.NO_DATE);
+		assertThat(parse(format, "", StandardCharsets.UTF_8)).isEqualTo(TimestampFormat.NO_DATE);
+		assertThat(parse(format, "2019-08-01 12:30", StandardCharsets.UTF_8)).isEqualTo(TimestampFormat.NO_DATE);
+		assertThat(parse(format, "2019-08-01 12:30:00,123", StandardCharsets.UTF_8))
+				.isEqualTo(FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss,S").parse("2019-08-01 12:30:00,123").getTime());
+	}
+
+	@Test
+	public void testFallback() throws Exception
+	{
+		String pattern = "dd MMM yyyy HH:mm:ss";
+		TimestampFormat format = TimestampFormat.compile(pattern, Charset.forName("windows-1251"));
+		assertThat(format.isCompiled()).isFalse();
+		String line = FastDateFormat.getInstance(pattern).format(new Date(1_565_000_000_000L)) + " message";
+		check(format, FastDateFormat.getInstance(pattern), line);
+		assertThat(parse(format, "message", StandardCharsets.UTF_8)).isEqualTo(TimestampFormat.NO_DATE);
+	}
+
+	private static void check(TimestampFormat format, FastDateFormat fastDateFormat, String line)
+	{
+		Date date = fastDateFormat.parse(line, new ParsePosition(0));
+		long expected = date != null ? date.getTime() : TimestampFormat.NO_DATE;
+		if (date != null && date.getTime() < MIN_TIME)
+			return; // до 1900 Calendar считает по юлианскому календарю и местному солнечному времени
+		assertThat(format.parse(line, 0, line.length())).as(format + " / " + line).isEqualTo(expected);
+		assertThat(parse(format, line, StandardCharsets.UTF_8)).as(format + " / " + line).isEqualTo(expected);
+	}
+
+	private static long parse(TimestampFormat format, String line, Charset charset)
+	{
+		byte[] buf = ("xx" + line).getBytes(charset);
+		return format.parse(buf, 2, buf.length);
+	}
+
+	private static String mutate(Random random, String line)
+	{
+		char[] chars = line.toCharArray();
+		int pos = random.nextInt(Math.min(chars.length, 25));
+		chars[pos] = "0123456789 :-.x".charAt(random.nextInt(15));
+		return new String(chars);
+	}
+}
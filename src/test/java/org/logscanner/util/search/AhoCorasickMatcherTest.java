@@ -0,0 +1,124 @@
+package org.logscanner.util.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class AhoCorasickMatcherTest
+{
+	@Test
+	public void testMatchedTerms() throws Exception
+	{
+		List<String> terms = Arrays.asList("he", "she", "his", "hers");
+		for (Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.UTF_16 })
+		{
+			AhoCorasickMatcher matcher = new AhoCorasickMatcher(terms, charset);
+			assertThat(matches(matcher, "ushers", charset)).isTrue();
+			assertThat(matchedTerms(matcher, "ushers", charset)).containsExactly("he", "she", "hers");
+			assertThat(matchedTerms(matcher, "this", charset)).containsExactly("his");
+			assertThat(matches(matcher, "hi there", charset)).isTrue();
+			assertThat(matches(matcher, "hxs", charset)).isFalse();
+		}
+	}
+
+	@Test
+	public void testCyrillic() throws Exception
+	{
+		Charset charset = Charset.forName("windows-1251");
+		AhoCorasickMatcher matcher = new AhoCorasickMatcher(Arrays.asList("Ошибка", "RqUID=42"), charset);
+		assertThat(matchedTerms(matcher, "[ERROR] Ошибка обработки RqUID=42", charset)).containsExactly("Ошибка", "RqUID=42");
+		assertThat(matches(matcher, "[INFO ] RqUID=43 обработан", charset)).isFalse();
+	}
+
+	@Test
+	public void testRandom() throws Exception
+	{
+		Random random = new Random(1);
+		for (int n = 0; n < 5000; n++)
+		{
+			String text = randomString(random, random.nextInt(40));
+			List<String> terms = new ArrayList<>();
+			for (int i = random.nextInt(5); i >= 0; i--)
+				terms.add(randomString(random, 1 + random.nextInt(5)));
+			AhoCorasickMatcher matcher = new AhoCorasickMatcher(terms, StandardCharsets.UTF_8);
+			List<String> expected = new ArrayList<>();
+			for (String term : terms)
+				if (text.contains(term))
+					expected.add(term);
+			assertThat(matches(matcher, text, StandardCharsets.UTF_8)).isEqualTo(!expected.isEmpty());
+			if (!expected.isEmpty())
+				assertThat(matchedTerms(matcher, text, StandardCharsets.UTF_8)).containsExactlyElementsOf(expected);
+		}
+	}
+
+	@Test
+	public void testIgnoreCase() throws Exception
+	{
+		for (Charset charset : new Charset[] { StandardCharsets.UTF_8, Charset.forName("windows-1251"), Charset.forName("KOI8-R"), StandardCharsets.UTF_16 })
+		{
+			AhoCorasickMatcher matcher = new AhoCorasickMatcher(Arrays.asList("Ошибка", "TimeOut", "ёлка"), charset, true);
+			assertThat(matchedTerms(matcher, "[ERROR] ОШИБКА: read timeout", charset)).as(charset.name()).containsExactly("Ошибка", "TimeOut");
+			assertThat(matchedTerms(matcher, "ошибка ЁЛКА", charset)).as(charset.name()).containsExactly("Ошибка", "ёлка");
+			assertThat(matches(matcher, "Ошибок нет, елка", charset)).as(charset.name()).isFalse();
+			assertThat(matches(new AhoCorasickMatcher(Arrays.asList("Ошибка"), charset), "ОШИБКА", charset)).isFalse();
+		}
+		// греческая сигма: три формы одной буквы
+		AhoCorasickMatcher sigma = new AhoCorasickMatcher(Arrays.asList("ΟΔΟΣ"), StandardCharsets.UTF_8, true);
+		assertThat(matches(sigma, "οδος", StandardCharsets.UTF_8)).isTrue();
+		assertThat(matches(sigma, "οδοσ", StandardCharsets.UTF_8)).isTrue();
+	}
+
+	@Test
+	public void testIgnoreCaseRandom() throws Exception
+	{
+		Random random = new Random(1);
+		for (int n = 0; n < 5000; n++)
+		{
+			String text = randomString(random, random.nextInt(40), "aAбБёЁ€");
+			String term = randomString(random, 1 + random.nextInt(4), "aAбБёЁ€");
+			for (Charset charset : new Charset[] { StandardCharsets.UTF_8, Charset.forName("windows-1251") })
+			{
+				AhoCorasickMatcher matcher = new AhoCorasickMatcher(Arrays.asList(term), charset, true);
+				assertThat(matches(matcher, text, charset))
+						.as("'" + term + "' in '" + text + "' " + charset)
+						.isEqualTo(text.toLowerCase().contains(term.toLowerCase()));
+			}
+		}
+	}
+
+	private static boolean matches(AhoCorasickMatcher matcher, String text, Charset charset)
+	{
+		if (!SearchUtils.isByteSearchable(charset))
+			return matcher.matches(text);
+		byte[] buf = text.getBytes(charset);
+		return matcher.matches(buf, 0, buf.length);
+	}
+
+	private static List<String> matchedTerms(AhoCorasickMatcher matcher, String text, Charset charset)
+	{
+		if (!SearchUtils.isByteSearchable(charset))
+			return matcher.getMatchedTerms(text);
+		byte[] buf = text.getBytes(charset);
+		return matcher.getMatchedTerms(buf, 0, buf.length);
+	}
+
+	private static String randomString(Random random, int length)
+	{
+		return randomString(random, length, "abcд");
+	}
+
+	private static String randomString(Random random, int length, String alphabet)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++)
+			sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,47 @@
+package org.logscanner.util.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.logscanner.util.LogLayout;
+
+public class LayoutFilterTest
+{
+	@Test
+	public void testFilter() throws Exception
+	{
+		assertThat(LayoutFilter.parseLevels("WARN+")).containsExactly("WARN", "ERROR", "FATAL");
+		assertThat(LayoutFilter.parseLevels("info, error")).containsExactly("INFO", "ERROR");
+		assertThatThrownBy(() -> LayoutFilter.parseLevels("NOTICE")).isInstanceOf(IllegalArgumentException.class);
+
+		for (Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.UTF_16 })
+		{
+			LogLayout layout = LogLayout.compile("%d [%-5level] [%thread] %logger - %msg%n", charset);
+			LayoutFilter filter = new LayoutFilter(layout, "WARN+", "logscanner", null, charset);
+			assertThat(matches(filter, "2019-08-01 10:15:30,123 [WARN ] [main] org.logscanner.Test - text", charset)).isTrue();
+			assertThat(matches(filter, "2019-08-01 10:15:30,123 [ERROR] [main] org.logscanner.Test - text", charset)).isTrue();
+			assertThat(matches(filter, "2019-08-01 10:15:30,123 [INFO ] [main] org.logscanner.Test - text", charset)).isFalse();
+			assertThat(matches(filter, "2019-08-01 10:15:30,123 [ERROR] [main] org.other.Test - logscanner", charset)).isFalse();
+			assertThat(matches(filter, "\tat org.logscanner.Test.main(Test.java:10)", charset)).isFalse();
+
+			LayoutFilter threadFilter = new LayoutFilter(layout, null, null, "pool-1", charset);
+			assertThat(matches(threadFilter, "2019-08-01 10:15:30,123 [DEBUG] [pool-1-thread-2] a.B - text", charset)).isTrue();
+			assertThat(matches(threadFilter, "2019-08-01 10:15:30,123 [DEBUG] [main] a.B - pool-1", charset)).isFalse();
+			assertThat(new LayoutFilter(layout, "", " ", null, charset).isEmpty()).isTrue();
+		}
+		assertThatThrownBy(() -> new LayoutFilter(LogLayout.compile("%d %m", StandardCharsets.UTF_8), "ERROR", null, null, StandardCharsets.UTF_8))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private static boolean matches(LineMatcher matcher, String line, Charset charset)
+	{
+		if (!SearchUtils.isByteSearchable(charset))
+			return matcher.matches(line);
+		byte[] buf = line.getBytes(charset);
+		return matcher.matches(buf, 0, buf.length);
+	}
+}
@@ -0,0 +1,67 @@
+package org.logscanner.util.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+
+public class QueryMatcherTest
+{
+	@Test
+	public void testQuery() throws Exception
+	{
+		for (Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.UTF_16 })
+		{
+			QueryMatcher matcher = QueryMatcher.compile("ERROR AND (timeout OR refused) AND NOT healthcheck", charset);
+			assertThat(matches(matcher, "[ERROR] connection refused", charset)).isTrue();
+			assertThat(matches(matcher, "[ERROR] read timeout", charset)).isTrue();
+			assertThat(matches(matcher, "[ERROR] healthcheck timeout", charset)).isFalse();
+			assertThat(matches(matcher, "[INFO ] read timeout", charset)).isFalse();
+			assertThat(matches(matcher, "[ERROR] NullPointerException", charset)).isFalse();
+			assertThat(matchedTerms(matcher, "[ERROR] connection refused", charset)).containsExactly("ERROR", "refused");
+		}
+	}
+
+	@Test
+	public void testSyntax() throws Exception
+	{
+		Charset charset = StandardCharsets.UTF_8;
+		// AND можно опустить, фразы и операторы в кавычках
+		QueryMatcher matcher = QueryMatcher.compile("\"Connection reset\" \"OR\" NOT(debug OR trace)", charset);
+		assertThat(matcher.getLiterals()).containsExactly("Connection reset", "OR", "debug", "trace");
+		assertThat(matches(matcher, "Connection reset OR retry", charset)).isTrue();
+		assertThat(matches(matcher, "Connection reset OR retry trace", charset)).isFalse();
+		assertThat(matches(matcher, "Connection reset", charset)).isFalse();
+		assertThat(matches(QueryMatcher.compile("a OR b c", charset), "b c", charset)).isTrue();
+		assertThat(matches(QueryMatcher.compile("a OR b c", charset), "b", charset)).isFalse();
+		assertThat(matches(QueryMatcher.compile("NOT x", charset), "", charset)).isTrue();
+		assertThat(matches(QueryMatcher.compile("\"say \\\"hi\\\"\"", charset), "they say \"hi\"", charset)).isTrue();
+
+		assertThatThrownBy(() -> QueryMatcher.compile("a AND", charset)).isInstanceOf(QuerySyntaxException.class);
+		assertThatThrownBy(() -> QueryMatcher.compile("(a OR b", charset)).isInstanceOf(QuerySyntaxException.class);
+		assertThatThrownBy(() -> QueryMatcher.compile("a) b", charset)).isInstanceOf(QuerySyntaxException.class);
+		assertThatThrownBy(() -> QueryMatcher.compile("OR a", charset)).isInstanceOf(QuerySyntaxException.class);
+		assertThatThrownBy(() -> QueryMatcher.compile("\"a", charset)).isInstanceOf(QuerySyntaxException.class);
+	}
+
+	private static boolean matches(LineMatcher matcher, String line, Charset charset)
+	{
+		if (!SearchUtils.isByteSearchable(charset))
+			return matcher.matches(line);
+		byte[] buf = ("##" + line + "##").getBytes(charset);
+		int from = "##".getBytes(charset).length;
+		return matcher.matches(buf, from, buf.length - from);
+	}
+
+	private static List<String> matchedTerms(LineMatcher matcher, String line, Charset charset)
+	{
+		if (!SearchUtils.isByteSearchable(charset))
+			return matcher.getMatchedTerms(line);
+		byte[] buf = line.getBytes(charset);
+		return matcher.getMatchedTerms(buf, 0, buf.length);
+	}
+}
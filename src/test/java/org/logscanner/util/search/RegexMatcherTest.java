@@ -0,0 +1,109 @@
+package org.logscanner.util.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class RegexMatcherTest
+{
+	@Test
+	public void testExtractLiterals() throws Exception
+	{
+		assertThat(RegexMatcher.extractLiterals("ERROR.*timeout")).containsExactly("timeout");
+		assertThat(RegexMatcher.extractLiterals("RqUID=\\d+ failed")).containsExactly(" failed");
+		assertThat(RegexMatcher.extractLiterals("conn(ection)? refused")).containsExactly(" refused");
+		assertThat(RegexMatcher.extractLiterals("abcx?de")).containsExactly("abc");
+		assertThat(RegexMatcher.extractLiterals("ab+cde")).containsExactly("cde");
+		assertThat(RegexMatcher.extractLiterals("a\\.b\\Q[x]\\E")).containsExactly("a.b[x]");
+		assertThat(RegexMatcher.extractLiterals("foo|ba[rz]")).containsExactly("foo", "ba");
+		assertThat(RegexMatcher.extractLiterals("x{0,3}yz")).containsExactly("yz");
+		assertThat(RegexMatcher.extractLiterals("\\d+|foo")).isNull();
+		assertThat(RegexMatcher.extractLiterals("(?i)error")).isNull();
+		assertThat(RegexMatcher.extractLiterals("(a|b)")).isNull();
+		assertThat(RegexMatcher.extractLiterals("\\x41BC")).containsExactly("BC");
+		assertThat(RegexMatcher.extractLiterals("\\u0041BC")).containsExactly("BC");
+		assertThat(RegexMatcher.extractLiterals("\\0101BC")).containsExactly("BC");
+		assertThat(RegexMatcher.extractLiterals("\\cJfoo")).containsExactly("foo");
+		assertThat(RegexMatcher.extractLiterals("\\p{Lu}ab")).containsExactly("ab");
+		assertThat(RegexMatcher.extractLiterals("(?<n>ab)\\k<n>")).isNull();
+		assertThat(RegexMatcher.extractLiterals("(a)\\12")).isNull();
+	}
+
+	@Test
+	public void testEscapes() throws Exception
+	{
+		String[][] cases = {
+				{ "\\x41BC", "xABCx" },
+				{ "\\u0041BC", "xABCx" },
+				{ "\\0101BC", "xABCx" },
+				{ "\\cJfoo", "x\nfoo" },
+				{ "(?<n>ab)\\k<n>", "xababx" },
+				{ "[\\Q]\\E]z", "x]z" },
+		};
+		for (String[] c : cases)
+		{
+			RegexMatcher matcher = new RegexMatcher(Pattern.compile(c[0]), StandardCharsets.UTF_8);
+			assertThat(matches(matcher, c[1], StandardCharsets.UTF_8)).as(c[0]).isTrue();
+			assertThat(matcher.matches(c[1])).as(c[0]).isTrue();
+		}
+	}
+
+	@Test
+	public void testMatches() throws Exception
+	{
+		for (Charset charset : new Charset[] { StandardCharsets.UTF_8, Charset.forName("windows-1251"), StandardCharsets.UTF_16 })
+		{
+			RegexMatcher matcher = new RegexMatcher(Pattern.compile("Ошибка \\d+|timeout"), charset);
+			assertThat(matches(matcher, "[ERROR] Ошибка 42 при вызове", charset)).isTrue();
+			assertThat(matches(matcher, "[ERROR] Ошибка при вызове", charset)).isFalse();
+			assertThat(matches(matcher, "read timeout", charset)).isTrue();
+			assertThat(matches(matcher, "[INFO ] ok", charset)).isFalse();
+		}
+	}
+
+	@Test
+	public void testRandom() throws Exception
+	{
+		Random random = new Random(1);
+		String[] atoms = { "a", "b", "д", ".", "[ab]", "(a|д)", "\\.", "\\d", "x?", "b+", "a*", "(?:ab)?", "|", "\\x61", "\\0142" };
+		for (int n = 0; n < 5000; n++)
+		{
+			StringBuilder regex = new StringBuilder();
+			for (int i = random.nextInt(6); i >= 0; i--)
+				regex.append(atoms[random.nextInt(atoms.length)]);
+			Pattern pattern = Pattern.compile(regex.toString());
+			RegexMatcher matcher = new RegexMatcher(pattern, StandardCharsets.UTF_8);
+			List<String> literals = RegexMatcher.extractLiterals(regex.toString());
+			for (int k = 0; k < 5; k++)
+			{
+				String text = randomString(random, random.nextInt(12));
+				boolean expected = pattern.matcher(text).find();
+				assertThat(matches(matcher, text, StandardCharsets.UTF_8)).as(regex + " / " + text).isEqualTo(expected);
+				if (expected && literals != null)
+					assertThat(literals.stream().anyMatch(text::contains)).as(regex + " / " + text).isTrue();
+			}
+		}
+	}
+
+	private static boolean matches(RegexMatcher matcher, String text, Charset charset)
+	{
+		if (!SearchUtils.isByteSearchable(charset))
+			return matcher.matches(text);
+		byte[] buf = text.getBytes(charset);
+		return matcher.matches(buf, 0, buf.length);
+	}
+
+	private static String randomString(Random random, int length)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++)
+			sb.append("abxд.1".charAt(random.nextInt(6)));
+		return sb.toString();
+	}
+}
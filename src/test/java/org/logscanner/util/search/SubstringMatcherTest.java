@@ -0,0 +1,85 @@
+package org.logscanner.util.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SubstringMatcherTest
+{
+	@Test
+	public void testPositions() throws Exception
+	{
+		SubstringMatcher matcher = new SubstringMatcher("abc", StandardCharsets.UTF_8);
+		assertThat(indexOf(matcher, "abc", StandardCharsets.UTF_8)).isEqualTo(0);
+		assertThat(indexOf(matcher, "xxabc", StandardCharsets.UTF_8)).isEqualTo(2);
+		assertThat(indexOf(matcher, "xxabcxx", StandardCharsets.UTF_8)).isEqualTo(2);
+		assertThat(indexOf(matcher, "ababcab", StandardCharsets.UTF_8)).isEqualTo(2);
+		assertThat(indexOf(matcher, "ab", StandardCharsets.UTF_8)).isEqualTo(-1);
+		assertThat(indexOf(matcher, "", StandardCharsets.UTF_8)).isEqualTo(-1);
+		assertThat(indexOf(matcher, "acbacb", StandardCharsets.UTF_8)).isEqualTo(-1);
+	}
+
+	@Test
+	public void testRange() throws Exception
+	{
+		SubstringMatcher matcher = new SubstringMatcher("abc", StandardCharsets.UTF_8);
+		byte[] buf = "abc|xyz|abc".getBytes(StandardCharsets.UTF_8);
+		assertThat(matcher.matches(buf, 4, 7)).isFalse();
+		assertThat(matcher.matches(buf, 1, 10)).isFalse();
+		assertThat(matcher.indexOf(buf, 1, 11)).isEqualTo(8);
+	}
+
+	@Test
+	public void testCyrillic() throws Exception
+	{
+		for (Charset charset : new Charset[] { StandardCharsets.UTF_8, Charset.forName("windows-1251"), Charset.forName("KOI8-R") })
+		{
+			assertThat(SearchUtils.isByteSearchable(charset)).isTrue();
+			SubstringMatcher matcher = new SubstringMatcher("Сохранили", charset);
+			assertThat(indexOf(matcher, "2018-05-17 14:18:43,682 [INFO ] - Сохранили документ", charset)).isGreaterThan(0);
+			assertThat(indexOf(matcher, "2018-05-17 14:18:43,682 [INFO ] - Сохранение документа", charset)).isEqualTo(-1);
+		}
+	}
+
+	@Test
+	public void testNotByteSearchable() throws Exception
+	{
+		assertThat(SearchUtils.isByteSearchable(StandardCharsets.UTF_16)).isFalse();
+		assertThat(SearchUtils.isByteSearchable(StandardCharsets.UTF_16LE)).isFalse();
+	}
+
+	@Test
+	public void testRandom() throws Exception
+	{
+		Random random = new Random(1);
+		for (int n = 0; n < 10000; n++)
+		{
+			String text = randomString(random, random.nextInt(40));
+			String needle = randomString(random, 1 + random.nextInt(4));
+			SubstringMatcher matcher = new SubstringMatcher(needle, StandardCharsets.UTF_8);
+			int index = text.indexOf(needle);
+			assertThat(indexOf(matcher, text, StandardCharsets.UTF_8))
+					.as("'" + needle + "' in '" + text + "'")
+					.isEqualTo(index < 0 ? -1 : text.substring(0, index).getBytes(StandardCharsets.UTF_8).length);
+			assertThat(matcher.indexOf(new StringBuilder(text))).as("'" + needle + "' in '" + text + "'").isEqualTo(index);
+		}
+	}
+
+	private static int indexOf(SubstringMatcher matcher, String text, Charset charset)
+	{
+		byte[] buf = text.getBytes(charset);
+		return matcher.indexOf(buf, 0, buf.length);
+	}
+
+	private static String randomString(Random random, int length)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++)
+			sb.append("abcдš".charAt(random.nextInt(5))); // у 'š' тот же младший байт, что у 'a'
+		return sb.toString();
+	}
+}